@@ -0,0 +1,29 @@
+package com.agent.rag.ragbackend.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 请求体解压配置类。
+ *
+ * <p>对应 application.yml 中的 rag.compression 节点；响应压缩使用 Spring Boot 自带的 server.compression。</p>
+ */
+@Component
+@ConfigurationProperties(prefix = "rag.compression")
+@Data
+public class CompressionConfig {
+
+    /**
+     * 接受压缩请求体的路径前缀。
+     */
+    private List<String> requestPaths = new ArrayList<>(List.of("/api/rag/sync"));
+
+    /**
+     * 解压后请求体的最大字节数，防止压缩炸弹。
+     */
+    private long maxInflatedBytes = 64L * 1024 * 1024;
+}
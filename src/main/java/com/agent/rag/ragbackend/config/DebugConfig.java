@@ -0,0 +1,21 @@
+package com.agent.rag.ragbackend.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 排查接口配置类。
+ *
+ * <p>对应 application.yml 中的 rag.debug 节点。</p>
+ */
+@Component
+@ConfigurationProperties(prefix = "rag.debug")
+@Data
+public class DebugConfig {
+
+    /**
+     * 是否开放 /api/debug 下的排查接口 (会暴露请求耗时、线程池与负载状态)，默认关闭，关闭时返回 404。
+     */
+    private boolean enabled = false;
+}
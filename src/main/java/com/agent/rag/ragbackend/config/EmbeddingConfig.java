@@ -0,0 +1,86 @@
+package com.agent.rag.ragbackend.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 向量化（Embedding）配置类。
+ *
+ * <p>对应 application.yml 中的 rag.embedding 节点。</p>
+ */
+@Component
+@ConfigurationProperties(prefix = "rag.embedding")
+@Data
+public class EmbeddingConfig {
+
+    /**
+     * 默认向量化厂商：local 为本地哈希 n-gram 向量，可完全离线运行。
+     */
+    private String defaultProvider = "local";
+
+    /**
+     * 默认向量化模型。
+     */
+    private String defaultModel = "hash-ngram";
+
+    /**
+     * 各厂商的默认模型：请求只指定厂商、没指定模型时使用；默认厂商未配置时沿用 defaultModel。
+     */
+    private Map<String, String> defaultModels = new HashMap<>();
+
+    /**
+     * 本地哈希向量的维度。
+     */
+    private int localDimension = 512;
+
+    /**
+     * 各厂商单次请求允许的最大批量（条数），未配置的厂商使用 defaultBatchSize。
+     */
+    private Map<String, Integer> batchSizes = new HashMap<>();
+
+    /**
+     * 未在 batchSizes 中配置的厂商的默认批量。
+     */
+    private int defaultBatchSize = 16;
+
+    /**
+     * 全局同时在途的批次数上限（所有同步请求共享）。
+     */
+    private int maxConcurrentBatches = 4;
+
+    /**
+     * 各厂商的服务端 API Key（检索时问题向量化使用；同步接口优先使用请求头中的 X-API-KEY）。
+     */
+    private Map<String, String> apiKeys = new HashMap<>();
+
+    /**
+     * 远程向量化接口的连接超时（毫秒）。
+     */
+    private int connectTimeoutMs = 3_000;
+
+    /**
+     * 远程向量化接口的读取超时（毫秒）。
+     *
+     * <p>阻塞的 socket 读不响应线程中断，前置流水线超时取消步骤后，靠它保证线程最终被释放。</p>
+     */
+    private int readTimeoutMs = 15_000;
+
+    /**
+     * 获取厂商的默认模型，未配置时返回 null。
+     */
+    public String defaultModelFor(String provider) {
+        String model = defaultModels.get(provider);
+        if (model == null && provider.equals(defaultProvider)) {
+            return defaultModel;
+        }
+        return model;
+    }
+
+    public int batchSizeFor(String provider) {
+        return Math.max(1, batchSizes.getOrDefault(provider, defaultBatchSize));
+    }
+}
@@ -0,0 +1,96 @@
+package com.agent.rag.ragbackend.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 索引维护配置类。
+ *
+ * <p>对应 application.yml 中的 rag.index 节点。</p>
+ */
+@Component
+@ConfigurationProperties(prefix = "rag.index")
+@Data
+public class IndexConfig {
+
+    /**
+     * 后台合并检查间隔（毫秒）。
+     */
+    private long compactIntervalMs = 10_000;
+
+    /**
+     * 墓碑占比超过该值时触发合并。
+     */
+    private double compactDeadRatio = 0.2;
+
+    /**
+     * 段数超过该值时触发合并（频繁的单篇同步会产生大量小段）。
+     */
+    private int compactMaxSegments = 64;
+
+    /**
+     * 向量存储方式：none (全精度) / int8 (约 4 倍压缩) / binary (约 32 倍压缩)。
+     */
+    private String quantization = "none";
+
+    /**
+     * 量化存储时全精度向量文件所在目录。
+     */
+    private String dataDir = "./data/index";
+
+    /**
+     * 量化粗排的初始候选倍数 (topK × 该值个候选读取全精度向量重打分)。
+     */
+    private int rescoreFactor = 4;
+
+    /**
+     * 自动调整时候选倍数的上限。
+     */
+    private int maxRescoreFactor = 64;
+
+    /**
+     * 召回率下限 (recall@10)，实测低于该值时自动加大候选倍数。
+     */
+    private double minRecall = 0.9;
+
+    /**
+     * 每次校准抽样的查询数。
+     */
+    private int recallSampleSize = 32;
+
+    /**
+     * 召回率校准间隔（毫秒），索引内容没有变化时跳过。
+     */
+    private long recallCheckIntervalMs = 60_000;
+
+    /**
+     * 单个分片的切片数上限，超过后由后台一分为二。
+     */
+    private int maxShardChunks = 50_000;
+
+    /**
+     * 每个仓库的分片数上限。
+     */
+    private int maxShardsPerVault = 16;
+
+    /**
+     * 分片并行检索的 fork-join 池并行度，0 表示 CPU 核数。
+     */
+    private int searchParallelism = 0;
+
+    /**
+     * 是否启用索引快照 (启动时恢复、定期及停机时写入)。
+     */
+    private boolean snapshotEnabled = true;
+
+    /**
+     * 快照目录 (容器部署时应挂载持久卷)。
+     */
+    private String snapshotDir = "./data/snapshots";
+
+    /**
+     * 定期快照间隔（毫秒），索引没有变化时跳过。
+     */
+    private long snapshotIntervalMs = 300_000;
+}
@@ -0,0 +1,81 @@
+package com.agent.rag.ragbackend.config;
+
+import com.agent.rag.ragbackend.service.overload.LoadLevel;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 过载保护配置类 (准入控制 + 分级降级)。
+ *
+ * <p>对应 application.yml 中的 rag.overload 节点。</p>
+ */
+@Component
+@ConfigurationProperties(prefix = "rag.overload")
+@Data
+public class OverloadConfig {
+
+    /**
+     * 是否开启过载保护。
+     */
+    private boolean enabled = true;
+
+    /**
+     * 同时进行中的对话 (流式 + 普通) 上限，达到即直接拒绝。
+     */
+    private int maxInflight = 200;
+
+    /**
+     * 流式对话首字延迟 (从受理到上游返回第一个数据块) 的 p99 目标（毫秒）。
+     * p99 超标只触发降级 (最多关闭深度思考)，不拒绝请求。
+     */
+    private long targetP99Ms = 8_000;
+
+    /**
+     * 计算 p99 的时间窗口（毫秒）。
+     */
+    private long latencyWindowMs = 30_000;
+
+    /**
+     * 窗口内样本少于该值时不参考 p99，避免个别慢请求触发降级。
+     */
+    private int minLatencySamples = 20;
+
+    /**
+     * 负载压力 (在途占比 / 对话线程池队列占比，取最大) 或 p99 与目标之比达到该值时跳过 MMR 重排。
+     */
+    private double skipRerankAt = 0.6;
+
+    /**
+     * 压力达到该值时缩减上下文：检索片段数、关键词片段数、历史条数按 context-shrink-ratio 缩小。
+     */
+    private double shrinkContextAt = 0.75;
+
+    /**
+     * 压力达到该值时关闭深度思考。
+     */
+    private double disableThinkingAt = 0.9;
+
+    /**
+     * 负载压力达到 1 即拒绝新请求 (503)；p99 不参与拒绝。
+     */
+    private double shedAt = 1.0;
+
+    /**
+     * 缩减上下文时的保留比例。
+     */
+    private double contextShrinkRatio = 0.5;
+
+    /**
+     * 拒绝时 Retry-After 响应头（秒）。
+     */
+    private int retryAfterSeconds = 5;
+
+    /**
+     * 按负载等级缩减数量 (至少保留 1 个)。
+     */
+    public int shrink(LoadLevel level, int count) {
+        if (!level.shrinkContext() || count <= 0) return count;
+        return Math.max(1, (int) Math.round(count * contextShrinkRatio));
+    }
+}
@@ -0,0 +1,41 @@
+package com.agent.rag.ragbackend.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 生成前置流水线配置类。
+ *
+ * <p>对应 application.yml 中的 rag.pipeline 节点。</p>
+ */
+@Component
+@ConfigurationProperties(prefix = "rag.pipeline")
+@Data
+public class PipelineConfig {
+
+    /**
+     * 整个前置阶段的截止时间（毫秒），到点仍未完成的步骤一律降级跳过。
+     */
+    private long deadlineMs = 1500;
+
+    /**
+     * 单个步骤的默认超时（毫秒）。
+     */
+    private long stepTimeoutMs = 1000;
+
+    /**
+     * 按步骤名覆盖超时，例如 keyword-search: 500。
+     */
+    private Map<String, Long> stepTimeouts = new HashMap<>();
+
+    /**
+     * 获取指定步骤的超时时间（不超过整体截止时间）。
+     */
+    public long timeoutFor(String stepName) {
+        return Math.min(stepTimeouts.getOrDefault(stepName, stepTimeoutMs), deadlineMs);
+    }
+}
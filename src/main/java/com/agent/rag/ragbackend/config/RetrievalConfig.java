@@ -0,0 +1,56 @@
+package com.agent.rag.ragbackend.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 入库与检索配置类。
+ *
+ * <p>对应 application.yml 中的 rag.retrieval 节点。</p>
+ */
+@Component
+@ConfigurationProperties(prefix = "rag.retrieval")
+@Data
+public class RetrievalConfig {
+
+    /**
+     * 切片目标长度（字符）。
+     */
+    private int chunkSize = 600;
+
+    /**
+     * 超长段落硬切时相邻切片的重叠长度（字符）。
+     */
+    private int chunkOverlap = 80;
+
+    /**
+     * 每次检索返回的片段数。
+     */
+    private int topK = 5;
+
+    /**
+     * 低于该相似度的片段不放入 Prompt。
+     */
+    private double minScore = 0.2;
+
+    /**
+     * MMR 重排的候选倍数：向量检索先取 topK × 该值个候选，再重排选出 topK 个。
+     */
+    private int mmrCandidateFactor = 4;
+
+    /**
+     * MMR 相关度权重 [0, 1]，1 表示只按相关度排序。
+     */
+    private double mmrLambda = 0.7;
+
+    /**
+     * 与已选片段余弦相似度达到该值的候选视为重复直接丢弃，1 表示不去重。
+     */
+    private double duplicateThreshold = 0.95;
+
+    /**
+     * 关键词 (BM25) 检索返回的片段数，0 表示关闭关键词检索。
+     */
+    private int keywordTopK = 3;
+}
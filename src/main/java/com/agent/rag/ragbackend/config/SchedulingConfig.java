@@ -0,0 +1,36 @@
+package com.agent.rag.ragbackend.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 线程池调度配置类 (对话优先，后台任务让路)。
+ *
+ * <p>对应 application.yml 中的 rag.scheduling 节点。</p>
+ */
+@Component
+@ConfigurationProperties(prefix = "rag.scheduling")
+@Data
+public class SchedulingConfig {
+
+    /**
+     * 交互任务 (对话前置阶段、检索步骤) 的 p95 延迟目标（毫秒，排队 + 执行），超过即认为对话延迟有风险。
+     */
+    private long interactiveSloMs = 1_500;
+
+    /**
+     * 计算 p95 的时间窗口（毫秒）。
+     */
+    private long sloWindowMs = 30_000;
+
+    /**
+     * 后台任务每个工作单元最多让路多久（毫秒），避免持续有对话时后台任务饿死。
+     */
+    private long backgroundMaxYieldMs = 2_000;
+
+    /**
+     * 让路期间重新检查的间隔（毫秒）。
+     */
+    private long yieldPollMs = 50;
+}
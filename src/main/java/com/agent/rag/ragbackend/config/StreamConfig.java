@@ -0,0 +1,67 @@
+package com.agent.rag.ragbackend.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 流式输出 (SSE) 配置类。
+ *
+ * <p>对应 application.yml 中的 rag.stream 节点。</p>
+ */
+@Component
+@ConfigurationProperties(prefix = "rag.stream")
+@Data
+public class StreamConfig {
+
+    /**
+     * SSE 帧合并时间窗口（毫秒）。
+     *
+     * <p>上游 token 到达间隔小于该值时，会被合并进同一个 SSE 事件；0 表示关闭合并，逐 token 发送。</p>
+     */
+    private long coalesceWindowMs = 20;
+
+    /**
+     * SSE 帧合并字节阈值，缓冲达到该大小立即发送。
+     */
+    private int coalesceMaxBytes = 1024;
+
+    /**
+     * 上游空闲超时（毫秒）。
+     *
+     * <p>相邻两个数据块（含首包）的间隔超过该值，即判定上游卡死并取消生成；0 表示不限制。</p>
+     */
+    private long idleTimeoutMs = 60_000;
+
+    /**
+     * 单次流式响应的总时长上限（毫秒），作为 SseEmitter 的超时时间；0 表示不限制。
+     */
+    private long totalTimeoutMs = 300_000;
+
+    /**
+     * 前端断线后保留上游生成的宽限期（毫秒）。
+     *
+     * <p>宽限期内客户端带 Last-Event-ID 重连即可续传；超时未重连才取消上游。0 表示断线立即取消。</p>
+     */
+    private long resumeGraceMs = 30_000;
+
+    /**
+     * 单条流续传缓冲最多保留的事件数。
+     */
+    private int replayBufferEvents = 4096;
+
+    /**
+     * 单条流续传缓冲的字节上限，超出时丢弃最旧的事件。
+     */
+    private long replayBufferMaxBytes = 512 * 1024;
+
+    /**
+     * 断线 / 已结束的会话在无活动多久后淘汰（毫秒）。
+     */
+    private long replayTtlMs = 120_000;
+
+    /**
+     * 所有会话续传缓冲的全局字节上限，超出时按最久未活动优先淘汰断线会话。
+     */
+    private long replayTotalMaxBytes = 64L * 1024 * 1024;
+}
@@ -1,21 +1,53 @@
 package com.agent.rag.ragbackend.config;
 
+import com.agent.rag.ragbackend.service.scheduling.WorkloadClass;
+import com.agent.rag.ragbackend.service.scheduling.WorkloadGovernor;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
 
 import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
 import java.util.concurrent.ThreadPoolExecutor;
 
+/**
+ * 线程池配置
+ *
+ * <p>按负载类型隔离：对话 (chat / pregen) 为交互负载，入库、向量化、索引维护为后台负载，
+ * 各自有界，并登记到 {@link WorkloadGovernor} 统计排队与耗时，后台任务在对话延迟有风险时让路。</p>
+ */
 @Configuration
 public class ThreadPoolConfig {
 
+    /**
+     * 对话请求线程池 (流式对话的前置检索 + 发起上游调用)
+     * 取代 CompletableFuture 默认的 commonPool：commonPool 与 parallel stream 等共享且线程数只有核数 - 1，
+     * 后台任务占满时对话会在里面排队
+     */
+    @Bean("chatExecutor")
+    public Executor chatExecutor(WorkloadGovernor workloadGovernor) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        // 任务在提交上游请求后即返回，单个任务占用时间 = 检索 + 构建提示词
+        executor.setCorePoolSize(16);
+        executor.setMaxPoolSize(64);
+        // 排队过久的对话不如直接告诉用户繁忙
+        executor.setQueueCapacity(100);
+        executor.setThreadNamePrefix("chat-");
+        // AbortPolicy：由 ChatController 捕获后向前端返回“服务繁忙”
+        workloadGovernor.register("chatExecutor", WorkloadClass.INTERACTIVE, executor,
+                new ThreadPoolExecutor.AbortPolicy());
+        executor.initialize();
+        return executor;
+    }
+
     /**
      * 专门用于数据库异步入库的线程池
      * Bean 名称 "dbExecutor" 对应 @Qualifier("dbExecutor")
      */
     @Bean("dbExecutor")
-    public Executor dbExecutor() {
+    public Executor dbExecutor(WorkloadGovernor workloadGovernor) {
         ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
 
         // 1. 核心线程数：系统空闲时保留的线程数
@@ -37,7 +69,8 @@ public class ThreadPoolConfig {
         // 5. 拒绝策略：当队列满了且线程达到最大值，新任务怎么办？
         // CallerRunsPolicy: 由调用者线程（这里就是处理 SSE 的那个线程）自己去执行入库。
         // 好处：保证数据不丢失（虽然会稍微阻塞一下流式推送到前端的速度，但在高负载下是一种自我保护）
-        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        workloadGovernor.register("dbExecutor", WorkloadClass.BACKGROUND, executor,
+                new ThreadPoolExecutor.CallerRunsPolicy());
 
         // 6. 优雅关闭：应用关闭时，是否等待任务执行完
         executor.setWaitForTasksToCompleteOnShutdown(true);
@@ -47,4 +80,98 @@ public class ThreadPoolConfig {
         executor.initialize();
         return executor;
     }
+
+    /**
+     * 生成前置流水线线程池 (问题向量化、向量检索、关键词检索等并发步骤)
+     * Bean 名称 "pipelineExecutor" 对应 @Qualifier("pipelineExecutor")
+     */
+    @Bean("pipelineExecutor")
+    public Executor pipelineExecutor(WorkloadGovernor workloadGovernor) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        // 每个请求会同时提交多个步骤，且步骤以 IO 等待为主，核心线程给足
+        executor.setCorePoolSize(8);
+        executor.setMaxPoolSize(32);
+        // 队列不宜过长：排队太久的步骤反正会超时降级，不如直接拒绝
+        executor.setQueueCapacity(100);
+        executor.setThreadNamePrefix("pregen-");
+        // AbortPolicy：被拒绝的步骤由流水线按“降级”处理，不能让调用线程串行执行
+        workloadGovernor.register("pipelineExecutor", WorkloadClass.INTERACTIVE, executor,
+                new ThreadPoolExecutor.AbortPolicy());
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * 向量化批次线程池
+     * 实际并发由 EmbeddingService 的全局信号量 (rag.embedding.max-concurrent-batches) 控制，
+     * 线程数只需略大于该上限
+     */
+    @Bean("embeddingExecutor")
+    public Executor embeddingExecutor(WorkloadGovernor workloadGovernor) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(4);
+        executor.setMaxPoolSize(8);
+        // 大库同步时批次很多，允许排队等待
+        executor.setQueueCapacity(1000);
+        executor.setThreadNamePrefix("embedding-");
+        // 队列满时由同步请求线程自己执行，形成天然的背压
+        workloadGovernor.register("embeddingExecutor", WorkloadClass.BACKGROUND, executor,
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * 流式输出专用的调度线程池
+     * 用于 SSE 帧合并的窗口计时、断线宽限期等短小的定时任务，任务内只做内存拷贝，不做阻塞 IO
+     * (向前端 send 可能被慢连接阻塞，一律交给对话线程池或生产线程执行)
+     */
+    @Bean("streamScheduler")
+    public ThreadPoolTaskScheduler streamScheduler(WorkloadGovernor workloadGovernor) {
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        // 定时任务都很轻，2 个线程足够支撑大量并发流
+        scheduler.setPoolSize(2);
+        scheduler.setThreadNamePrefix("sse-scheduler-");
+        // 取消的任务立即从队列移除，避免高频 schedule/cancel 堆积
+        scheduler.setRemoveOnCancelPolicy(true);
+        scheduler.setWaitForTasksToCompleteOnShutdown(false);
+        scheduler.initialize();
+        // 到期的定时任务排不上线程 (帧合并窗口延迟发出) 同样影响对话体验
+        workloadGovernor.register("streamScheduler", WorkloadClass.INTERACTIVE, scheduler);
+        return scheduler;
+    }
+
+    /**
+     * 分片并行检索池 (fork-join)
+     * 检索是纯 CPU 计算，并行度默认等于核数；小仓库只有一个分片时不会用到
+     */
+    @Bean(name = "searchPool", destroyMethod = "shutdown")
+    public ForkJoinPool searchPool(IndexConfig indexConfig, WorkloadGovernor workloadGovernor) {
+        int parallelism = indexConfig.getSearchParallelism() > 0
+                ? indexConfig.getSearchParallelism()
+                : Runtime.getRuntime().availableProcessors();
+        ForkJoinPool searchPool = new ForkJoinPool(parallelism, pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("shard-search-" + thread.getPoolIndex());
+            return thread;
+        }, null, false);
+        workloadGovernor.register("searchPool", WorkloadClass.INTERACTIVE, searchPool);
+        return searchPool;
+    }
+
+    /**
+     * 后台维护调度线程池 (索引合并等)
+     * 单线程即可：维护任务之间本就需要串行，且不应与对话抢占 CPU
+     */
+    @Bean("maintenanceScheduler")
+    public ThreadPoolTaskScheduler maintenanceScheduler(WorkloadGovernor workloadGovernor) {
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setPoolSize(1);
+        scheduler.setThreadNamePrefix("index-maintenance-");
+        scheduler.setWaitForTasksToCompleteOnShutdown(true);
+        scheduler.setAwaitTerminationSeconds(30);
+        scheduler.initialize();
+        workloadGovernor.register("maintenanceScheduler", WorkloadClass.BACKGROUND, scheduler);
+        return scheduler;
+    }
 }
@@ -0,0 +1,36 @@
+package com.agent.rag.ragbackend.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 请求追踪配置类。
+ *
+ * <p>对应 application.yml 中的 rag.trace 节点。</p>
+ */
+@Component
+@ConfigurationProperties(prefix = "rag.trace")
+@Data
+public class TraceConfig {
+
+    /**
+     * 是否记录请求各阶段耗时。
+     */
+    private boolean enabled = true;
+
+    /**
+     * 环形缓冲保留的请求数 (向上取整为 2 的幂)，写满后覆盖最旧的记录。
+     */
+    private int bufferSize = 512;
+
+    /**
+     * 普通请求的采样率 (0 ~ 1)。
+     */
+    private double sampleRate = 0.1;
+
+    /**
+     * 总耗时超过该值（毫秒）的慢请求不受采样率限制，一律记录。
+     */
+    private long slowThresholdMs = 5_000;
+}
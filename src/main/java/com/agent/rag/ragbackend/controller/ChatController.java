@@ -1,22 +1,36 @@
 package com.agent.rag.ragbackend.controller;
 
 
+import com.agent.rag.ragbackend.config.StreamConfig;
 import com.agent.rag.ragbackend.dto.request.ChatRequest;
 import com.agent.rag.ragbackend.dto.request.LlmCompletionRequest;
 import com.agent.rag.ragbackend.dto.response.RagResponse;
 import com.agent.rag.ragbackend.service.LlmService;
+import com.agent.rag.ragbackend.service.overload.LoadTicket;
+import com.agent.rag.ragbackend.service.overload.OverloadGuard;
+import com.agent.rag.ragbackend.service.stream.StreamSession;
+import com.agent.rag.ragbackend.service.stream.StreamSessionRegistry;
+import com.agent.rag.ragbackend.service.trace.RequestTrace;
+import com.agent.rag.ragbackend.service.trace.TracePhase;
+import com.agent.rag.ragbackend.service.trace.TraceRecorder;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.io.IOException;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.stream.Collectors;
 
 @RestController
@@ -27,6 +41,12 @@ import java.util.stream.Collectors;
 public class ChatController {
 
     private final LlmService llmService;
+    private final StreamConfig streamConfig;
+    private final StreamSessionRegistry streamSessionRegistry;
+    private final TraceRecorder traceRecorder;
+    private final OverloadGuard overloadGuard;
+    @Qualifier("chatExecutor")
+    private final Executor chatExecutor;
 
     /**
      * 普通对话接口 (等待全部生成完一次性返回)
@@ -41,41 +61,115 @@ public class ChatController {
 
         log.info("收到普通对话请求 - 模型: {}, 深度思考: {},提问：{}", request.getModel(), request.getEnableDeepThinking(),request.getQuestion());
 
-        // 2. 调用 Service
-        RagResponse<Object> result = llmService.chat(llmRequest);
-
-        return ResponseEntity.ok(result);
+        // 2. 过载保护：拒绝或按负载等级降级
+        Optional<LoadTicket> admitted = overloadGuard.tryAdmit("chat");
+        if (admitted.isEmpty()) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(overloadGuard.retryAfterSeconds()))
+                    .body(RagResponse.error("服务繁忙，请稍后重试"));
+        }
+        LoadTicket ticket = admitted.get();
+        llmRequest.setLoadLevel(ticket.level());
+
+        // 3. 调用 Service (非流式请求的耗时不计入首字延迟)
+        try {
+            RagResponse<Object> result = llmService.chat(llmRequest, traceRecorder.start("chat", null, request.getModel()));
+            return ResponseEntity.ok(result);
+        } finally {
+            ticket.release();
+        }
     }
 
     /**
      * ✅ 新增：流式对话接口 (SSE)
      * 响应类型必须是 text/event-stream
+     * 每个事件都带 ID (streamId:seq)；断线后带 Last-Event-ID 和 X-Resume-Token (首个 stream 事件下发) 重发同一请求即可续传，不会重新生成
+     * 过载时直接返回 503 + Retry-After (续传不受限制：不会产生新的生成)
      */
     @PostMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
-    public SseEmitter streamChat(
+    public ResponseEntity<SseEmitter> streamChat(
             @RequestBody ChatRequest request,
-            @RequestHeader(value = "X-API-KEY", required = false) String apiKey
+            @RequestHeader(value = "X-API-KEY", required = false) String apiKey,
+            @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId,
+            @RequestHeader(value = "X-Resume-Token", required = false) String resumeToken
     ) {
+        // 1. 断线重连：会话还在且续传凭证正确就直接续传 (超时时间为会话剩余的总时长)
+        if (lastEventId != null) {
+            SseEmitter resumed = streamSessionRegistry.resume(null, lastEventId, resumeToken);
+            if (resumed != null) {
+                return ResponseEntity.ok(resumed);
+            }
+        }
+
+        // 2. 创建 SseEmitter (总时长上限可配置，0 表示永不超时；上游卡死由空闲超时兜底)
+        SseEmitter emitter = new SseEmitter(streamConfig.getTotalTimeoutMs());
+
         log.info("收到流式对话请求 (SSE) - 模型: {}, 深度思考: {},提问：{}", request.getModel(), request.getEnableDeepThinking(),request.getQuestion());
 
-        // 1. 创建 SseEmitter (0L 表示永不超时，防止 AI 回答时间过长导致连接断开)
-        SseEmitter emitter = new SseEmitter(0L);
+        // 3. 过载保护：拒绝或按负载等级降级
+        Optional<LoadTicket> admitted = overloadGuard.tryAdmit("stream", true);
+        if (admitted.isEmpty()) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(overloadGuard.retryAfterSeconds()))
+                    .build();
+        }
+        LoadTicket ticket = admitted.get();
 
-        // 2. 转换请求对象
+        // 4. 转换请求对象，并创建可续传会话 (首个事件告知客户端 streamId)
         LlmCompletionRequest llmRequest = convertToLlmRequest(request, apiKey);
+        llmRequest.setLoadLevel(ticket.level());
+        StreamSession session = streamSessionRegistry.create();
+        session.attach(emitter, -1, streamConfig.getTotalTimeoutMs());
+        RequestTrace trace = traceRecorder.start("stream", session.getStreamId(), request.getModel());
+        trace.begin(TracePhase.QUEUE);
+
+        // 5. 在对话专用线程池异步调用 Service，防止阻塞主线程 (不与后台任务共用 commonPool)
+        try {
+            CompletableFuture.runAsync(() -> {
+                trace.end(TracePhase.QUEUE);
+                try {
+                    llmService.streamChat(llmRequest, session, trace, ticket);
+                } catch (Exception e) {
+                    log.error("流式生成异常", e);
+                    session.fail("流式生成异常: " + e.getMessage());
+                    trace.finish("error", 0);
+                    ticket.release();
+                }
+            }, chatExecutor);
+        } catch (RejectedExecutionException e) {
+            log.warn("⚠️ [Scheduling] 对话线程池已满，拒绝请求 {}", session.getStreamId());
+            session.fail("服务繁忙，请稍后重试");
+            trace.finish("rejected", 0);
+            ticket.release();
+        }
+
+        // 6. 直接返回 emitter，建立连接
+        return ResponseEntity.ok(emitter);
+    }
 
-        // 3. 异步调用 Service，防止阻塞主线程
-        CompletableFuture.runAsync(() -> {
+    /**
+     * 续传接口：按 streamId 重新连接一条仍在缓冲中的流
+     * Last-Event-ID 可以是完整事件ID (streamId:seq) 或纯 seq；不传则从头补发
+     * X-Resume-Token 为首个 stream 事件中下发的续传凭证，不符时按会话过期处理
+     */
+    @GetMapping(value = "/stream/{streamId}", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter resumeStream(
+            @PathVariable String streamId,
+            @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId,
+            @RequestHeader(value = "X-Resume-Token", required = false) String resumeToken
+    ) {
+        SseEmitter emitter = streamSessionRegistry.resume(streamId, lastEventId, resumeToken);
+        if (emitter == null) {
+            emitter = new SseEmitter(streamConfig.getTotalTimeoutMs());
+            log.warn("⚠️ [StreamResume] 无法续传 {} (Last-Event-ID: {})", streamId, lastEventId);
             try {
-                // 注意：你需要确保 LlmService 中已经实现了这个 streamChat 方法
-                llmService.streamChat(llmRequest, emitter);
-            } catch (Exception e) {
-                log.error("流式生成异常", e);
-                emitter.completeWithError(e);
+                emitter.send(SseEmitter.event().name("error")
+                        .data(Collections.singletonMap("error", "会话已过期，请重新提问")));
+            } catch (IOException e) {
+                log.debug("发送续传失败通知失败: {}", e.getMessage());
             }
-        });
-
-        // 4. 直接返回 emitter，建立连接
+            emitter.complete();
+        }
         return emitter;
     }
 
@@ -102,6 +196,7 @@ public class ChatController {
                 .prompt(request.getQuestion())
                 .context(llmHistory)
                 .enableDeepThinking(request.getEnableDeepThinking())
+                .vaultId(request.getVaultId())
                 .build();
     }
 }
@@ -0,0 +1,64 @@
+package com.agent.rag.ragbackend.controller;
+
+import com.agent.rag.ragbackend.config.DebugConfig;
+import com.agent.rag.ragbackend.dto.response.RagResponse;
+import com.agent.rag.ragbackend.service.overload.OverloadGuard;
+import com.agent.rag.ragbackend.service.scheduling.WorkloadGovernor;
+import com.agent.rag.ragbackend.service.trace.TraceRecorder;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 排查用接口
+ *
+ * <p>没有鉴权，也不允许跨域，只在 rag.debug.enabled 打开时可用 (默认关闭，返回 404)。</p>
+ */
+@RestController
+@RequestMapping("/api/debug")
+@RequiredArgsConstructor
+public class DebugController {
+
+    private final DebugConfig debugConfig;
+    private final TraceRecorder traceRecorder;
+    private final WorkloadGovernor workloadGovernor;
+    private final OverloadGuard overloadGuard;
+
+    /**
+     * 最近请求的阶段耗时 (排队 / 检索 / 拼装 Prompt / 首字 / 流式输出 / 入库)
+     *
+     * @param sort slowest (默认，按总耗时降序) 或 recent (按时间倒序)
+     */
+    @GetMapping("/traces")
+    public ResponseEntity<RagResponse<List<Map<String, Object>>>> traces(
+            @RequestParam(value = "sort", required = false, defaultValue = "slowest") String sort,
+            @RequestParam(value = "limit", required = false, defaultValue = "20") int limit
+    ) {
+        if (!debugConfig.isEnabled()) return ResponseEntity.notFound().build();
+        List<Map<String, Object>> traces = "recent".equalsIgnoreCase(sort)
+                ? traceRecorder.recent(limit)
+                : traceRecorder.slowest(limit);
+        return ResponseEntity.ok(RagResponse.success(traces));
+    }
+
+    /**
+     * 各线程池的排队 / 执行统计，以及后台任务为对话让路的次数和时长
+     */
+    @GetMapping("/executors")
+    public ResponseEntity<RagResponse<Map<String, Object>>> executors() {
+        if (!debugConfig.isEnabled()) return ResponseEntity.notFound().build();
+        return ResponseEntity.ok(RagResponse.success(workloadGovernor.stats()));
+    }
+
+    /**
+     * 过载保护状态：在途对话数、负载压力、当前等级，以及各等级受理 / 拒绝次数
+     */
+    @GetMapping("/load")
+    public ResponseEntity<RagResponse<Map<String, Object>>> load() {
+        if (!debugConfig.isEnabled()) return ResponseEntity.notFound().build();
+        return ResponseEntity.ok(RagResponse.success(overloadGuard.stats()));
+    }
+}
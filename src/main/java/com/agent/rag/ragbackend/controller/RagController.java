@@ -1,23 +1,21 @@
 package com.agent.rag.ragbackend.controller;
 
-import com.agent.rag.ragbackend.dto.request.ChatRequest;
-import com.agent.rag.ragbackend.dto.request.LlmCompletionRequest;
 import com.agent.rag.ragbackend.dto.request.SyncRequest;
+import com.agent.rag.ragbackend.dto.response.ManifestNode;
 import com.agent.rag.ragbackend.dto.response.RagResponse;
 import com.agent.rag.ragbackend.service.LlmService;
-import com.fasterxml.jackson.core.JsonProcessingException;
+import com.agent.rag.ragbackend.service.embedding.EmbeddingService;
+import com.agent.rag.ragbackend.service.index.VaultIndexRegistry;
+import com.agent.rag.ragbackend.service.ingest.IngestionService;
+import com.agent.rag.ragbackend.service.manifest.ManifestService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
-import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
-import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Optional;
-import java.util.concurrent.CompletableFuture;
-import java.util.stream.Collectors;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/api/rag")
@@ -27,11 +25,67 @@ import java.util.stream.Collectors;
 public class RagController {
 
     private final LlmService llmService;
+    private final IngestionService ingestionService;
+    private final EmbeddingService embeddingService;
+    private final VaultIndexRegistry vaultIndexRegistry;
+    private final ManifestService manifestService;
 
     @PostMapping("/sync")
-    public ResponseEntity<String> syncFile(@RequestBody SyncRequest request) {
+    public ResponseEntity<String> syncFile(
+            @RequestBody SyncRequest request,
+            @RequestHeader(value = "X-API-KEY", required = false) String apiKey
+    ) {
         log.info("收到 Obsidian 同步请求 - 文件: {}, 路径: {}", request.getTitle(), request.getPath());
-        // service.process(request);
-        return ResponseEntity.ok("Sync Success");
+        return doSync(List.of(request), apiKey);
+    }
+
+    /**
+     * 批量同步：多篇笔记的切片合并后批量向量化，适合首次全量同步
+     */
+    @PostMapping("/sync/batch")
+    public ResponseEntity<String> syncBatch(
+            @RequestBody List<SyncRequest> requests,
+            @RequestHeader(value = "X-API-KEY", required = false) String apiKey
+    ) {
+        log.info("收到 Obsidian 批量同步请求 - 笔记数: {}", requests.size());
+        return doSync(requests, apiKey);
+    }
+
+    /**
+     * 仓库清单 (Merkle 树) 查询，用于增量同步
+     * 插件从根节点 (prefix 为空) 开始，只下钻哈希与本地不同的子节点；叶子节点返回 path → 内容哈希
+     */
+    @GetMapping("/manifest")
+    public ResponseEntity<RagResponse<ManifestNode>> manifest(
+            @RequestParam(value = "vaultId", required = false) String vaultId,
+            @RequestParam(value = "prefix", required = false, defaultValue = "") String prefix
+    ) {
+        try {
+            return ResponseEntity.ok(RagResponse.success(manifestService.node(vaultId, prefix)));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(RagResponse.error(e.getMessage()));
+        }
+    }
+
+    /**
+     * 索引与向量化吞吐统计 (指定 vaultId 时只统计该仓库)
+     */
+    @GetMapping("/stats")
+    public ResponseEntity<RagResponse<Object>> stats(@RequestParam(value = "vaultId", required = false) String vaultId) {
+        Map<String, Object> stats = new LinkedHashMap<>(vaultIndexRegistry.stats(vaultId));
+        stats.put("embeddedChunks", embeddingService.getTotalTexts());
+        stats.put("embeddingBatches", embeddingService.getTotalBatches());
+        stats.put("embeddingChunksPerSecond", Math.round(embeddingService.getTotalTextsPerSecond() * 10) / 10.0);
+        return ResponseEntity.ok(RagResponse.success(stats));
+    }
+
+    private ResponseEntity<String> doSync(List<SyncRequest> requests, String apiKey) {
+        try {
+            ingestionService.ingest(requests, apiKey);
+            return ResponseEntity.ok("Sync Success");
+        } catch (Exception e) {
+            log.error("❌ [Sync] 同步失败", e);
+            return ResponseEntity.internalServerError().body("Sync Failed: " + e.getMessage());
+        }
     }
 }
\ No newline at end of file
@@ -44,6 +44,11 @@ public class ChatRequest extends BaseRequest {
      */
     private Boolean enableDeepThinking = false;
 
+    /**
+     * 仓库ID (检索范围，为空时视为 default)
+     */
+    private String vaultId;
+
     /**
      * 历史对话记录
      */
@@ -0,0 +1,27 @@
+package com.agent.rag.ragbackend.dto.request;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * OpenAI 兼容的 /embeddings 请求体 (阿里云 DashScope 兼容模式同样适用)
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class EmbeddingRequest {
+
+    private String model;
+
+    /**
+     * 一批待向量化的文本
+     */
+    private List<String> input;
+}
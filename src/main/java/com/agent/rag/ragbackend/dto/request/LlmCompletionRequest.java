@@ -1,5 +1,6 @@
 package com.agent.rag.ragbackend.dto.request;
 
+import com.agent.rag.ragbackend.service.overload.LoadLevel;
 import lombok.Builder;
 import lombok.Data;
 import lombok.ToString;
@@ -60,6 +61,17 @@ public class LlmCompletionRequest implements Serializable {
      */
     private String conversationId;
 
+    /**
+     * 仓库ID (检索范围)
+     */
+    private String vaultId;
+
+    /**
+     * 受理时的负载等级 (决定检索 / 上下文 / 深度思考的降级)
+     */
+    @Builder.Default
+    private LoadLevel loadLevel = LoadLevel.NORMAL;
+
 
     // 如果后续有 temperature, topP 等参数，直接加在这里，无需改接口
     // private Double temperature;
@@ -4,9 +4,23 @@ import lombok.Data;
 
 @Data
 public class SyncRequest {
+    private String vaultId;   // 仓库ID (区分同一用户/不同用户的多个 vault，为空时视为 default)
     private String title;     // 文件名 (file.basename)
     private String path;      // 文件路径 (file.path)
     private String content;   // 文件全文
     private String embeddingProvider; // ✅ 接收 aliyun/openai
     private String embeddingModel;    // ✅ 接收 text-embedding-v1
+    private String operation;         // 操作类型：upsert (默认) / delete / rename
+    private String oldPath;           // rename 时的原路径 (path 为新路径)
+
+    public static final String OP_UPSERT = "upsert";
+    public static final String OP_DELETE = "delete";
+    public static final String OP_RENAME = "rename";
+
+    /**
+     * 操作类型 (为空视为 upsert)
+     */
+    public String operationOrDefault() {
+        return operation == null || operation.isBlank() ? OP_UPSERT : operation.toLowerCase();
+    }
 }
@@ -0,0 +1,30 @@
+package com.agent.rag.ragbackend.dto.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * OpenAI 兼容的 /embeddings 响应体
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class EmbeddingResponse {
+
+    private List<Item> data;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Item {
+        /**
+         * 对应请求 input 中的下标 (厂商不保证按顺序返回)
+         */
+        private int index;
+
+        private float[] embedding;
+    }
+}
@@ -0,0 +1,40 @@
+package com.agent.rag.ragbackend.dto.response;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.Map;
+
+/**
+ * 仓库清单 (Merkle 树) 的一个节点
+ *
+ * <p>非叶子节点返回 children (子节点前缀字符 → 子树哈希)；
+ * 叶子节点返回 entries (笔记路径 → 内容哈希)。</p>
+ */
+@Data
+@Builder
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ManifestNode {
+
+    private String vaultId;
+
+    /**
+     * 节点前缀 (路径哈希的前 N 位十六进制字符，根节点为空串)
+     */
+    private String prefix;
+
+    /**
+     * 子树哈希 (空子树为空串)
+     */
+    private String hash;
+
+    /**
+     * 子树中的笔记数
+     */
+    private int noteCount;
+
+    private Map<String, String> children;
+
+    private Map<String, String> entries;
+}
@@ -0,0 +1,227 @@
+package com.agent.rag.ragbackend.filter;
+
+import com.agent.rag.ragbackend.config.CompressionConfig;
+import com.github.luben.zstd.ZstdInputStream;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.BufferedReader;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.Objects;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * 压缩请求体解压过滤器
+ *
+ * <p>同步接口的 content 是整篇 markdown，家庭宽带上行慢，插件可以用 gzip / zstd 压缩请求体上传。
+ * 这里按 Content-Encoding 把输入流包装成解压流，边读边解压，不把整个请求体读进内存；
+ * 解压后的字节数超过上限时直接中断读取 (防止压缩炸弹)。</p>
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class RequestDecompressionFilter extends OncePerRequestFilter {
+
+    private final CompressionConfig compressionConfig;
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        String encoding = request.getHeader(HttpHeaders.CONTENT_ENCODING);
+        if (encoding == null || encoding.isBlank() || "identity".equalsIgnoreCase(encoding.trim())) {
+            return true;
+        }
+        String uri = request.getRequestURI();
+        return compressionConfig.getRequestPaths().stream().noneMatch(uri::startsWith);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String encoding = request.getHeader(HttpHeaders.CONTENT_ENCODING).trim().toLowerCase();
+        if (!"gzip".equals(encoding) && !"zstd".equals(encoding)) {
+            log.warn("⚠️ [Compression] 不支持的请求体编码: {}", encoding);
+            response.sendError(HttpServletResponse.SC_UNSUPPORTED_MEDIA_TYPE, "Unsupported Content-Encoding: " + encoding);
+            return;
+        }
+        chain.doFilter(new DecompressingRequest(request, encoding, compressionConfig.getMaxInflatedBytes()), response);
+    }
+
+    /**
+     * 解压后的请求：去掉 Content-Encoding / Content-Length，输入流替换为解压流
+     */
+    private static class DecompressingRequest extends HttpServletRequestWrapper {
+
+        private final String encoding;
+        private final long maxBytes;
+        private ServletInputStream inputStream;
+
+        DecompressingRequest(HttpServletRequest request, String encoding, long maxBytes) {
+            super(request);
+            this.encoding = encoding;
+            this.maxBytes = maxBytes;
+        }
+
+        @Override
+        public ServletInputStream getInputStream() throws IOException {
+            if (inputStream == null) {
+                InputStream raw = super.getInputStream();
+                InputStream decoded = "gzip".equals(encoding) ? new GZIPInputStream(raw, 8192) : new ZstdInputStream(raw);
+                inputStream = new DelegatingServletInputStream(new LimitedInputStream(decoded, maxBytes));
+            }
+            return inputStream;
+        }
+
+        @Override
+        public BufferedReader getReader() throws IOException {
+            String charset = getCharacterEncoding();
+            Charset cs = charset != null ? Charset.forName(charset) : StandardCharsets.UTF_8;
+            return new BufferedReader(new InputStreamReader(getInputStream(), cs));
+        }
+
+        @Override
+        public int getContentLength() {
+            return -1;
+        }
+
+        @Override
+        public long getContentLengthLong() {
+            return -1;
+        }
+
+        @Override
+        public String getHeader(String name) {
+            if (isStrippedHeader(name)) return null;
+            return super.getHeader(name);
+        }
+
+        @Override
+        public Enumeration<String> getHeaders(String name) {
+            if (isStrippedHeader(name)) return Collections.emptyEnumeration();
+            return super.getHeaders(name);
+        }
+
+        @Override
+        public Enumeration<String> getHeaderNames() {
+            return Collections.enumeration(Collections.list(super.getHeaderNames()).stream()
+                    .filter(name -> !isStrippedHeader(name))
+                    .toList());
+        }
+
+        private static boolean isStrippedHeader(String name) {
+            return HttpHeaders.CONTENT_ENCODING.equalsIgnoreCase(name) || HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(name);
+        }
+    }
+
+    /**
+     * 限制解压后字节数的输入流
+     */
+    private static class LimitedInputStream extends FilterInputStream {
+
+        private final long maxBytes;
+        private long count = 0;
+
+        LimitedInputStream(InputStream in, long maxBytes) {
+            super(in);
+            this.maxBytes = maxBytes;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) check(1);
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buf, int off, int len) throws IOException {
+            int n = super.read(buf, off, len);
+            if (n > 0) check(n);
+            return n;
+        }
+
+        private void check(int n) throws IOException {
+            count += n;
+            if (count > maxBytes) {
+                throw new IOException("解压后的请求体超过上限 " + maxBytes + " 字节");
+            }
+        }
+    }
+
+    /**
+     * 把普通 InputStream 适配为 ServletInputStream
+     */
+    private static class DelegatingServletInputStream extends ServletInputStream {
+
+        private final InputStream delegate;
+        private boolean finished = false;
+
+        DelegatingServletInputStream(InputStream delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = delegate.read();
+            if (b < 0) finished = true;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buf, int off, int len) throws IOException {
+            int n = delegate.read(buf, off, len);
+            if (n < 0) finished = true;
+            return n;
+        }
+
+        @Override
+        public boolean isFinished() {
+            return finished;
+        }
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        /**
+         * 解压流的数据随时可读 ({@link #isReady()} 恒为 true)，注册后立即在当前线程回调：
+         * 监听器在 onDataAvailable 里按 isReady() 循环读完，读到末尾再通知 onAllDataRead
+         */
+        @Override
+        public void setReadListener(ReadListener readListener) {
+            Objects.requireNonNull(readListener, "readListener");
+            try {
+                if (!finished) {
+                    readListener.onDataAvailable();
+                }
+                if (finished) {
+                    readListener.onAllDataRead();
+                }
+            } catch (Throwable ex) {
+                readListener.onError(ex);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            delegate.close();
+        }
+    }
+}
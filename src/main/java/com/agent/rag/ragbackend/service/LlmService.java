@@ -2,10 +2,19 @@ package com.agent.rag.ragbackend.service;
 
 import com.agent.rag.ragbackend.config.LlmConfig;
 import com.agent.rag.ragbackend.config.ProviderConfig;
+import com.agent.rag.ragbackend.config.StreamConfig;
 import com.agent.rag.ragbackend.dto.request.LlmCompletionRequest;
 import com.agent.rag.ragbackend.dto.request.OpenAiRequest;
 import com.agent.rag.ragbackend.dto.response.OpenAiResponse;
 import com.agent.rag.ragbackend.dto.response.RagResponse;
+import com.agent.rag.ragbackend.service.overload.LoadTicket;
+import com.agent.rag.ragbackend.service.pipeline.PreGenerationPipeline;
+import com.agent.rag.ragbackend.service.pipeline.PromptContext;
+import com.agent.rag.ragbackend.service.stream.SseFrameCoalescer;
+import com.agent.rag.ragbackend.service.stream.StreamSession;
+import com.agent.rag.ragbackend.service.stream.ThinkTagSplitter;
+import com.agent.rag.ragbackend.service.trace.RequestTrace;
+import com.agent.rag.ragbackend.service.trace.TracePhase;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -19,23 +28,22 @@ import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.web.reactive.function.client.WebClient;
-import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import reactor.core.publisher.Flux;
 
-import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executor;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.TimeoutException;
 
 @Slf4j
 @Service
@@ -45,48 +53,84 @@ public class LlmService {
     private final RestTemplate restTemplate = new RestTemplate();
     private final WebClient webClient = WebClient.builder().build();
     private final LlmConfig llmConfig;
+    private final StreamConfig streamConfig;
+    private final PreGenerationPipeline preGenerationPipeline;
     private final ObjectMapper objectMapper = new ObjectMapper();
 
     @Qualifier("dbExecutor")
     private final Executor dbExecutor;
 
-    public RagResponse<Object> chat(LlmCompletionRequest request) throws JsonProcessingException {
+    @Qualifier("streamScheduler")
+    private final ThreadPoolTaskScheduler streamScheduler;
+
+    @Qualifier("chatExecutor")
+    private final Executor chatExecutor;
+
+    public RagResponse<Object> chat(LlmCompletionRequest request, RequestTrace trace) throws JsonProcessingException {
         // (保持原有的 chat 代码逻辑不变)
         // 为了节省篇幅，这里省略 chat 方法的具体实现，仅展示修改的核心部分
         ProviderConfig config = ProviderConfig.fromCode(request.getProvider());
         // 优先使用前端传入的baseUrl，如果没有则使用默认的
         String baseUrl = request.getBaseUrl() != null ? request.getBaseUrl() : config.getBaseUrl();
         String apiUrl = baseUrl + "/chat/completions";
-        OpenAiRequest requestBody = buildOpenAiRequest(request, config, false);
         HttpHeaders headers = new HttpHeaders();
         headers.setContentType(MediaType.APPLICATION_JSON);
         headers.setBearerAuth(request.getApiKey());
+        String outcome = "error";
+        OpenAiRequest requestBody = null;
         try {
+            // 并发执行检索等前置步骤，再拼装 Prompt (放在 try 内：出错也要结束追踪并返回统一的错误响应)
+            PromptContext promptContext = prepare(request, trace);
+            trace.begin(TracePhase.PROMPT_BUILD);
+            requestBody = buildOpenAiRequest(request, config, false, promptContext);
+            trace.end(TracePhase.PROMPT_BUILD);
             HttpEntity<OpenAiRequest> entity = new HttpEntity<>(requestBody, headers);
+            trace.begin(TracePhase.UPSTREAM_TTFT);
             ResponseEntity<OpenAiResponse> response = restTemplate.postForEntity(apiUrl, entity, OpenAiResponse.class);
+            trace.end(TracePhase.UPSTREAM_TTFT);
             if (response.getBody() != null && !response.getBody().getChoices().isEmpty()) {
                 OpenAiResponse.Message message = response.getBody().getChoices().get(0).getMessage();
+                outcome = "ok";
                 return processSyncResponse(message);
             }
             return RagResponse.error("⚠️ 模型返回了空内容");
         } catch (HttpClientErrorException e) {
-            return handleClientError(e, requestBody.getModel());
+            return handleClientError(e, requestBody != null ? requestBody.getModel() : request.getModel());
         } catch (Exception e) {
             log.error("LLM System Error", e);
             return RagResponse.error("🐞 系统错误: " + e.getMessage());
+        } finally {
+            trace.finish(outcome, 0);
         }
     }
 
+    /**
+     * 执行前置流水线，并把各步骤耗时记到追踪里
+     */
+    private PromptContext prepare(LlmCompletionRequest request, RequestTrace trace) {
+        trace.begin(TracePhase.RETRIEVAL);
+        PromptContext promptContext = preGenerationPipeline.prepare(request);
+        trace.end(TracePhase.RETRIEVAL);
+        trace.steps(promptContext.getStepMillis(), promptContext.getDegradedSteps());
+        return promptContext;
+    }
+
     /**
      * 流式对话接口（SSE） + 异步入库
-     * 修复了 Null 问题，并整合了思考过程的存储
+     * 生成结果写入可续传会话，由会话负责推送给当前挂载的前端连接
+     *
+     * @param ticket 过载保护的受理凭证，收到首个数据块时记录首字延迟，结束 (完成 / 出错 / 取消) 时归还
      */
-    public void streamChat(LlmCompletionRequest request, SseEmitter emitter) {
+    public void streamChat(LlmCompletionRequest request, StreamSession session, RequestTrace trace, LoadTicket ticket) {
         ProviderConfig config = ProviderConfig.fromCode(request.getProvider());
         String baseUrl = request.getBaseUrl() != null ? request.getBaseUrl() : config.getBaseUrl();
         String apiUrl = baseUrl + "/chat/completions";
 
-        OpenAiRequest requestBody = buildOpenAiRequest(request, config, true);
+        // 并发执行检索等前置步骤，再拼装 Prompt
+        PromptContext promptContext = prepare(request, trace);
+        trace.begin(TracePhase.PROMPT_BUILD);
+        OpenAiRequest requestBody = buildOpenAiRequest(request, config, true, promptContext);
+        trace.end(TracePhase.PROMPT_BUILD);
         log.info("🚀 [StreamStart] 开始发起流式请求: {}", apiUrl);
 
         // 1. 定义累加器 (必须在 WebClient 请求之前定义)
@@ -97,9 +141,38 @@ public class LlmService {
 
         String conversationId = request.getConversationId();
         StringBuilder lineBuffer = new StringBuilder();
+        // 是否已收到首个数据块 (只在 Reactor 线程上串行访问)
+        boolean[] firstChunkSeen = {false};
+
+        // SSE 帧合并器：把高频的单 token 增量合并成少量事件发送 (首 token 立即发送)
+        // 窗口到期的补发和 close 后的收尾都在对话线程池执行，调度线程只负责计时
+        SseFrameCoalescer coalescer = new SseFrameCoalescer(
+                session::publishDelta,
+                streamScheduler.getScheduledExecutor(),
+                chatExecutor,
+                streamConfig.getCoalesceWindowMs(),
+                streamConfig.getCoalesceMaxBytes());
+
+        // 内联 <think> 标签拆分器 (QwQ 等模型把思考过程直接写在 content 里)
+        ThinkTagSplitter thinkSplitter = new ThinkTagSplitter();
+        // 拆分结果的出口：一边交给合并器推送 SSE，一边累加到内存
+        ThinkTagSplitter.Sink streamSink = new ThinkTagSplitter.Sink() {
+            @Override
+            public void onThinking(String text) {
+                thinkingBuilder.append(text);
+                coalescer.append("thinking", text);
+            }
 
-        // 2. 发起 WebClient 请求
-        webClient.post()
+            @Override
+            public void onAnswer(String text) {
+                fullResponseBuilder.append(text);
+                coalescer.append("answer", text);
+            }
+        };
+
+        // 2. 发起 WebClient 请求 (订阅交给会话管理：前端断线超过宽限期 / 超时时由会话取消)
+        trace.begin(TracePhase.UPSTREAM_TTFT);
+        Flux<DataBuffer> upstream = webClient.post()
                 .uri(apiUrl)
                 .header("Authorization", "Bearer " + request.getApiKey())
                 .contentType(MediaType.APPLICATION_JSON)
@@ -112,10 +185,25 @@ public class LlmService {
                         log.error("❌ [StreamError] 下游API返回错误状态: {}", response.statusCode());
                         return Flux.error(new RuntimeException("下游API错误: " + response.statusCode()));
                     }
+                });
+        // 空闲超时：相邻两个数据块的间隔 (含首包) 超过阈值即判定上游卡死 (0 = 不限制)
+        if (streamConfig.getIdleTimeoutMs() > 0) {
+            upstream = upstream.timeout(Duration.ofMillis(streamConfig.getIdleTimeoutMs()));
+        }
+        session.bindUpstream(upstream
+                .doOnCancel(() -> {
+                    trace.finish("cancelled", coalescer.getDeltaCount());
+                    ticket.release();
                 })
                 .subscribe(
                         // A. 处理数据流 (OnNext)
                         dataBuffer -> {
+                            if (!firstChunkSeen[0]) {
+                                firstChunkSeen[0] = true;
+                                trace.end(TracePhase.UPSTREAM_TTFT);
+                                trace.begin(TracePhase.STREAMING);
+                                ticket.firstToken();
+                            }
                             try {
                                 String chunk = dataBuffer.toString(StandardCharsets.UTF_8);
                                 DataBufferUtils.release(dataBuffer); // 释放内存
@@ -129,8 +217,7 @@ public class LlmService {
 
                                     if (line.isEmpty()) continue;
 
-                                    // ✨ 核心修改：将 Builder 传入，一边发 SSE 一边存内存
-                                    processLine(line, emitter, fullResponseBuilder, thinkingBuilder);
+                                    processLine(line, thinkSplitter, streamSink);
                                 }
                             } catch (Exception e) {
                                 log.error("❌ [ProcessError] 处理数据块失败", e);
@@ -138,25 +225,38 @@ public class LlmService {
                         },
                         // B. 处理错误 (OnError)
                         error -> {
-                            log.error("❌ [StreamError] 流式生成中断/异常", error);
-                            try {
-                                Map<String, String> errorMap = new HashMap<>();
-                                errorMap.put("error", "后端流连接异常: " + error.getMessage());
-                                emitter.send(SseEmitter.event().name("error").data(errorMap));
-                            } catch (IOException e) {
-                                log.error("发送错误通知失败", e);
+                            String errorMessage;
+                            if (error instanceof TimeoutException) {
+                                log.warn("⏱️ [StreamTimeout] 上游超过 {}ms 没有返回数据，终止生成", streamConfig.getIdleTimeoutMs());
+                                errorMessage = "模型响应超时，请稍后重试";
+                            } else {
+                                log.error("❌ [StreamError] 流式生成中断/异常", error);
+                                errorMessage = "后端流连接异常: " + error.getMessage();
                             }
-                            emitter.completeWithError(error);
+                            // 先把已生成的内容发出去，再通知错误 (在发送线程执行，不阻塞事件循环)
+                            coalescer.close(() -> {
+                                session.fail(errorMessage);
+                                trace.finish("error", coalescer.getDeltaCount());
+                                ticket.release();
+                            });
                         },
                         // C. 处理完成 (OnComplete)
                         () -> {
                             // 处理缓冲区剩余的最后一行
                             if (lineBuffer.length() > 0) {
-                                processLine(lineBuffer.toString().trim(), emitter, fullResponseBuilder, thinkingBuilder);
+                                processLine(lineBuffer.toString().trim(), thinkSplitter, streamSink);
                             }
-
-                            log.info("✅ [StreamDone] 流式请求正常结束");
-                            emitter.complete(); // 关闭前端连接
+                            // 吐出被暂存的半截标签
+                            thinkSplitter.flush(streamSink);
+                            // 发出合并器中剩余的缓冲，全部发出后再发送 done 事件并关闭前端连接
+                            coalescer.close(() -> {
+                                log.info("✅ [StreamDone] 流式请求正常结束, {} 个增量合并为 {} 帧",
+                                        coalescer.getDeltaCount(), coalescer.getFrameCount());
+                                session.complete();
+                                trace.end(TracePhase.STREAMING);
+                                trace.finish("ok", coalescer.getDeltaCount());
+                                ticket.release();
+                            });
 
                             // 3. 构造入库内容
                             String finalContent;
@@ -171,33 +271,34 @@ public class LlmService {
                             // 4. 异步提交到数据库线程池
                             if (!finalContent.isEmpty()) {
                                 String finalContentRef = finalContent; // 确保在 Lambda 中有效
+                                trace.begin(TracePhase.DB_SAVE);
                                 CompletableFuture.runAsync(() -> {
                                     saveToDatabase(conversationId, finalContentRef);
+                                    trace.end(TracePhase.DB_SAVE);
                                 }, dbExecutor); // ⚠️ 确保注入了 dbExecutor
                             }
                         }
-                );
+                ));
     }
 
     /**
      * 处理单行数据
-     * 注意：方法签名已修改，增加了两个 StringBuilder 参数
      */
-    private void processLine(String line, SseEmitter emitter, StringBuilder contentBuilder, StringBuilder thinkingBuilder) {
+    private void processLine(String line, ThinkTagSplitter thinkSplitter, ThinkTagSplitter.Sink sink) {
         if (line.startsWith("data:")) {
             String jsonStr = line.substring(5).trim();
             if ("[DONE]".equals(jsonStr)) {
                 return; // 结束标志，忽略
             }
-            handleStreamChunk(jsonStr, emitter, contentBuilder, thinkingBuilder);
+            handleStreamChunk(jsonStr, thinkSplitter, sink);
         }
     }
 
     /**
      * 处理具体的 JSON 数据块
-     * 这里同时负责：1. 推送给前端 2. 累加到 StringBuilder
+     * 思考过程直接交给 sink；正文先过 think 标签拆分器，再交给 sink
      */
-    private void handleStreamChunk(String jsonStr, SseEmitter emitter, StringBuilder contentBuilder, StringBuilder thinkingBuilder) {
+    private void handleStreamChunk(String jsonStr, ThinkTagSplitter thinkSplitter, ThinkTagSplitter.Sink sink) {
         if (jsonStr == null || jsonStr.trim().isEmpty()) return;
 
         try {
@@ -213,12 +314,7 @@ public class LlmService {
                     if (reasoningNode != null && !reasoningNode.isNull()) {
                         String reasoning = reasoningNode.asText();
                         if (!reasoning.isEmpty()) {
-                            // A. 存入内存
-                            thinkingBuilder.append(reasoning);
-                            // B. 推送前端
-                            Map<String, String> dataMap = new HashMap<>();
-                            dataMap.put("content", reasoning);
-                            emitter.send(SseEmitter.event().name("thinking").data(dataMap));
+                            sink.onThinking(reasoning);
                         }
                     }
                 }
@@ -229,19 +325,12 @@ public class LlmService {
                     if (contentNode != null && !contentNode.isNull()) {
                         String content = contentNode.asText();
                         if (!content.isEmpty()) {
-                            // A. 存入内存
-                            contentBuilder.append(content);
-                            // B. 推送前端
-                            Map<String, String> dataMap = new HashMap<>();
-                            dataMap.put("content", content);
-                            emitter.send(SseEmitter.event().name("answer").data(dataMap));
+                            // 可能包含内联 <think> 标签，交给状态机拆分
+                            thinkSplitter.feed(content, sink);
                         }
                     }
                 }
             }
-        } catch (IOException e) {
-            // 如果连接断开，日志记 warn 即可，不要抛出异常打断流的接收
-            log.warn("⚠️ [SSE] 推送前端失败 (可能是用户关闭了连接): {}", e.getMessage());
         } catch (Exception e) {
             log.error("❌ [Parse] 处理 Chunk 异常", e);
         }
@@ -261,7 +350,8 @@ public class LlmService {
         }
     }
 
-    private OpenAiRequest buildOpenAiRequest(LlmCompletionRequest request, ProviderConfig config, boolean isStream) {
+    private OpenAiRequest buildOpenAiRequest(LlmCompletionRequest request, ProviderConfig config, boolean isStream,
+                                             PromptContext promptContext) {
         // (逻辑保持不变，参考你原本的代码)
         String actualModel = (request.getModel() != null && !request.getModel().isEmpty())
                 ? request.getModel()
@@ -271,19 +361,15 @@ public class LlmService {
         // ... System Prompt 逻辑 ...
         messages.add(OpenAiRequest.Message.builder()
                 .role("system")
-                .content("你是一个专业的知识库助手...") // 简化
+                .content(buildSystemPrompt(promptContext))
                 .build());
 
-        List<LlmCompletionRequest.LlmMessage> context = request.getContext();
-        if (context != null && !context.isEmpty()) {
-            int start = Math.max(0, context.size() - 20);
-            for (int i = start; i < context.size(); i++) {
-                LlmCompletionRequest.LlmMessage msg = context.get(i);
-                messages.add(OpenAiRequest.Message.builder()
-                        .role(msg.getRole())
-                        .content(msg.getContent())
-                        .build());
-            }
+        // 历史消息已由前置流水线截取好
+        for (LlmCompletionRequest.LlmMessage msg : promptContext.getHistory()) {
+            messages.add(OpenAiRequest.Message.builder()
+                    .role(msg.getRole())
+                    .content(msg.getContent())
+                    .build());
         }
 
         messages.add(OpenAiRequest.Message.builder()
@@ -297,6 +383,11 @@ public class LlmService {
                 .stream(isStream);
 
         boolean userWantsThinking = Boolean.TRUE.equals(request.getEnableDeepThinking());
+        if (userWantsThinking && request.getLoadLevel().disableThinking()) {
+            // 过载降级：深度思考显著拉长生成时间，先保证能答上
+            log.info("🚥 [Overload] 负载等级 {}，本次关闭深度思考", request.getLoadLevel().label());
+            userWantsThinking = false;
+        }
         if (userWantsThinking) {
             if (llmConfig.supportsDeepThinking(actualModel)) {
                 if (isAliyunQwen(request.getProvider(), actualModel)) {
@@ -309,6 +400,23 @@ public class LlmService {
         return requestBuilder.build();
     }
 
+    /**
+     * 拼装 System Prompt：基础设定 + 检索到的知识片段
+     */
+    private String buildSystemPrompt(PromptContext promptContext) {
+        StringBuilder prompt = new StringBuilder("你是一个专业的知识库助手..."); // 简化
+        List<PromptContext.Snippet> snippets = promptContext.getSnippets();
+        if (!snippets.isEmpty()) {
+            prompt.append("\n\n以下是从用户笔记中检索到的参考资料，请优先依据这些内容回答：");
+            for (int i = 0; i < snippets.size(); i++) {
+                PromptContext.Snippet snippet = snippets.get(i);
+                prompt.append("\n\n[").append(i + 1).append("] 来源: ").append(snippet.source())
+                        .append("\n").append(snippet.text());
+            }
+        }
+        return prompt.toString();
+    }
+
     private RagResponse<Object> processSyncResponse(OpenAiResponse.Message message) {
         String rawContent = message.getContent();
         String thinkingContent = message.getThinking();
@@ -318,8 +426,10 @@ public class LlmService {
         if (thinkingContent != null && !thinkingContent.isEmpty()) {
             finalThinking = thinkingContent;
         } else if (rawContent != null && rawContent.contains("<think>")) {
-            finalThinking = extractThinkContent(rawContent);
-            finalAnswer = removeThinkTags(rawContent);
+            // 与流式接口复用同一个拆分器
+            ThinkTagSplitter.Result split = ThinkTagSplitter.split(rawContent);
+            finalThinking = split.thinking();
+            finalAnswer = split.answer();
         }
 
         Map<String, Object> result = new HashMap<>();
@@ -344,14 +454,4 @@ public class LlmService {
     private boolean isDeepSeek(String model) {
         return model != null && model.toLowerCase().contains("deepseek");
     }
-
-    private String extractThinkContent(String text) {
-        Pattern pattern = Pattern.compile("(?s)<think>(.*?)</think>");
-        Matcher matcher = pattern.matcher(text);
-        return matcher.find() ? matcher.group(1).trim() : "";
-    }
-
-    private String removeThinkTags(String text) {
-        return text.replaceAll("(?s)<think>.*?</think>", "").trim();
-    }
 }
\ No newline at end of file
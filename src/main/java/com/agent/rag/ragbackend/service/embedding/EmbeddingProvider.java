@@ -0,0 +1,27 @@
+package com.agent.rag.ragbackend.service.embedding;
+
+import java.util.List;
+
+/**
+ * 向量化厂商适配接口
+ *
+ * <p>实现类注册为 Spring Bean 后由 {@link EmbeddingService} 按厂商编码选择，
+ * 批量切分和并发控制都由 EmbeddingService 负责，实现类只处理“一批”。</p>
+ */
+public interface EmbeddingProvider {
+
+    /**
+     * 是否支持该厂商编码 (e.g., local, aliyun, openai)
+     */
+    boolean supports(String provider);
+
+    /**
+     * 单次请求允许的最大批量
+     */
+    int maxBatchSize(String provider);
+
+    /**
+     * 向量化一批文本，返回顺序与入参一致
+     */
+    List<float[]> embedBatch(String provider, String model, List<String> texts, String apiKey);
+}
@@ -0,0 +1,193 @@
+package com.agent.rag.ragbackend.service.embedding;
+
+import com.agent.rag.ragbackend.config.EmbeddingConfig;
+import com.agent.rag.ragbackend.service.scheduling.WorkloadGovernor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 向量化服务
+ *
+ * <p>逐条调用厂商接口会让入库时间几乎全部耗在网络往返上，这里统一做两件事：</p>
+ * <ul>
+ *     <li>按厂商允许的最大批量把文本切成批次；</li>
+ *     <li>批次并发提交，全局同时在途的批次数受 max-concurrent-batches 限制 (所有同步请求共享)。</li>
+ * </ul>
+ *
+ * <p>同时累计吞吐量 (条/秒)，通过 /api/rag/stats 查看。</p>
+ */
+@Slf4j
+@Service
+public class EmbeddingService {
+
+    private final List<EmbeddingProvider> providers;
+    private final EmbeddingConfig embeddingConfig;
+    private final Executor embeddingExecutor;
+    private final WorkloadGovernor workloadGovernor;
+
+    /**
+     * 全局在途批次数限制
+     */
+    private final Semaphore batchPermits;
+
+    private final LongAdder totalTexts = new LongAdder();
+    private final LongAdder totalBatches = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+
+    public EmbeddingService(List<EmbeddingProvider> providers,
+                            EmbeddingConfig embeddingConfig,
+                            @Qualifier("embeddingExecutor") Executor embeddingExecutor,
+                            WorkloadGovernor workloadGovernor) {
+        this.providers = providers;
+        this.embeddingConfig = embeddingConfig;
+        this.embeddingExecutor = embeddingExecutor;
+        this.workloadGovernor = workloadGovernor;
+        this.batchPermits = new Semaphore(Math.max(1, embeddingConfig.getMaxConcurrentBatches()), true);
+    }
+
+    /**
+     * 一次向量化的结果
+     *
+     * @param vectors 与入参顺序一致的向量
+     */
+    public record EmbeddingResult(List<float[]> vectors, int batches, long elapsedMillis) {
+
+        /**
+         * 吞吐量 (条/秒)
+         */
+        public double textsPerSecond() {
+            return elapsedMillis == 0 ? vectors.size() * 1000.0 : vectors.size() * 1000.0 / elapsedMillis;
+        }
+    }
+
+    /**
+     * 批量向量化
+     *
+     * @param provider 厂商编码，为空时使用默认厂商
+     * @param model    模型名称，为空时使用该厂商的默认模型 (未配置则抛 IllegalArgumentException)
+     * @param apiKey   API Key，为空时使用配置中的服务端 Key
+     */
+    public EmbeddingResult embedAll(List<String> texts, String provider, String model, String apiKey) {
+        if (texts.isEmpty()) {
+            return new EmbeddingResult(Collections.emptyList(), 0, 0);
+        }
+        String actualProvider = resolveProvider(provider);
+        String actualModel = resolveModel(provider, model);
+        String actualKey = apiKey != null ? apiKey : embeddingConfig.getApiKeys().get(actualProvider);
+        EmbeddingProvider delegate = findProvider(actualProvider);
+        int batchSize = Math.max(1, delegate.maxBatchSize(actualProvider));
+
+        long start = System.nanoTime();
+        List<CompletableFuture<List<float[]>>> futures = new ArrayList<>();
+        for (int from = 0; from < texts.size(); from += batchSize) {
+            List<String> batch = texts.subList(from, Math.min(texts.size(), from + batchSize));
+            futures.add(CompletableFuture.supplyAsync(
+                    () -> embedWithPermit(delegate, actualProvider, actualModel, batch, actualKey),
+                    embeddingExecutor));
+        }
+
+        List<float[]> vectors = new ArrayList<>(texts.size());
+        try {
+            for (CompletableFuture<List<float[]>> future : futures) {
+                vectors.addAll(future.join());
+            }
+        } catch (CompletionException e) {
+            futures.forEach(f -> f.cancel(false));
+            throw new IllegalStateException("向量化失败: " + e.getCause().getMessage(), e.getCause());
+        }
+
+        long elapsedNanos = System.nanoTime() - start;
+        totalTexts.add(texts.size());
+        totalBatches.add(futures.size());
+        totalNanos.add(elapsedNanos);
+
+        EmbeddingResult result = new EmbeddingResult(vectors, futures.size(), elapsedNanos / 1_000_000);
+        log.info("🧮 [Embedding] {}/{} 向量化 {} 条, {} 批, 耗时 {}ms, 吞吐 {} 条/秒",
+                actualProvider, actualModel, texts.size(), futures.size(), result.elapsedMillis(),
+                String.format("%.1f", result.textsPerSecond()));
+        return result;
+    }
+
+    /**
+     * 单条向量化 (检索时的问题向量)，不经过批处理线程池
+     */
+    public float[] embedOne(String text, String provider, String model, String apiKey) {
+        String actualProvider = resolveProvider(provider);
+        String actualKey = apiKey != null ? apiKey : embeddingConfig.getApiKeys().get(actualProvider);
+        return findProvider(actualProvider)
+                .embedBatch(actualProvider, resolveModel(provider, model), List.of(text), actualKey)
+                .get(0);
+    }
+
+    /**
+     * 解析默认值后的向量空间 (与 embedAll / embedOne 实际使用的厂商、模型一致)
+     */
+    public EmbeddingSpace resolveSpace(String provider, String model) {
+        return new EmbeddingSpace(resolveProvider(provider), resolveModel(provider, model));
+    }
+
+    /**
+     * 累计吞吐统计
+     */
+    public double getTotalTextsPerSecond() {
+        long nanos = totalNanos.sum();
+        return nanos == 0 ? 0 : totalTexts.sum() * 1_000_000_000.0 / nanos;
+    }
+
+    public long getTotalTexts() {
+        return totalTexts.sum();
+    }
+
+    public long getTotalBatches() {
+        return totalBatches.sum();
+    }
+
+    private List<float[]> embedWithPermit(EmbeddingProvider delegate, String provider, String model,
+                                          List<String> batch, String apiKey) {
+        // 同步是后台负载：对话延迟有风险时先让路再占用名额 (问题向量走 embedOne，不受影响)
+        workloadGovernor.yieldToInteractive();
+        try {
+            batchPermits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("向量化被中断", e);
+        }
+        try {
+            return delegate.embedBatch(provider, model, batch, apiKey);
+        } finally {
+            batchPermits.release();
+        }
+    }
+
+    private String resolveProvider(String provider) {
+        return provider == null || provider.isBlank() ? embeddingConfig.getDefaultProvider() : provider;
+    }
+
+    private String resolveModel(String provider, String model) {
+        if (model != null && !model.isBlank()) return model;
+        // 只指定了厂商：用该厂商的默认模型，不能把 null 发给上游，也不能拿它当向量空间的键
+        String actualProvider = resolveProvider(provider);
+        String defaultModel = embeddingConfig.defaultModelFor(actualProvider);
+        if (defaultModel == null || defaultModel.isBlank()) {
+            throw new IllegalArgumentException("未配置向量化模型: " + actualProvider);
+        }
+        return defaultModel;
+    }
+
+    private EmbeddingProvider findProvider(String provider) {
+        return providers.stream()
+                .filter(p -> p.supports(provider))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("不支持的向量化厂商: " + provider));
+    }
+}
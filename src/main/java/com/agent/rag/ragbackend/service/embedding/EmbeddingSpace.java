@@ -0,0 +1,43 @@
+package com.agent.rag.ragbackend.service.embedding;
+
+import java.util.Objects;
+
+/**
+ * 向量空间：产生向量的 (厂商, 模型)
+ *
+ * <p>不同模型的向量不可比，即使维度碰巧相同，混在一起打分也毫无意义。
+ * 入库时记录到仓库索引上，检索时问题向量必须用同一个空间生成。</p>
+ *
+ * @param provider 厂商编码 (已解析默认值)
+ * @param model    模型名称，为 null 表示由厂商决定默认模型
+ */
+public record EmbeddingSpace(String provider, String model) {
+
+    public EmbeddingSpace {
+        Objects.requireNonNull(provider, "provider");
+    }
+
+    /**
+     * 紧凑表示 provider/model，用于日志和清单
+     */
+    public String key() {
+        return provider + "/" + (model != null ? model : "");
+    }
+
+    /**
+     * 解析 {@link #key()} 的结果
+     */
+    public static EmbeddingSpace parse(String key) {
+        int sep = key.indexOf('/');
+        if (sep < 0) {
+            return new EmbeddingSpace(key, null);
+        }
+        String model = key.substring(sep + 1);
+        return new EmbeddingSpace(key.substring(0, sep), model.isEmpty() ? null : model);
+    }
+
+    @Override
+    public String toString() {
+        return key();
+    }
+}
@@ -0,0 +1,97 @@
+package com.agent.rag.ragbackend.service.embedding;
+
+import com.agent.rag.ragbackend.config.EmbeddingConfig;
+import lombok.RequiredArgsConstructor;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 本地哈希 n-gram 向量 (provider = local)
+ *
+ * <p>把文本的字符 2-gram / 3-gram 通过特征哈希 (带符号) 映射到固定维度，再做 L2 归一化。
+ * 结果是确定性的，不依赖任何外部服务，用于离线跑通入库 / 检索流程和压测；
+ * 语义能力有限，生产环境请配置真实的向量模型。</p>
+ *
+ * <p>逐字符滚动计算哈希，不为每个 n-gram 创建子串。</p>
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+@RequiredArgsConstructor
+public class LocalHashEmbeddingProvider implements EmbeddingProvider {
+
+    public static final String PROVIDER = "local";
+
+    private static final int FNV_OFFSET = 0x811c9dc5;
+    private static final int FNV_PRIME = 0x01000193;
+
+    private final EmbeddingConfig embeddingConfig;
+
+    @Override
+    public boolean supports(String provider) {
+        return PROVIDER.equalsIgnoreCase(provider);
+    }
+
+    @Override
+    public int maxBatchSize(String provider) {
+        // 本地计算没有请求大小限制，批量只影响并发粒度
+        return embeddingConfig.batchSizeFor(PROVIDER);
+    }
+
+    @Override
+    public List<float[]> embedBatch(String provider, String model, List<String> texts, String apiKey) {
+        List<float[]> vectors = new ArrayList<>(texts.size());
+        for (String text : texts) {
+            vectors.add(embed(text, embeddingConfig.getLocalDimension()));
+        }
+        return vectors;
+    }
+
+    /**
+     * 计算单条文本的哈希向量
+     */
+    public static float[] embed(String text, int dimension) {
+        float[] vector = new float[dimension];
+        if (text == null || text.isEmpty()) return vector;
+
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            // 从位置 i 开始依次累积 2-gram、3-gram 的哈希
+            int hash = FNV_OFFSET;
+            for (int n = 0; n < 3 && i + n < length; n++) {
+                char c = Character.toLowerCase(text.charAt(i + n));
+                if (Character.isWhitespace(c)) break;
+                hash = (hash ^ c) * FNV_PRIME;
+                if (n >= 1) {
+                    addFeature(vector, hash);
+                }
+            }
+        }
+        normalize(vector);
+        return vector;
+    }
+
+    private static void addFeature(float[] vector, int hash) {
+        // 再混合一次，低位取下标、最高位取符号，降低哈希冲突带来的偏差
+        int mixed = hash ^ (hash >>> 16);
+        mixed *= 0x85ebca6b;
+        mixed ^= mixed >>> 13;
+        int index = Math.floorMod(mixed, vector.length);
+        vector[index] += (mixed & 0x80000000) == 0 ? 1f : -1f;
+    }
+
+    static void normalize(float[] vector) {
+        double norm = 0;
+        for (float v : vector) {
+            norm += v * v;
+        }
+        if (norm == 0) return;
+        float inv = (float) (1.0 / Math.sqrt(norm));
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] *= inv;
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.agent.rag.ragbackend.service.embedding;
+
+import com.agent.rag.ragbackend.config.EmbeddingConfig;
+import com.agent.rag.ragbackend.config.ProviderConfig;
+import com.agent.rag.ragbackend.dto.request.EmbeddingRequest;
+import com.agent.rag.ragbackend.dto.response.EmbeddingResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * OpenAI 兼容的远程向量化接口 (阿里云 DashScope 兼容模式 / OpenAI / Ollama ...)
+ *
+ * <p>作为兜底实现，支持 local 以外的所有厂商编码，服务地址取自 {@link ProviderConfig}。</p>
+ */
+@Slf4j
+@Component
+@Order(Ordered.LOWEST_PRECEDENCE)
+public class OpenAiEmbeddingProvider implements EmbeddingProvider {
+
+    private final RestTemplate restTemplate;
+    private final EmbeddingConfig embeddingConfig;
+
+    public OpenAiEmbeddingProvider(EmbeddingConfig embeddingConfig) {
+        this.embeddingConfig = embeddingConfig;
+        // 连接 / 读取超时：检索步骤被流水线取消时，阻塞的 socket 读不会响应中断
+        SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+        requestFactory.setConnectTimeout(embeddingConfig.getConnectTimeoutMs());
+        requestFactory.setReadTimeout(embeddingConfig.getReadTimeoutMs());
+        this.restTemplate = new RestTemplate(requestFactory);
+    }
+
+    @Override
+    public boolean supports(String provider) {
+        return !LocalHashEmbeddingProvider.PROVIDER.equalsIgnoreCase(provider);
+    }
+
+    @Override
+    public int maxBatchSize(String provider) {
+        return embeddingConfig.batchSizeFor(provider);
+    }
+
+    @Override
+    public List<float[]> embedBatch(String provider, String model, List<String> texts, String apiKey) {
+        ProviderConfig config = ProviderConfig.fromCode(provider);
+        String apiUrl = config.getBaseUrl() + "/embeddings";
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        if (apiKey != null) {
+            headers.setBearerAuth(apiKey);
+        }
+        EmbeddingRequest body = EmbeddingRequest.builder().model(model).input(texts).build();
+
+        ResponseEntity<EmbeddingResponse> response =
+                restTemplate.postForEntity(apiUrl, new HttpEntity<>(body, headers), EmbeddingResponse.class);
+        EmbeddingResponse result = response.getBody();
+        if (result == null || result.getData() == null || result.getData().size() != texts.size()) {
+            throw new IllegalStateException("向量化接口返回条数与请求不一致: " + apiUrl);
+        }
+
+        // 按 index 归位，厂商不保证返回顺序；下标越界、重复或缺失都说明响应不可信，整批失败
+        float[][] ordered = new float[texts.size()][];
+        for (EmbeddingResponse.Item item : result.getData()) {
+            int index = item.getIndex();
+            if (index < 0 || index >= ordered.length || ordered[index] != null) {
+                throw new IllegalStateException("向量化接口返回了非法或重复的下标 " + index + ": " + apiUrl);
+            }
+            float[] vector = item.getEmbedding();
+            if (vector == null || vector.length == 0) {
+                throw new IllegalStateException("向量化接口返回了空向量 (下标 " + index + "): " + apiUrl);
+            }
+            LocalHashEmbeddingProvider.normalize(vector);
+            ordered[index] = vector;
+        }
+        return new ArrayList<>(Arrays.asList(ordered));
+    }
+}
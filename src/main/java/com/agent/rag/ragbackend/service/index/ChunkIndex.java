@@ -0,0 +1,706 @@
+package com.agent.rag.ragbackend.service.index;
+
+import com.agent.rag.ragbackend.config.IndexConfig;
+import lombok.extern.slf4j.Slf4j;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 切片索引 (向量 + 关键词)，一个实例是某个仓库的一个分片，由 {@link VaultIndex} 管理
+ *
+ * <p>结构上是一组只读的 {@link IndexSegment}：</p>
+ * <ul>
+ *     <li>写入 (同步) 时把一批切片构建成新段追加进来；</li>
+ *     <li>删除 / 覆盖只给旧切片打墓碑，查询时过滤；</li>
+ *     <li>重命名复用已有的向量，只重建路径和倒排，不重新向量化；</li>
+ *     <li>墓碑比例或段数超过阈值后，由后台 {@link IndexCompactor} 调用 {@link #compact()} 合并重建。</li>
+ * </ul>
+ *
+ * <p>段列表通过 volatile 引用整体替换，读操作不加锁，合并期间也不会阻塞检索；
+ * 写操作之间由一把写锁串行化。</p>
+ *
+ * <p>向量可按 rag.index.quantization 量化存储：粗排只用堆内的压缩编码，
+ * 取 topK × rescore-factor 个候选读取落盘的全精度向量重打分。
+ * rescore-factor 由 {@link RecallCalibrator} 按实测召回率自动调整。</p>
+ */
+@Slf4j
+public class ChunkIndex {
+
+    /**
+     * BM25 参数
+     */
+    private static final double BM25_K1 = 1.2;
+    private static final double BM25_B = 0.75;
+
+    /**
+     * 切片位置
+     */
+    private record Location(IndexSegment segment, int slot) {
+    }
+
+    /**
+     * 快照时刻的分片状态
+     *
+     * @param tombstones 与 segments 一一对应的墓碑位图副本
+     */
+    record Capture(List<IndexSegment> segments, List<long[]> tombstones, int rescoreFactor) {
+
+        /**
+         * 段文件写完后放掉 capture 时加的引用
+         */
+        void release() {
+            segments.forEach(IndexSegment::unretain);
+        }
+    }
+
+    /**
+     * 粗排候选
+     */
+    private record ScoredSlot(IndexSegment segment, int slot, double score) {
+    }
+
+    /**
+     * 当前所有段 (只整体替换，不原地修改)
+     */
+    private volatile List<IndexSegment> segments = List.of();
+
+    /**
+     * 笔记路径 → 存活切片位置 (只在写锁内访问)
+     */
+    private final Map<String, List<Location>> locationsByPath = new HashMap<>();
+
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final ReentrantLock compactLock = new ReentrantLock();
+
+    private final VectorQuantization quantization;
+    private final Path dataDir;
+
+    /**
+     * 量化存储时粗排候选数 = topK × rescoreFactor
+     */
+    private volatile int rescoreFactor;
+
+    /**
+     * 内容版本号 (写入 / 删除 / 重命名时递增，合并不变)
+     */
+    private final AtomicLong version = new AtomicLong();
+
+    /**
+     * 最近一次实测的 recall@10 (未校准过为 NaN)
+     */
+    private volatile double lastRecall = Double.NaN;
+
+    public ChunkIndex(IndexConfig indexConfig) {
+        this.quantization = VectorQuantization.of(indexConfig.getQuantization());
+        this.dataDir = Path.of(indexConfig.getDataDir());
+        this.rescoreFactor = Math.max(1, indexConfig.getRescoreFactor());
+    }
+
+    // ==========================================
+    // 写操作
+    // ==========================================
+
+    /**
+     * 批量写入：每个笔记的新切片整体替换旧切片，整批构建成一个新段
+     */
+    public void upsertAll(Map<String, List<IndexedChunk>> chunksByPath) {
+        List<IndexedChunk> all = new ArrayList<>();
+        chunksByPath.values().forEach(all::addAll);
+        // 分词建倒排放在锁外
+        IndexSegment segment = all.isEmpty() ? null : IndexSegment.build(all, quantization, dataDir);
+
+        writeLock.lock();
+        try {
+            chunksByPath.keySet().forEach(this::tombstonePath);
+            if (segment != null) {
+                appendSegment(segment);
+            }
+            version.incrementAndGet();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * 删除笔记：只打墓碑，空间由后台合并回收
+     *
+     * @return 被删除的切片数
+     */
+    public int delete(String path) {
+        writeLock.lock();
+        try {
+            int deleted = tombstonePath(path);
+            if (deleted > 0) version.incrementAndGet();
+            return deleted;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * 重命名笔记：复用原向量，换成新路径后追加新段，旧切片打墓碑
+     *
+     * @return 被迁移的切片数，0 表示原路径不存在
+     */
+    public int rename(String fromPath, String toPath, String toTitle) {
+        writeLock.lock();
+        try {
+            List<Location> locations = locationsByPath.get(fromPath);
+            if (locations == null || locations.isEmpty()) return 0;
+
+            List<IndexedChunk> moved = new ArrayList<>(locations.size());
+            for (Location location : locations) {
+                moved.add(location.segment().fullChunk(location.slot()).movedTo(toPath, toTitle));
+            }
+            tombstonePath(toPath);
+            tombstonePath(fromPath);
+            appendSegment(IndexSegment.build(moved, quantization, dataDir));
+            version.incrementAndGet();
+            return moved.size();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * 某篇笔记的全部存活切片 (带全精度向量)，用于跨分片迁移
+     */
+    public List<IndexedChunk> chunksOf(String path) {
+        writeLock.lock();
+        try {
+            List<Location> locations = locationsByPath.getOrDefault(path, List.of());
+            List<IndexedChunk> chunks = new ArrayList<>(locations.size());
+            for (Location location : locations) {
+                chunks.add(location.segment().fullChunk(location.slot()));
+            }
+            return chunks;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * 导出全部存活切片 (带全精度向量)，用于分片拆分
+     */
+    public Map<String, List<IndexedChunk>> exportLive() {
+        writeLock.lock();
+        try {
+            Map<String, List<IndexedChunk>> live = new HashMap<>(locationsByPath.size() * 2);
+            locationsByPath.forEach((path, locations) -> {
+                List<IndexedChunk> chunks = new ArrayList<>(locations.size());
+                for (Location location : locations) {
+                    chunks.add(location.segment().fullChunk(location.slot()));
+                }
+                live.put(path, chunks);
+            });
+            return live;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * 分片被拆分替换后释放全部段的向量文件
+     */
+    public void release() {
+        segments.forEach(IndexSegment::release);
+    }
+
+    // ==========================================
+    // 快照 / 恢复
+    // ==========================================
+
+    /**
+     * 在写锁内取段列表和墓碑副本，保证快照中的段与墓碑一致 (合并的替换也在写锁内完成)
+     *
+     * <p>段已加引用，写完段文件后需调用 {@link Capture#release()}。</p>
+     */
+    Capture capture() {
+        writeLock.lock();
+        try {
+            List<IndexSegment> current = acquireSegments();
+            List<long[]> tombstones = current.stream().map(IndexSegment::tombstoneWords).toList();
+            return new Capture(current, tombstones, rescoreFactor);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * 用快照恢复的段初始化 (墓碑已恢复)，重建路径 → 位置映射
+     */
+    void restore(List<IndexSegment> restored) {
+        writeLock.lock();
+        try {
+            locationsByPath.clear();
+            for (IndexSegment segment : restored) {
+                for (int slot = 0; slot < segment.size(); slot++) {
+                    if (segment.isDeleted(slot)) continue;
+                    locationsByPath.computeIfAbsent(segment.chunk(slot).path(), k -> new ArrayList<>())
+                            .add(new Location(segment, slot));
+                }
+            }
+            segments = List.copyOf(restored);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * 丢弃一个损坏的段，连同其中存活切片所属笔记的全部切片
+     *
+     * @return 受影响的笔记路径 (需要客户端重新同步)
+     */
+    Set<String> dropSegment(IndexSegment segment) {
+        writeLock.lock();
+        try {
+            if (!segments.contains(segment)) return Set.of();
+            Set<String> affected = new HashSet<>();
+            for (int slot = 0; slot < segment.size(); slot++) {
+                if (!segment.isDeleted(slot)) affected.add(segment.chunk(slot).path());
+            }
+            affected.forEach(this::tombstonePath);
+            segments = segments.stream().filter(s -> s != segment).toList();
+            version.incrementAndGet();
+            return affected;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    List<IndexSegment> segments() {
+        return segments;
+    }
+
+    public boolean contains(String path) {
+        writeLock.lock();
+        try {
+            return locationsByPath.containsKey(path);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private int tombstonePath(String path) {
+        List<Location> locations = locationsByPath.remove(path);
+        if (locations == null) return 0;
+        for (Location location : locations) {
+            location.segment().delete(location.slot());
+        }
+        return locations.size();
+    }
+
+    /**
+     * 取当前段列表并逐个加引用，用完调用 {@link #releaseSegments(List)}
+     *
+     * <p>合并先替换段列表再释放旧段，加引用失败说明列表已更新，重新读取；
+     * 列表未变则是整个分片已被拆分释放，只返回仍可读的段。</p>
+     */
+    private List<IndexSegment> acquireSegments() {
+        while (true) {
+            List<IndexSegment> current = segments;
+            List<IndexSegment> acquired = new ArrayList<>(current.size());
+            for (IndexSegment segment : current) {
+                if (segment.tryRetain()) acquired.add(segment);
+            }
+            if (acquired.size() == current.size() || segments == current) return acquired;
+            releaseSegments(acquired);
+        }
+    }
+
+    private static void releaseSegments(List<IndexSegment> acquired) {
+        acquired.forEach(IndexSegment::unretain);
+    }
+
+    private void appendSegment(IndexSegment segment) {
+        for (int slot = 0; slot < segment.size(); slot++) {
+            locationsByPath.computeIfAbsent(segment.chunk(slot).path(), k -> new ArrayList<>())
+                    .add(new Location(segment, slot));
+        }
+        List<IndexSegment> next = new ArrayList<>(segments);
+        next.add(segment);
+        segments = List.copyOf(next);
+    }
+
+    // ==========================================
+    // 合并 (后台)
+    // ==========================================
+
+    /**
+     * 把所有段中存活的切片合并重建为一个新段
+     *
+     * <p>构建过程不持有写锁；构建完成后在写锁内补上构建期间新增的墓碑、
+     * 保留构建期间新追加的段，再整体替换段列表。</p>
+     */
+    public void compact() {
+        if (!compactLock.tryLock()) return;
+        try {
+            List<IndexSegment> snapshot = acquireSegments();
+            if (snapshot.isEmpty()) return;
+
+            // 1. 锁外收集存活切片并构建新段
+            List<IndexedChunk> live = new ArrayList<>();
+            List<Location> origins = new ArrayList<>();
+            IndexSegment merged;
+            try {
+                for (IndexSegment segment : snapshot) {
+                    for (int slot = 0; slot < segment.size(); slot++) {
+                        if (segment.isDeleted(slot)) continue;
+                        live.add(segment.fullChunk(slot));
+                        origins.add(new Location(segment, slot));
+                    }
+                }
+                merged = live.isEmpty() ? null : IndexSegment.build(live, quantization, dataDir);
+            } finally {
+                releaseSegments(snapshot);
+            }
+
+            // 2. 锁内对账并替换
+            writeLock.lock();
+            try {
+                Map<IndexSegment, int[]> remap = new IdentityHashMap<>();
+                for (IndexSegment segment : snapshot) {
+                    int[] mapping = new int[segment.size()];
+                    Arrays.fill(mapping, -1);
+                    remap.put(segment, mapping);
+                }
+                for (int newSlot = 0; newSlot < origins.size(); newSlot++) {
+                    Location origin = origins.get(newSlot);
+                    if (origin.segment().isDeleted(origin.slot())) {
+                        // 构建期间被删除
+                        merged.delete(newSlot);
+                    } else {
+                        remap.get(origin.segment())[origin.slot()] = newSlot;
+                    }
+                }
+
+                for (List<Location> locations : locationsByPath.values()) {
+                    for (int i = 0; i < locations.size(); i++) {
+                        Location location = locations.get(i);
+                        int[] mapping = remap.get(location.segment());
+                        if (mapping != null) {
+                            locations.set(i, new Location(merged, mapping[location.slot()]));
+                        }
+                    }
+                }
+
+                Set<IndexSegment> replaced = Collections.newSetFromMap(new IdentityHashMap<>());
+                replaced.addAll(snapshot);
+                List<IndexSegment> next = new ArrayList<>();
+                if (merged != null) next.add(merged);
+                for (IndexSegment segment : segments) {
+                    if (!replaced.contains(segment)) next.add(segment);
+                }
+                segments = List.copyOf(next);
+            } finally {
+                writeLock.unlock();
+            }
+            snapshot.forEach(IndexSegment::release);
+            log.info("🧹 [Compact] 合并 {} 个段为 1 个, 存活切片 {}", snapshot.size(), live.size());
+        } finally {
+            compactLock.unlock();
+        }
+    }
+
+    // ==========================================
+    // 查询 (无锁)
+    // ==========================================
+
+    /**
+     * 向量检索 Top-K (结果带全精度向量)
+     * 维度与查询向量不一致的切片 (来自其他向量模型) 会被跳过
+     */
+    public List<ScoredChunk> searchVector(float[] query, int topK) {
+        return searchVector(query, topK, rescoreFactor);
+    }
+
+    List<ScoredChunk> searchVector(float[] query, int topK, int factor) {
+        List<IndexSegment> current = acquireSegments();
+        try {
+            return searchVector(current, query, topK, factor);
+        } finally {
+            releaseSegments(current);
+        }
+    }
+
+    private static List<ScoredChunk> searchVector(List<IndexSegment> current, float[] query, int topK, int factor) {
+        boolean exact = current.stream().allMatch(segment -> segment.vectors().isExact());
+        int candidates = exact ? topK : topK * Math.max(1, factor);
+        SegmentVectors.PreparedQuery prepared = SegmentVectors.PreparedQuery.of(query);
+
+        // 1. 粗排 (全精度存储时即为最终得分)
+        PriorityQueue<ScoredSlot> heap = new PriorityQueue<>(Comparator.comparingDouble(ScoredSlot::score));
+        for (IndexSegment segment : current) {
+            SegmentVectors vectors = segment.vectors();
+            for (int slot = 0; slot < segment.size(); slot++) {
+                if (segment.isDeleted(slot) || vectors.dimension(slot) != query.length) continue;
+                double score = vectors.score(prepared, slot);
+                if (heap.size() < candidates) {
+                    heap.add(new ScoredSlot(segment, slot, score));
+                } else if (score > heap.peek().score()) {
+                    heap.poll();
+                    heap.add(new ScoredSlot(segment, slot, score));
+                }
+            }
+        }
+
+        // 2. 读取全精度向量重打分
+        PriorityQueue<ScoredChunk> result = new PriorityQueue<>(Comparator.comparingDouble(ScoredChunk::score));
+        for (ScoredSlot candidate : heap) {
+            IndexedChunk chunk = candidate.segment().fullChunk(candidate.slot());
+            double score = candidate.segment().vectors().isExact()
+                    ? candidate.score() : VectorKernels.dot(query, chunk.vector());
+            offer(result, topK, chunk, score);
+        }
+        return drain(result);
+    }
+
+    /**
+     * 全精度暴力检索 (召回率校准的基准)，每个切片的向量只读取一次
+     *
+     * @return 与 queries 一一对应的 Top-K (结果不带向量)
+     */
+    public List<List<ScoredChunk>> searchVectorExact(List<float[]> queries, int topK) {
+        List<IndexSegment> current = acquireSegments();
+        try {
+            return searchVectorExact(current, queries, topK);
+        } finally {
+            releaseSegments(current);
+        }
+    }
+
+    private static List<List<ScoredChunk>> searchVectorExact(List<IndexSegment> current, List<float[]> queries,
+                                                             int topK) {
+        List<PriorityQueue<ScoredChunk>> heaps = new ArrayList<>(queries.size());
+        Set<Integer> dimensions = new HashSet<>();
+        for (float[] query : queries) {
+            heaps.add(new PriorityQueue<>(Comparator.comparingDouble(ScoredChunk::score)));
+            dimensions.add(query.length);
+        }
+        for (IndexSegment segment : current) {
+            SegmentVectors vectors = segment.vectors();
+            for (int slot = 0; slot < segment.size(); slot++) {
+                if (segment.isDeleted(slot) || !dimensions.contains(vectors.dimension(slot))) continue;
+                float[] vector = vectors.vector(slot);
+                for (int q = 0; q < queries.size(); q++) {
+                    if (queries.get(q).length != vector.length) continue;
+                    offer(heaps.get(q), topK, segment.chunk(slot), VectorKernels.dot(queries.get(q), vector));
+                }
+            }
+        }
+        return heaps.stream().map(ChunkIndex::drain).toList();
+    }
+
+    /**
+     * 随机抽取存活切片 (蓄水池抽样，结果带全精度向量)
+     */
+    public List<IndexedChunk> sampleChunks(int count, Random random) {
+        List<IndexSegment> current = acquireSegments();
+        try {
+            return sampleChunks(current, count, random);
+        } finally {
+            releaseSegments(current);
+        }
+    }
+
+    private static List<IndexedChunk> sampleChunks(List<IndexSegment> current, int count, Random random) {
+        List<Location> reservoir = new ArrayList<>(count);
+        int seen = 0;
+        for (IndexSegment segment : current) {
+            for (int slot = 0; slot < segment.size(); slot++) {
+                if (segment.isDeleted(slot)) continue;
+                seen++;
+                if (reservoir.size() < count) {
+                    reservoir.add(new Location(segment, slot));
+                } else {
+                    int replace = random.nextInt(seen);
+                    if (replace < count) reservoir.set(replace, new Location(segment, slot));
+                }
+            }
+        }
+        return reservoir.stream().map(l -> l.segment().fullChunk(l.slot())).toList();
+    }
+
+    /**
+     * 关键词检索 Top-K (BM25)
+     *
+     * <p>文档数、平均长度和 df 都只统计未删除的切片，墓碑在合并前不会影响 idf。</p>
+     */
+    public List<ScoredChunk> searchKeyword(String query, int topK) {
+        List<IndexSegment> current = segments;
+        Set<String> terms = new HashSet<>();
+        KeywordTokenizer.tokenize(query, terms::add);
+        if (terms.isEmpty() || current.isEmpty()) return List.of();
+
+        long docs = 0;
+        long tokens = 0;
+        for (IndexSegment segment : current) {
+            docs += segment.liveCount();
+            tokens += segment.liveTokens();
+        }
+        double avgLength = docs == 0 ? 1 : Math.max(1.0, (double) tokens / docs);
+
+        Map<IndexSegment, double[]> scores = new IdentityHashMap<>();
+        for (String term : terms) {
+            int df = 0;
+            for (IndexSegment segment : current) {
+                IndexSegment.Posting posting = segment.posting(term);
+                if (posting == null) continue;
+                for (int slot : posting.slots()) {
+                    if (!segment.isDeleted(slot)) df++;
+                }
+            }
+            if (df == 0) continue;
+            double idf = Math.log(1 + (docs - df + 0.5) / (df + 0.5));
+
+            for (IndexSegment segment : current) {
+                IndexSegment.Posting posting = segment.posting(term);
+                if (posting == null) continue;
+                double[] segmentScores = scores.computeIfAbsent(segment, s -> new double[s.size()]);
+                for (int i = 0; i < posting.slots().length; i++) {
+                    int slot = posting.slots()[i];
+                    if (segment.isDeleted(slot)) continue;
+                    int tf = posting.tfs()[i];
+                    double norm = BM25_K1 * (1 - BM25_B + BM25_B * segment.docLength(slot) / avgLength);
+                    segmentScores[slot] += idf * tf * (BM25_K1 + 1) / (tf + norm);
+                }
+            }
+        }
+
+        PriorityQueue<ScoredChunk> heap = new PriorityQueue<>(Comparator.comparingDouble(ScoredChunk::score));
+        scores.forEach((segment, segmentScores) -> {
+            for (int slot = 0; slot < segmentScores.length; slot++) {
+                if (segmentScores[slot] > 0) {
+                    offer(heap, topK, segment.chunk(slot), segmentScores[slot]);
+                }
+            }
+        });
+        return drain(heap);
+    }
+
+    // ==========================================
+    // 统计
+    // ==========================================
+
+    public int size() {
+        int live = 0;
+        for (IndexSegment segment : segments) {
+            live += segment.liveCount();
+        }
+        return live;
+    }
+
+    public int deadCount() {
+        int dead = 0;
+        for (IndexSegment segment : segments) {
+            dead += segment.deletedCount();
+        }
+        return dead;
+    }
+
+    /**
+     * 墓碑占比
+     */
+    public double deadRatio() {
+        int total = 0;
+        int dead = 0;
+        for (IndexSegment segment : segments) {
+            total += segment.size();
+            dead += segment.deletedCount();
+        }
+        return total == 0 ? 0 : (double) dead / total;
+    }
+
+    public int segmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * 向量在堆内的占用估算 (字节)
+     */
+    public long vectorBytes() {
+        long bytes = 0;
+        for (IndexSegment segment : segments) {
+            bytes += segment.vectors().memoryBytes();
+        }
+        return bytes;
+    }
+
+    public VectorQuantization getQuantization() {
+        return quantization;
+    }
+
+    public int getRescoreFactor() {
+        return rescoreFactor;
+    }
+
+    public void setRescoreFactor(int rescoreFactor) {
+        this.rescoreFactor = Math.max(1, rescoreFactor);
+    }
+
+    public long getVersion() {
+        return version.get();
+    }
+
+    public double getLastRecall() {
+        return lastRecall;
+    }
+
+    public void setLastRecall(double lastRecall) {
+        this.lastRecall = lastRecall;
+    }
+
+    /**
+     * 全部存活笔记路径 (副本)
+     */
+    public Set<String> paths() {
+        writeLock.lock();
+        try {
+            return new HashSet<>(locationsByPath.keySet());
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public int noteCount() {
+        writeLock.lock();
+        try {
+            return locationsByPath.size();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    private static void offer(PriorityQueue<ScoredChunk> heap, int topK, IndexedChunk chunk, double score) {
+        if (heap.size() < topK) {
+            heap.add(new ScoredChunk(chunk, score));
+        } else if (score > heap.peek().score()) {
+            heap.poll();
+            heap.add(new ScoredChunk(chunk, score));
+        }
+    }
+
+    private static List<ScoredChunk> drain(PriorityQueue<ScoredChunk> heap) {
+        List<ScoredChunk> result = new ArrayList<>(heap);
+        result.sort(Comparator.comparingDouble(ScoredChunk::score).reversed());
+        return result;
+    }
+}
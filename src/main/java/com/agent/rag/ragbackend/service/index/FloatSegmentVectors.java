@@ -0,0 +1,46 @@
+package com.agent.rag.ragbackend.service.index;
+
+/**
+ * 全精度向量，全部在堆内
+ */
+final class FloatSegmentVectors implements SegmentVectors {
+
+    private final float[][] vectors;
+
+    FloatSegmentVectors(float[][] vectors) {
+        this.vectors = vectors;
+    }
+
+    @Override
+    public int dimension(int slot) {
+        return vectors[slot].length;
+    }
+
+    @Override
+    public float score(PreparedQuery query, int slot) {
+        return VectorKernels.dot(query.vector(), vectors[slot]);
+    }
+
+    @Override
+    public boolean isExact() {
+        return true;
+    }
+
+    @Override
+    public float[] vector(int slot) {
+        return vectors[slot];
+    }
+
+    @Override
+    public long memoryBytes() {
+        long bytes = 0;
+        for (float[] vector : vectors) {
+            bytes += 16 + 4L * vector.length;
+        }
+        return bytes;
+    }
+
+    @Override
+    public void release() {
+    }
+}
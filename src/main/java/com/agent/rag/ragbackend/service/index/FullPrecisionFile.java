@@ -0,0 +1,129 @@
+package com.agent.rag.ragbackend.service.index;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.UUID;
+
+/**
+ * 量化段的全精度向量文件 (每段一个，little-endian float 顺序存放)
+ *
+ * <p>只在重打分 / 合并时按槽位随机读取，依赖操作系统页缓存。
+ * 段的最后一个引用放掉后 (见 {@link IndexSegment#release()}) 关闭通道并删除文件。</p>
+ */
+@Slf4j
+final class FullPrecisionFile implements FullPrecisionSource {
+
+    private final Path path;
+    private final FileChannel channel;
+    private final long[] offsets;
+    private final int[] dimensions;
+
+    private FullPrecisionFile(Path path, FileChannel channel, long[] offsets, int[] dimensions) {
+        this.path = path;
+        this.channel = channel;
+        this.offsets = offsets;
+        this.dimensions = dimensions;
+    }
+
+    static FullPrecisionFile write(Path dataDir, float[][] vectors) {
+        Path path = dataDir.resolve("segment-" + UUID.randomUUID() + ".f32");
+        long[] offsets = new long[vectors.length];
+        int[] dimensions = new int[vectors.length];
+        FileChannel channel = null;
+        try {
+            Files.createDirectories(dataDir);
+            channel = FileChannel.open(path,
+                    StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            ByteBuffer buffer = ByteBuffer.allocate(64 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+            long position = 0;
+            for (int slot = 0; slot < vectors.length; slot++) {
+                offsets[slot] = position;
+                dimensions[slot] = vectors[slot].length;
+                for (float v : vectors[slot]) {
+                    if (!buffer.hasRemaining()) {
+                        drain(channel, buffer);
+                    }
+                    buffer.putFloat(v);
+                }
+                position += 4L * vectors[slot].length;
+            }
+            drain(channel, buffer);
+            return new FullPrecisionFile(path, channel, offsets, dimensions);
+        } catch (IOException e) {
+            // 写了一半的文件不会再被引用，关闭通道并删掉
+            if (channel != null) {
+                closeQuietly(channel, path);
+                deleteQuietly(path);
+            }
+            throw new UncheckedIOException("写入全精度向量文件失败: " + path, e);
+        }
+    }
+
+    @Override
+    public float[] read(int slot) {
+        ByteBuffer buffer = ByteBuffer.allocate(4 * dimensions[slot]).order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            long position = offsets[slot];
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position + buffer.position()) < 0) {
+                    throw new IOException("文件提前结束");
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("读取全精度向量失败: " + path, e);
+        }
+        buffer.flip();
+        float[] vector = new float[dimensions[slot]];
+        buffer.asFloatBuffer().get(vector);
+        return vector;
+    }
+
+    /**
+     * 偏移表与维度表的堆内占用
+     */
+    @Override
+    public long indexBytes() {
+        return 12L * offsets.length;
+    }
+
+    /**
+     * 关闭通道并删除文件 (段的所有读取方都已放掉引用)
+     */
+    @Override
+    public void delete() {
+        closeQuietly(channel, path);
+        deleteQuietly(path);
+    }
+
+    private static void closeQuietly(FileChannel channel, Path path) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            log.warn("⚠️ [Index] 关闭全精度向量文件失败 {}: {}", path, e.getMessage());
+        }
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.warn("⚠️ [Index] 删除全精度向量文件失败 {}: {}", path, e.getMessage());
+        }
+    }
+
+    private static void drain(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
@@ -0,0 +1,22 @@
+package com.agent.rag.ragbackend.service.index;
+
+/**
+ * 量化段的全精度向量来源 (重打分 / 合并时按槽位读取)
+ *
+ * <p>新写入的段来自 {@link FullPrecisionFile}；从快照恢复的段直接读取内存映射的段文件
+ * ({@link MappedSegmentVectors})。</p>
+ */
+interface FullPrecisionSource {
+
+    float[] read(int slot);
+
+    /**
+     * 槽位索引 (偏移表 / 维度表) 的堆内占用
+     */
+    long indexBytes();
+
+    /**
+     * 段的最后一个引用放掉后关闭并删除底层文件
+     */
+    void delete();
+}
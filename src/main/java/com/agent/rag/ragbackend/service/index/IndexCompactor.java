@@ -0,0 +1,61 @@
+package com.agent.rag.ragbackend.service.index;
+
+import com.agent.rag.ragbackend.config.IndexConfig;
+import com.agent.rag.ragbackend.service.scheduling.WorkloadGovernor;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * 后台索引维护：合并与分片拆分
+ *
+ * <p>定期检查每个分片的墓碑占比和段数，超过阈值时在维护线程中重建索引段；
+ * 分片切片数超过上限时一分为二。检索不受影响。</p>
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class IndexCompactor {
+
+    private final VaultIndexRegistry vaultIndexRegistry;
+    private final IndexConfig indexConfig;
+    private final WorkloadGovernor workloadGovernor;
+
+    @Qualifier("maintenanceScheduler")
+    private final ThreadPoolTaskScheduler maintenanceScheduler;
+
+    @PostConstruct
+    public void start() {
+        maintenanceScheduler.scheduleWithFixedDelay(this::compactIfNeeded,
+                Duration.ofMillis(indexConfig.getCompactIntervalMs()));
+    }
+
+    void compactIfNeeded() {
+        for (ChunkIndex shard : vaultIndexRegistry.allShards()) {
+            try {
+                double deadRatio = shard.deadRatio();
+                int segments = shard.segmentCount();
+                if (deadRatio >= indexConfig.getCompactDeadRatio() || segments > indexConfig.getCompactMaxSegments()) {
+                    workloadGovernor.yieldToInteractive();
+                    log.info("🧹 [Compact] 触发合并 - 墓碑占比: {}, 段数: {}", String.format("%.2f", deadRatio), segments);
+                    shard.compact();
+                }
+            } catch (Exception e) {
+                log.error("❌ [Compact] 索引合并失败", e);
+            }
+        }
+        for (VaultIndex vault : vaultIndexRegistry.all()) {
+            try {
+                workloadGovernor.yieldToInteractive();
+                vault.splitIfNeeded(indexConfig.getMaxShardChunks(), indexConfig.getMaxShardsPerVault());
+            } catch (Exception e) {
+                log.error("❌ [Shard] 仓库 {} 分片拆分失败", vault.getVaultId(), e);
+            }
+        }
+    }
+}
@@ -0,0 +1,257 @@
+package com.agent.rag.ragbackend.service.index;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 索引段：一批切片的向量和关键词倒排，构建后只读
+ *
+ * <p>唯一可变的部分是墓碑位图 (只会从 0 变 1)，删除 / 重命名只打墓碑，
+ * 查询时跳过；真正的清理由 {@link ChunkIndex#compact()} 重建新段完成。</p>
+ *
+ * <p>切片元数据与向量分开存放：{@link #chunk(int)} 不带向量，向量按
+ * {@link VectorQuantization} 编码后由 {@link SegmentVectors} 管理。</p>
+ *
+ * <p>每个段有唯一 id，快照时按 id 写成一个段文件，之后的快照直接复用 (见 {@link IndexSnapshotService})。</p>
+ *
+ * <p>段带引用计数：段列表持有一个引用，无锁检索、合并和快照读取向量前各自加一个，
+ * 段被替换后等最后一个读取方放手才释放向量文件。</p>
+ */
+public class IndexSegment {
+
+    /**
+     * 一个词项的倒排表
+     *
+     * @param slots 命中的切片下标 (升序)
+     * @param tfs   对应切片中的词频
+     */
+    record Posting(int[] slots, int[] tfs) {
+    }
+
+    private final String id;
+    private final IndexedChunk[] chunks;
+    private final SegmentVectors vectors;
+    private final int[] docLengths;
+    private final long totalTokens;
+    private final Map<String, Posting> postings;
+
+    private final AtomicLongArray tombstones;
+    private final AtomicInteger deletedCount = new AtomicInteger();
+    private final AtomicLong deletedTokens = new AtomicLong();
+
+    private final AtomicInteger refs = new AtomicInteger(1);
+    private final AtomicBoolean retired = new AtomicBoolean();
+
+    private IndexSegment(String id, IndexedChunk[] chunks, SegmentVectors vectors, int[] docLengths,
+                         long totalTokens, Map<String, Posting> postings) {
+        this.id = id;
+        this.chunks = chunks;
+        this.vectors = vectors;
+        this.docLengths = docLengths;
+        this.totalTokens = totalTokens;
+        this.postings = postings;
+        this.tombstones = new AtomicLongArray((chunks.length + 63) / 64);
+    }
+
+    /**
+     * 全精度、堆内存储的段
+     */
+    public static IndexSegment build(List<IndexedChunk> source) {
+        return build(source, VectorQuantization.NONE, null);
+    }
+
+    /**
+     * 构建一个新段 (分词、建倒排、向量编码)
+     *
+     * @param dataDir 量化存储时全精度向量文件所在目录
+     */
+    public static IndexSegment build(List<IndexedChunk> source, VectorQuantization quantization, Path dataDir) {
+        IndexedChunk[] chunks = new IndexedChunk[source.size()];
+        float[][] rawVectors = new float[source.size()][];
+        for (int slot = 0; slot < chunks.length; slot++) {
+            rawVectors[slot] = source.get(slot).vector();
+            chunks[slot] = source.get(slot).withVector(null);
+        }
+        SegmentVectors vectors = quantization.encode(rawVectors, dataDir);
+
+        int[] docLengths = new int[chunks.length];
+        long totalTokens = 0;
+        Map<String, List<int[]>> building = new HashMap<>();
+
+        for (int slot = 0; slot < chunks.length; slot++) {
+            Map<String, int[]> tf = new HashMap<>();
+            int[] length = {0};
+            KeywordTokenizer.tokenize(chunks[slot].text(), term -> {
+                tf.computeIfAbsent(term, k -> new int[1])[0]++;
+                length[0]++;
+            });
+            docLengths[slot] = length[0];
+            totalTokens += length[0];
+            for (Map.Entry<String, int[]> entry : tf.entrySet()) {
+                building.computeIfAbsent(entry.getKey(), k -> new ArrayList<>()).add(new int[]{slot, entry.getValue()[0]});
+            }
+        }
+
+        Map<String, Posting> postings = new HashMap<>(building.size() * 2);
+        building.forEach((term, list) -> {
+            int[] slots = new int[list.size()];
+            int[] tfs = new int[list.size()];
+            for (int i = 0; i < list.size(); i++) {
+                slots[i] = list.get(i)[0];
+                tfs[i] = list.get(i)[1];
+            }
+            postings.put(term, new Posting(slots, tfs));
+        });
+        return new IndexSegment(UUID.randomUUID().toString(), chunks, vectors, docLengths, totalTokens, postings);
+    }
+
+    /**
+     * 从快照段文件恢复 (沿用原段 id，墓碑另行恢复)
+     */
+    static IndexSegment restore(String id, IndexedChunk[] chunks, SegmentVectors vectors, int[] docLengths,
+                                long totalTokens, Map<String, Posting> postings) {
+        return new IndexSegment(id, chunks, vectors, docLengths, totalTokens, postings);
+    }
+
+    public String id() {
+        return id;
+    }
+
+    public int size() {
+        return chunks.length;
+    }
+
+    /**
+     * 切片元数据 (不带向量)
+     */
+    public IndexedChunk chunk(int slot) {
+        return chunks[slot];
+    }
+
+    /**
+     * 带全精度向量的切片 (量化存储时需要读盘)
+     */
+    public IndexedChunk fullChunk(int slot) {
+        return chunks[slot].withVector(vectors.vector(slot));
+    }
+
+    SegmentVectors vectors() {
+        return vectors;
+    }
+
+    int docLength(int slot) {
+        return docLengths[slot];
+    }
+
+    long totalTokens() {
+        return totalTokens;
+    }
+
+    /**
+     * 未删除切片的词数之和 (BM25 平均文档长度使用)
+     */
+    long liveTokens() {
+        return totalTokens - deletedTokens.get();
+    }
+
+    Posting posting(String term) {
+        return postings.get(term);
+    }
+
+    Map<String, Posting> postings() {
+        return postings;
+    }
+
+    public boolean isDeleted(int slot) {
+        return (tombstones.get(slot >>> 6) & (1L << slot)) != 0;
+    }
+
+    /**
+     * 打墓碑 (幂等)
+     */
+    public void delete(int slot) {
+        int word = slot >>> 6;
+        long bit = 1L << slot;
+        while (true) {
+            long current = tombstones.get(word);
+            if ((current & bit) != 0) return;
+            if (tombstones.compareAndSet(word, current, current | bit)) {
+                deletedCount.incrementAndGet();
+                deletedTokens.addAndGet(docLengths[slot]);
+                return;
+            }
+        }
+    }
+
+    /**
+     * 墓碑位图的副本 (快照使用，需在分片写锁内调用以保证与其他段一致)
+     */
+    long[] tombstoneWords() {
+        long[] words = new long[tombstones.length()];
+        for (int i = 0; i < words.length; i++) {
+            words[i] = tombstones.get(i);
+        }
+        return words;
+    }
+
+    /**
+     * 恢复快照中的墓碑
+     */
+    void restoreTombstones(long[] words) {
+        for (int i = 0; i < Math.min(words.length, tombstones.length()); i++) {
+            long word = words[i];
+            while (word != 0) {
+                int slot = (i << 6) + Long.numberOfTrailingZeros(word);
+                if (slot < chunks.length) delete(slot);
+                word &= word - 1;
+            }
+        }
+    }
+
+    public int deletedCount() {
+        return deletedCount.get();
+    }
+
+    public int liveCount() {
+        return chunks.length - deletedCount.get();
+    }
+
+    /**
+     * 读取向量前加引用
+     *
+     * @return 段已释放时返回 false (调用方应重新读取段列表)
+     */
+    boolean tryRetain() {
+        while (true) {
+            int current = refs.get();
+            if (current == 0) return false;
+            if (refs.compareAndSet(current, current + 1)) return true;
+        }
+    }
+
+    /**
+     * 放掉 {@link #tryRetain()} 加的引用
+     */
+    void unretain() {
+        if (refs.decrementAndGet() == 0) {
+            vectors.release();
+        }
+    }
+
+    /**
+     * 段被合并替换后放掉段列表的引用 (幂等)，进行中的读取结束后释放向量文件
+     */
+    void release() {
+        if (retired.compareAndSet(false, true)) {
+            unretain();
+        }
+    }
+}
@@ -0,0 +1,336 @@
+package com.agent.rag.ragbackend.service.index;
+
+import com.agent.rag.ragbackend.config.IndexConfig;
+import com.agent.rag.ragbackend.service.manifest.ManifestService;
+import com.agent.rag.ragbackend.service.scheduling.WorkloadGovernor;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * 索引快照：重启 / 重新部署后不用重新同步、重新向量化
+ *
+ * <ul>
+ *     <li>快照内容：各仓库的分片目录、每个分片的段和墓碑、同步清单；段文件 ({@link SegmentFile}) 只写一次，
+ *     之后的快照按段 id 复用，只有新段需要写盘；</li>
+ *     <li>一致性：先取同步清单再取索引 (清单只会比索引旧，旧的部分由客户端增量同步补上)，
+ *     每个仓库在写锁内取状态；所有文件先写临时文件再原子改名，崩溃时最多丢失最近一次快照之后的改动；</li>
+ *     <li>启动恢复：内存映射段文件，只解析元数据和倒排，向量区按需换入，首次检索时才物化；
+ *     向量区校验和在后台校验；</li>
+ *     <li>损坏处理：快照清单损坏则退回上一份；段文件损坏则丢弃该段，对应笔记从同步清单移除，
+ *     由客户端下次增量同步重新上传。</li>
+ * </ul>
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class IndexSnapshotService {
+
+    /**
+     * 保留的快照份数 (最新一份损坏时可退回上一份)
+     */
+    private static final int RETAINED_SNAPSHOTS = 2;
+
+    private final VaultIndexRegistry vaultIndexRegistry;
+    private final ManifestService manifestService;
+    private final IndexConfig indexConfig;
+    private final WorkloadGovernor workloadGovernor;
+
+    @Qualifier("maintenanceScheduler")
+    private final ThreadPoolTaskScheduler maintenanceScheduler;
+
+    /**
+     * 上次快照时的索引指纹，相同则跳过
+     */
+    private String lastFingerprint;
+    private long nextSequence = 1;
+
+    @PostConstruct
+    public void start() {
+        if (!indexConfig.isSnapshotEnabled()) return;
+        purgeStaleVectorFiles();
+        restore();
+        if (lastFingerprint == null) {
+            lastFingerprint = fingerprint();
+        }
+        maintenanceScheduler.execute(this::verifyRestored);
+        Duration interval = Duration.ofMillis(indexConfig.getSnapshotIntervalMs());
+        maintenanceScheduler.scheduleWithFixedDelay(() -> {
+            // 定时快照可以推迟；关闭时的快照不让路
+            workloadGovernor.yieldToInteractive();
+            snapshotQuietly();
+        }, Instant.now().plus(interval), interval);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (indexConfig.isSnapshotEnabled()) {
+            snapshotQuietly();
+        }
+    }
+
+    // ==========================================
+    // 写快照
+    // ==========================================
+
+    /**
+     * 写一份快照
+     *
+     * @return false 表示索引没有变化，跳过
+     */
+    public synchronized boolean snapshot() throws IOException {
+        String fingerprint = fingerprint();
+        if (fingerprint.equals(lastFingerprint)) return false;
+
+        long start = System.nanoTime();
+        Path dir = snapshotDir();
+        Files.createDirectories(dir);
+
+        // 1. 先取同步清单，再取索引
+        Map<String, Map<String, String>> manifests = manifestService.export();
+        List<SnapshotFile.VaultData> vaults = new ArrayList<>();
+        int written = 0;
+        int segments = 0;
+        for (VaultIndex vault : vaultIndexRegistry.all()) {
+            VaultIndex.Capture capture = vault.capture();
+            List<SnapshotFile.ShardData> shards = new ArrayList<>();
+            try {
+                for (int i = 0; i < capture.shards().size(); i++) {
+                    ChunkIndex.Capture shard = capture.shards().get(i);
+                    // 2. 新段写成段文件，已有的直接复用
+                    for (IndexSegment segment : shard.segments()) {
+                        if (!Files.exists(SegmentFile.pathOf(dir, segment.id()))) {
+                            SegmentFile.write(dir, segment);
+                            written++;
+                        }
+                    }
+                    segments += shard.segments().size();
+                    shards.add(new SnapshotFile.ShardData(capture.depths()[i], shard.rescoreFactor(),
+                            shard.segments().stream().map(IndexSegment::id).toList(), shard.tombstones()));
+                }
+            } finally {
+                capture.release();
+            }
+            vaults.add(new SnapshotFile.VaultData(vault.getVaultId(), capture.embeddingSpace(),
+                    capture.globalDepth(), capture.slots(), shards));
+        }
+
+        // 3. 写快照清单 (原子改名后快照才生效)，再回收不再引用的文件
+        long sequence = nextSequence++;
+        SnapshotFile.write(dir, new SnapshotFile.SnapshotData(sequence, System.currentTimeMillis(), manifests, vaults));
+        lastFingerprint = fingerprint;
+        collectGarbage(dir);
+
+        log.info("💾 [Snapshot] 快照 #{} 完成: {} 个仓库, {} 个段 (新写入 {}), 耗时 {}ms",
+                sequence, vaults.size(), segments, written, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        return true;
+    }
+
+    void snapshotQuietly() {
+        try {
+            snapshot();
+        } catch (Exception e) {
+            log.error("❌ [Snapshot] 写入索引快照失败", e);
+        }
+    }
+
+    /**
+     * 索引指纹：分片实例、内容版本、段 id 和重打分倍数，任何一项变化都需要重新快照
+     */
+    private String fingerprint() {
+        StringBuilder sb = new StringBuilder();
+        for (VaultIndex vault : vaultIndexRegistry.all()) {
+            sb.append(vault.getVaultId()).append('{');
+            for (ChunkIndex shard : vault.shards()) {
+                sb.append(System.identityHashCode(shard)).append('@').append(shard.getVersion())
+                        .append('x').append(shard.getRescoreFactor()).append('[');
+                shard.segments().forEach(segment -> sb.append(segment.id()).append(','));
+                sb.append(']');
+            }
+            sb.append('}');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 只保留最近几份快照，删除不再被引用的段文件和残留的临时文件
+     */
+    private void collectGarbage(Path dir) throws IOException {
+        List<Path> snapshots = listSnapshots(dir);
+        Set<String> referenced = new HashSet<>();
+        for (int i = 0; i < snapshots.size(); i++) {
+            if (i >= RETAINED_SNAPSHOTS) {
+                Files.deleteIfExists(snapshots.get(i));
+                continue;
+            }
+            try {
+                referenced.addAll(SnapshotFile.read(snapshots.get(i)).segmentIds());
+            } catch (IOException e) {
+                log.warn("⚠️ [Snapshot] 快照 {} 不可读，跳过: {}", snapshots.get(i).getFileName(), e.getMessage());
+            }
+        }
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : files.toList()) {
+                String name = file.getFileName().toString();
+                boolean orphanSegment = name.startsWith("seg-") && name.endsWith(".bin")
+                        && !referenced.contains(name.substring(4, name.length() - 4));
+                if (orphanSegment || name.endsWith(".tmp")) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+
+    // ==========================================
+    // 启动恢复
+    // ==========================================
+
+    /**
+     * 从最新的完整快照恢复 (在接收流量之前执行)
+     */
+    synchronized void restore() {
+        Path dir = snapshotDir();
+        List<Path> snapshots;
+        try {
+            snapshots = Files.isDirectory(dir) ? listSnapshots(dir) : List.of();
+        } catch (IOException e) {
+            log.error("❌ [Snapshot] 读取快照目录失败 {}", dir, e);
+            return;
+        }
+        if (!snapshots.isEmpty()) {
+            nextSequence = SnapshotFile.sequenceOf(snapshots.get(0)) + 1;
+        }
+
+        for (Path file : snapshots) {
+            SnapshotFile.SnapshotData data;
+            try {
+                data = SnapshotFile.read(file);
+            } catch (IOException e) {
+                log.warn("⚠️ [Snapshot] 快照 {} 不可用，尝试上一份: {}", file.getFileName(), e.getMessage());
+                continue;
+            }
+            long start = System.nanoTime();
+            restore(dir, data);
+            // 恢复出的状态就是快照本身，不需要立即重写
+            lastFingerprint = fingerprint();
+            log.info("♻️ [Snapshot] 从快照 #{} 恢复 {} 个仓库, {} 个切片, 耗时 {}ms (向量按需加载)",
+                    data.sequence(), data.vaults().size(),
+                    vaultIndexRegistry.all().stream().mapToInt(VaultIndex::size).sum(),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            return;
+        }
+    }
+
+    private void restore(Path dir, SnapshotFile.SnapshotData data) {
+        VectorQuantization quantization = VectorQuantization.of(indexConfig.getQuantization());
+        for (SnapshotFile.VaultData vault : data.vaults()) {
+            List<ChunkIndex> shards = new ArrayList<>(vault.shards().size());
+            int[] depths = new int[vault.shards().size()];
+            for (int s = 0; s < vault.shards().size(); s++) {
+                SnapshotFile.ShardData shardData = vault.shards().get(s);
+                List<IndexSegment> segments = new ArrayList<>();
+                for (int i = 0; i < shardData.segmentIds().size(); i++) {
+                    String id = shardData.segmentIds().get(i);
+                    try {
+                        IndexSegment segment = SegmentFile.open(SegmentFile.pathOf(dir, id), id, quantization);
+                        segment.restoreTombstones(shardData.tombstones().get(i));
+                        segments.add(segment);
+                    } catch (IOException | RuntimeException e) {
+                        log.error("❌ [Snapshot] 仓库 {} 的段 {} 无法恢复，相关笔记需重新同步: {}",
+                                vault.vaultId(), id, e.getMessage());
+                    }
+                }
+                ChunkIndex shard = vaultIndexRegistry.newShard();
+                shard.restore(segments);
+                shard.setRescoreFactor(shardData.rescoreFactor());
+                shards.add(shard);
+                depths[s] = shardData.depth();
+            }
+            vaultIndexRegistry.restore(vault.vaultId(), vault.globalDepth(), vault.slots(), depths, shards,
+                    vault.embeddingSpace());
+        }
+
+        // 同步清单只保留索引中确实存在的笔记，丢失的部分由客户端增量同步重新上传
+        data.manifests().forEach((vaultId, entries) -> {
+            VaultIndex vault = vaultIndexRegistry.find(vaultId).orElse(null);
+            int before = entries.size();
+            entries.keySet().removeIf(path -> vault == null || !vault.contains(path));
+            if (entries.size() < before) {
+                log.warn("⚠️ [Snapshot] 仓库 {} 有 {} 篇笔记未能恢复，等待客户端重新同步", vaultId, before - entries.size());
+            }
+            manifestService.restore(vaultId, entries);
+        });
+    }
+
+    /**
+     * 后台校验恢复段的向量区并预热，损坏的段整体丢弃
+     */
+    void verifyRestored() {
+        for (VaultIndex vault : vaultIndexRegistry.all()) {
+            for (ChunkIndex shard : vault.shards()) {
+                for (IndexSegment segment : shard.segments()) {
+                    if (!(segment.vectors() instanceof MappedSegmentVectors mapped)) continue;
+                    if (mapped.verify()) {
+                        mapped.warm();
+                        continue;
+                    }
+                    Set<String> affected = shard.dropSegment(segment);
+                    affected.forEach(path -> manifestService.remove(vault.getVaultId(), path));
+                    log.error("❌ [Snapshot] 仓库 {} 的段 {} 向量校验和不符，已丢弃 {} 篇笔记，等待客户端重新同步",
+                            vault.getVaultId(), segment.id(), affected.size());
+                }
+            }
+        }
+    }
+
+    /**
+     * 上次运行留下的全精度向量文件 (恢复的段直接读取段文件，不会再引用它们)
+     */
+    private void purgeStaleVectorFiles() {
+        Path dataDir = Path.of(indexConfig.getDataDir());
+        if (!Files.isDirectory(dataDir)) return;
+        try (Stream<Path> files = Files.list(dataDir)) {
+            for (Path file : files.toList()) {
+                String name = file.getFileName().toString();
+                if (name.startsWith("segment-") && name.endsWith(".f32")) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        } catch (IOException e) {
+            log.warn("⚠️ [Snapshot] 清理残留向量文件失败 {}: {}", dataDir, e.getMessage());
+        }
+    }
+
+    private Path snapshotDir() {
+        return Path.of(indexConfig.getSnapshotDir());
+    }
+
+    /**
+     * 快照文件，按序号从新到旧
+     */
+    private static List<Path> listSnapshots(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(file -> SnapshotFile.sequenceOf(file) >= 0)
+                    .sorted(Comparator.comparingLong(SnapshotFile::sequenceOf).reversed())
+                    .toList();
+        }
+    }
+}
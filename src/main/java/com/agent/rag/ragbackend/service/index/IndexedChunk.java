@@ -0,0 +1,27 @@
+package com.agent.rag.ragbackend.service.index;
+
+/**
+ * 索引中的一个笔记切片
+ *
+ * @param chunkId 切片ID (path#序号)
+ * @param path    笔记路径
+ * @param title   笔记标题
+ * @param ordinal 切片在笔记中的序号
+ * @param text    切片正文
+ * @param vector  已 L2 归一化的向量 (索引段内部只保存元数据时为 null，向量由 {@link SegmentVectors} 管理)
+ */
+public record IndexedChunk(String chunkId, String path, String title, int ordinal, String text, float[] vector) {
+
+    public IndexedChunk withVector(float[] newVector) {
+        return new IndexedChunk(chunkId, path, title, ordinal, text, newVector);
+    }
+
+    /**
+     * 重命名后的切片 (向量不变)
+     *
+     * @param newTitle 为空时沿用原标题
+     */
+    public IndexedChunk movedTo(String newPath, String newTitle) {
+        return new IndexedChunk(newPath + "#" + ordinal, newPath, newTitle != null ? newTitle : title, ordinal, text, vector);
+    }
+}
@@ -0,0 +1,75 @@
+package com.agent.rag.ragbackend.service.index;
+
+/**
+ * int8 标量量化：每个向量按自身最大绝对值缩放到 [-127, 127]，堆内占用约为 float 的 1/4
+ *
+ * <p>打分时问题向量保持 float (非对称量化)，误差只来自库内向量一侧。</p>
+ */
+final class Int8SegmentVectors implements SegmentVectors {
+
+    private final byte[][] codes;
+    private final float[] scales;
+    private final FullPrecisionSource fullPrecision;
+
+    private Int8SegmentVectors(byte[][] codes, float[] scales, FullPrecisionSource fullPrecision) {
+        this.codes = codes;
+        this.scales = scales;
+        this.fullPrecision = fullPrecision;
+    }
+
+    static Int8SegmentVectors encode(float[][] vectors, FullPrecisionSource fullPrecision) {
+        byte[][] codes = new byte[vectors.length][];
+        float[] scales = new float[vectors.length];
+        for (int slot = 0; slot < vectors.length; slot++) {
+            float[] vector = vectors[slot];
+            float maxAbs = 0f;
+            for (float v : vector) {
+                maxAbs = Math.max(maxAbs, Math.abs(v));
+            }
+            float scale = maxAbs == 0f ? 0f : maxAbs / 127f;
+            byte[] code = new byte[vector.length];
+            if (scale != 0f) {
+                for (int i = 0; i < vector.length; i++) {
+                    code[i] = (byte) Math.round(vector[i] / scale);
+                }
+            }
+            codes[slot] = code;
+            scales[slot] = scale;
+        }
+        return new Int8SegmentVectors(codes, scales, fullPrecision);
+    }
+
+    @Override
+    public int dimension(int slot) {
+        return codes[slot].length;
+    }
+
+    @Override
+    public float score(PreparedQuery query, int slot) {
+        return VectorKernels.dot(query.vector(), codes[slot]) * scales[slot];
+    }
+
+    @Override
+    public boolean isExact() {
+        return false;
+    }
+
+    @Override
+    public float[] vector(int slot) {
+        return fullPrecision.read(slot);
+    }
+
+    @Override
+    public long memoryBytes() {
+        long bytes = 4L * scales.length + fullPrecision.indexBytes();
+        for (byte[] code : codes) {
+            bytes += 16 + code.length;
+        }
+        return bytes;
+    }
+
+    @Override
+    public void release() {
+        fullPrecision.delete();
+    }
+}
@@ -0,0 +1,54 @@
+package com.agent.rag.ragbackend.service.index;
+
+import java.util.function.Consumer;
+
+/**
+ * 关键词检索分词器
+ *
+ * <p>不依赖分词词典：英文/数字按连续字母数字切词并转小写 (忽略单字符)，
+ * 中日韩文字按相邻两字切 bigram (单独一个汉字则保留单字)。</p>
+ */
+public final class KeywordTokenizer {
+
+    private KeywordTokenizer() {
+    }
+
+    /**
+     * 逐个输出词项
+     */
+    public static void tokenize(String text, Consumer<String> sink) {
+        if (text == null) return;
+        int length = text.length();
+        int i = 0;
+        while (i < length) {
+            char c = text.charAt(i);
+            if (isCjk(c)) {
+                int start = i;
+                while (i < length && isCjk(text.charAt(i))) i++;
+                if (i - start == 1) {
+                    sink.accept(String.valueOf(c));
+                } else {
+                    for (int j = start; j + 1 < i; j++) {
+                        sink.accept(text.substring(j, j + 2));
+                    }
+                }
+            } else if (Character.isLetterOrDigit(c)) {
+                int start = i;
+                while (i < length && Character.isLetterOrDigit(text.charAt(i)) && !isCjk(text.charAt(i))) i++;
+                if (i - start > 1) {
+                    sink.accept(text.substring(start, i).toLowerCase());
+                }
+            } else {
+                i++;
+            }
+        }
+    }
+
+    private static boolean isCjk(char c) {
+        Character.UnicodeScript script = Character.UnicodeScript.of(c);
+        return script == Character.UnicodeScript.HAN
+                || script == Character.UnicodeScript.HIRAGANA
+                || script == Character.UnicodeScript.KATAKANA
+                || script == Character.UnicodeScript.HANGUL;
+    }
+}
@@ -0,0 +1,123 @@
+package com.agent.rag.ragbackend.service.index;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.zip.CRC32C;
+
+/**
+ * 从快照恢复的段向量：直接读取内存映射的段文件，由后台预热按当前存储方式物化
+ *
+ * <ul>
+ *     <li>启动时不读向量区，数据由操作系统按需换入；</li>
+ *     <li>预热完成前，打分直接从映射读取向量算精确点积，检索线程不会被整段物化阻塞；</li>
+ *     <li>全精度存储：预热时把向量拷到堆内 ({@link FloatSegmentVectors})；</li>
+ *     <li>量化存储：预热时编码，映射本身作为重打分的全精度来源，不再另写文件。</li>
+ * </ul>
+ *
+ * <p>向量区的校验和与预热都不在启动时进行 (需要读完整个文件)，由 {@link IndexSnapshotService} 在后台完成。</p>
+ */
+final class MappedSegmentVectors implements SegmentVectors, FullPrecisionSource {
+
+    private final ByteBuffer mapped;
+    private final int[] offsets;
+    private final int[] dimensions;
+    private final int checksum;
+    private final VectorQuantization quantization;
+
+    private volatile SegmentVectors loaded;
+
+    /**
+     * @param mapped   段文件的向量区 (little-endian float 顺序存放)
+     * @param checksum 向量区的 CRC32C
+     */
+    MappedSegmentVectors(ByteBuffer mapped, int[] dimensions, int checksum, VectorQuantization quantization) {
+        this.mapped = mapped.order(ByteOrder.LITTLE_ENDIAN);
+        this.dimensions = dimensions;
+        this.checksum = checksum;
+        this.quantization = quantization;
+        this.offsets = new int[dimensions.length];
+        int position = 0;
+        for (int slot = 0; slot < dimensions.length; slot++) {
+            offsets[slot] = position;
+            position += 4 * dimensions[slot];
+        }
+    }
+
+    @Override
+    public int dimension(int slot) {
+        return dimensions[slot];
+    }
+
+    @Override
+    public float score(PreparedQuery query, int slot) {
+        SegmentVectors current = loaded;
+        return current != null ? current.score(query, slot) : VectorKernels.dot(query.vector(), read(slot));
+    }
+
+    @Override
+    public boolean isExact() {
+        return quantization == VectorQuantization.NONE;
+    }
+
+    @Override
+    public float[] vector(int slot) {
+        SegmentVectors current = loaded;
+        return current != null && current.isExact() ? current.vector(slot) : read(slot);
+    }
+
+    @Override
+    public float[] read(int slot) {
+        float[] vector = new float[dimensions[slot]];
+        // slice 得到独立的位置指针，并发读取互不影响
+        mapped.slice(offsets[slot], 4 * vector.length).order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer().get(vector);
+        return vector;
+    }
+
+    @Override
+    public long indexBytes() {
+        return 8L * dimensions.length;
+    }
+
+    @Override
+    public long memoryBytes() {
+        SegmentVectors current = loaded;
+        if (current == null) return indexBytes();
+        return current.isExact() ? current.memoryBytes() + indexBytes() : current.memoryBytes();
+    }
+
+    boolean isLoaded() {
+        return loaded != null;
+    }
+
+    /**
+     * 校验向量区 (会读完整个向量区)
+     */
+    boolean verify() {
+        CRC32C crc = new CRC32C();
+        crc.update(mapped.duplicate().clear());
+        return (int) crc.getValue() == checksum;
+    }
+
+    /**
+     * 段文件由快照服务统一回收，这里不删除
+     */
+    @Override
+    public void release() {
+    }
+
+    @Override
+    public void delete() {
+    }
+
+    /**
+     * 预热：按当前存储方式物化 (会读完整个向量区，只在后台线程调用)
+     */
+    synchronized void warm() {
+        if (loaded != null) return;
+        float[][] vectors = new float[dimensions.length][];
+        for (int slot = 0; slot < vectors.length; slot++) {
+            vectors[slot] = read(slot);
+        }
+        loaded = quantization.encode(vectors, this);
+    }
+}
@@ -0,0 +1,73 @@
+package com.agent.rag.ragbackend.service.index;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 最大边际相关 (MMR) 重排
+ *
+ * <p>向量检索的 Top-K 经常是同一段内容的几个近似副本 (重叠切片、复制粘贴的笔记)，
+ * 直接放进 Prompt 会浪费上下文预算。MMR 每一轮选择
+ * {@code λ·相关度 − (1−λ)·与已选片段的最大相似度} 最高的候选，兼顾相关性与多样性；
+ * 与已选片段相似度超过去重阈值的候选直接丢弃。</p>
+ *
+ * <p>每个候选维护与已选集合的最大相似度，每选一个只需与剩余候选各算一次余弦，总计 O(k·n) 次。</p>
+ */
+public final class MmrReranker {
+
+    private MmrReranker() {
+    }
+
+    /**
+     * @param candidates         按相关度排好序的候选 (score 为与问题的相似度，向量维度一致)
+     * @param k                  最多选出的片段数
+     * @param lambda             相关度权重 [0, 1]，1 表示不考虑多样性
+     * @param duplicateThreshold 与已选片段的余弦相似度达到该值视为重复，&gt;= 1 表示不去重
+     * @return 选中的片段 (按选中顺序，保留原相关度得分)
+     */
+    public static List<ScoredChunk> rerank(List<ScoredChunk> candidates, int k, double lambda, double duplicateThreshold) {
+        int n = candidates.size();
+        if (k <= 0 || n == 0) return List.of();
+        if (n == 1 || (lambda >= 1 && duplicateThreshold >= 1)) {
+            return new ArrayList<>(candidates.subList(0, Math.min(k, n)));
+        }
+
+        float[] maxSimilarity = new float[n];
+        boolean[] done = new boolean[n];
+        List<ScoredChunk> selected = new ArrayList<>(Math.min(k, n));
+        int remaining = n;
+
+        while (selected.size() < k && remaining > 0) {
+            int best = -1;
+            double bestScore = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < n; i++) {
+                if (done[i]) continue;
+                double mmr = selected.isEmpty()
+                        ? candidates.get(i).score()
+                        : lambda * candidates.get(i).score() - (1 - lambda) * maxSimilarity[i];
+                if (mmr > bestScore) {
+                    bestScore = mmr;
+                    best = i;
+                }
+            }
+
+            ScoredChunk picked = candidates.get(best);
+            selected.add(picked);
+            done[best] = true;
+            remaining--;
+
+            float[] pickedVector = picked.chunk().vector();
+            for (int i = 0; i < n; i++) {
+                if (done[i]) continue;
+                float similarity = VectorKernels.cosine(pickedVector, candidates.get(i).chunk().vector());
+                if (similarity >= duplicateThreshold) {
+                    done[i] = true;
+                    remaining--;
+                } else if (similarity > maxSimilarity[i]) {
+                    maxSimilarity[i] = similarity;
+                }
+            }
+        }
+        return selected;
+    }
+}
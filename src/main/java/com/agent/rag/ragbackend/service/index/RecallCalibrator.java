@@ -0,0 +1,132 @@
+package com.agent.rag.ragbackend.service.index;
+
+import com.agent.rag.ragbackend.config.IndexConfig;
+import com.agent.rag.ragbackend.service.scheduling.WorkloadGovernor;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * 量化索引的召回率校准
+ *
+ * <p>量化粗排会漏掉一部分真正的 Top-K，漏多少取决于数据分布，没法事先定一个合适的重打分倍数。
+ * 这里定期从每个分片中抽样切片向量作为查询，用全精度暴力检索结果作为基准，
+ * 测量当前倍数下的 recall@10；低于 min-recall 时倍数翻倍重测，直到达标或到达上限。</p>
+ *
+ * <p>抽样切片自身在两边都排第一，会把召回率抬高，基准和结果都去掉查询自己的切片再比较。</p>
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class RecallCalibrator {
+
+    private static final int RECALL_K = 10;
+
+    private final VaultIndexRegistry vaultIndexRegistry;
+    private final IndexConfig indexConfig;
+    private final WorkloadGovernor workloadGovernor;
+
+    @Qualifier("maintenanceScheduler")
+    private final ThreadPoolTaskScheduler maintenanceScheduler;
+
+    private final Random random = new Random();
+
+    /**
+     * 各分片上次校准时的内容版本 (只在维护线程访问；分片被拆分替换后自动回收)
+     */
+    private final Map<ChunkIndex, Long> checkedVersions = new WeakHashMap<>();
+
+    @PostConstruct
+    public void start() {
+        if (VectorQuantization.of(indexConfig.getQuantization()) == VectorQuantization.NONE) return;
+        maintenanceScheduler.scheduleWithFixedDelay(this::calibrateChanged,
+                Duration.ofMillis(indexConfig.getRecallCheckIntervalMs()));
+    }
+
+    void calibrateChanged() {
+        for (ChunkIndex shard : vaultIndexRegistry.allShards()) {
+            try {
+                long version = shard.getVersion();
+                Long checked = checkedVersions.get(shard);
+                if (checked != null && checked == version) continue;
+                workloadGovernor.yieldToInteractive();
+                calibrate(shard);
+                checkedVersions.put(shard, version);
+            } catch (Exception e) {
+                log.error("❌ [Recall] 召回率校准失败", e);
+            }
+        }
+    }
+
+    /**
+     * 测量分片的 recall@10，不达标时逐步加大重打分倍数
+     */
+    public double calibrate(ChunkIndex shard) {
+        List<IndexedChunk> samples = shard.sampleChunks(indexConfig.getRecallSampleSize(), random);
+        if (samples.isEmpty()) return shard.getLastRecall();
+        List<float[]> queries = samples.stream().map(IndexedChunk::vector).toList();
+        List<List<ScoredChunk>> exact = shard.searchVectorExact(queries, RECALL_K + 1);
+        List<List<ScoredChunk>> truth = new ArrayList<>(samples.size());
+        for (int q = 0; q < samples.size(); q++) {
+            truth.add(excludeSelf(exact.get(q), samples.get(q)));
+        }
+
+        int factor = shard.getRescoreFactor();
+        double recall = measure(shard, samples, truth, factor);
+        while (recall < indexConfig.getMinRecall() && factor < indexConfig.getMaxRescoreFactor()) {
+            factor = Math.min(indexConfig.getMaxRescoreFactor(), factor * 2);
+            recall = measure(shard, samples, truth, factor);
+        }
+
+        if (factor != shard.getRescoreFactor()) {
+            shard.setRescoreFactor(factor);
+            log.info("🎯 [Recall] recall@{} 未达 {}，重打分倍数调整为 {}", RECALL_K, indexConfig.getMinRecall(), factor);
+        }
+        if (recall < indexConfig.getMinRecall()) {
+            log.warn("⚠️ [Recall] {} 量化在最大倍数 {} 下 recall@{} 仅 {}", shard.getQuantization(),
+                    factor, RECALL_K, String.format("%.3f", recall));
+        } else {
+            log.info("🎯 [Recall] {} 量化 recall@{} = {} (倍数 {}, 抽样 {})", shard.getQuantization(),
+                    RECALL_K, String.format("%.3f", recall), factor, queries.size());
+        }
+        shard.setLastRecall(recall);
+        return recall;
+    }
+
+    private double measure(ChunkIndex shard, List<IndexedChunk> samples, List<List<ScoredChunk>> truth, int factor) {
+        int hits = 0;
+        int expected = 0;
+        for (int q = 0; q < samples.size(); q++) {
+            Set<String> relevant = new HashSet<>();
+            truth.get(q).forEach(hit -> relevant.add(hit.chunk().chunkId()));
+            IndexedChunk sample = samples.get(q);
+            for (ScoredChunk hit : excludeSelf(shard.searchVector(sample.vector(), RECALL_K + 1, factor), sample)) {
+                if (relevant.contains(hit.chunk().chunkId())) hits++;
+            }
+            expected += relevant.size();
+        }
+        return expected == 0 ? 1.0 : (double) hits / expected;
+    }
+
+    /**
+     * 去掉查询自身的切片，保留前 K 个
+     */
+    private static List<ScoredChunk> excludeSelf(List<ScoredChunk> hits, IndexedChunk self) {
+        return hits.stream()
+                .filter(hit -> !hit.chunk().chunkId().equals(self.chunkId()))
+                .limit(RECALL_K)
+                .toList();
+    }
+}
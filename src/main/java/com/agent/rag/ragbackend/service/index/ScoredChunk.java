@@ -0,0 +1,7 @@
+package com.agent.rag.ragbackend.service.index;
+
+/**
+ * 带相似度得分的检索结果
+ */
+public record ScoredChunk(IndexedChunk chunk, double score) {
+}
@@ -0,0 +1,243 @@
+package com.agent.rag.ragbackend.service.index;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32C;
+
+/**
+ * 快照段文件 (seg-&lt;段 id&gt;.bin)：一个 {@link IndexSegment} 的切片元数据、关键词倒排和全精度向量
+ *
+ * <pre>
+ * 头部 (40 字节, big-endian)
+ *   int  MAGIC  int 格式版本  int 切片数  int 保留
+ *   long 元数据区长度  long 向量区长度  int 元数据区 CRC32C  int 向量区 CRC32C
+ * 元数据区 (big-endian)
+ *   每个切片: chunkId, path, title (可空), ordinal, text, 向量维度, 词数
+ *   总词数, 词项数, 每个词项: term, 命中数, (slot, tf) × 命中数
+ * 向量区 (little-endian float，按槽位顺序连续存放)
+ * </pre>
+ *
+ * <p>段是只读的，文件写一次后被之后的快照复用；墓碑不在段文件里，由快照清单记录。
+ * 写入先写临时文件、刷盘后原子改名，进程崩溃不会留下半个段文件。</p>
+ */
+final class SegmentFile {
+
+    static final int MAGIC = 0x52534547; // "RSEG"
+    static final int FORMAT_VERSION = 1;
+    private static final int HEADER_BYTES = 40;
+
+    private SegmentFile() {
+    }
+
+    static Path pathOf(Path dir, String segmentId) {
+        return dir.resolve("seg-" + segmentId + ".bin");
+    }
+
+    /**
+     * 写入段文件 (已存在则跳过)
+     */
+    static void write(Path dir, IndexSegment segment) throws IOException {
+        Path target = pathOf(dir, segment.id());
+        if (Files.exists(target)) return;
+
+        byte[] meta = encodeMeta(segment);
+        long vectorsLength = 0;
+        for (int slot = 0; slot < segment.size(); slot++) {
+            vectorsLength += 4L * segment.vectors().dimension(slot);
+        }
+        if (HEADER_BYTES + meta.length + vectorsLength > Integer.MAX_VALUE) {
+            throw new IOException("段 " + segment.id() + " 超过 2GB，无法内存映射，请调小 rag.index.max-shard-chunks");
+        }
+
+        Path tmp = dir.resolve("seg-" + segment.id() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            CRC32C vectorsCrc = new CRC32C();
+            ByteBuffer buffer = ByteBuffer.allocate(64 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+            channel.position(HEADER_BYTES + meta.length);
+            for (int slot = 0; slot < segment.size(); slot++) {
+                for (float v : segment.vectors().vector(slot)) {
+                    if (!buffer.hasRemaining()) drain(channel, buffer, vectorsCrc);
+                    buffer.putFloat(v);
+                }
+            }
+            drain(channel, buffer, vectorsCrc);
+
+            CRC32C metaCrc = new CRC32C();
+            metaCrc.update(meta);
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES)
+                    .putInt(MAGIC).putInt(FORMAT_VERSION).putInt(segment.size()).putInt(0)
+                    .putLong(meta.length).putLong(vectorsLength)
+                    .putInt((int) metaCrc.getValue()).putInt((int) vectorsCrc.getValue())
+                    .flip();
+            channel.position(0);
+            writeFully(channel, header);
+            writeFully(channel, ByteBuffer.wrap(meta));
+            channel.force(true);
+        }
+        Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        syncDirectory(dir);
+    }
+
+    /**
+     * 改名后刷盘目录项，否则断电后改名可能丢失 (文件内容已落盘但目录里还是临时文件名)
+     *
+     * <p>部分平台 (如 Windows) 不能以只读方式打开目录，此时跳过。</p>
+     */
+    static void syncDirectory(Path dir) throws IOException {
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(dir, StandardOpenOption.READ);
+        } catch (IOException e) {
+            return;
+        }
+        try (channel) {
+            channel.force(true);
+        }
+    }
+
+    /**
+     * 内存映射打开段文件：校验头部和元数据区，向量区保持映射、按需换入
+     *
+     * @param quantization 当前配置的向量存储方式 (与写快照时不同也可以，首次打分时按当前方式编码)
+     */
+    static IndexSegment open(Path file, String segmentId, VectorQuantization quantization) throws IOException {
+        ByteBuffer mapped;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("段文件超过 2GB，无法内存映射: " + file);
+            }
+            // 映射建立后与通道无关，关闭通道不影响读取
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (mapped.capacity() < HEADER_BYTES || mapped.getInt(0) != MAGIC) {
+            throw new IOException("不是段文件: " + file);
+        }
+        int version = mapped.getInt(4);
+        if (version != FORMAT_VERSION) {
+            throw new IOException("不支持的段文件格式版本 " + version + ": " + file);
+        }
+        int count = mapped.getInt(8);
+        long metaLength = mapped.getLong(16);
+        long vectorsLength = mapped.getLong(24);
+        int metaChecksum = mapped.getInt(32);
+        int vectorsChecksum = mapped.getInt(36);
+        if (HEADER_BYTES + metaLength + vectorsLength != mapped.capacity()) {
+            throw new IOException("段文件长度不符 (可能被截断): " + file);
+        }
+
+        ByteBuffer meta = mapped.slice(HEADER_BYTES, (int) metaLength);
+        CRC32C crc = new CRC32C();
+        crc.update(meta.duplicate());
+        if ((int) crc.getValue() != metaChecksum) {
+            throw new IOException("段文件元数据校验和不符: " + file);
+        }
+
+        IndexedChunk[] chunks = new IndexedChunk[count];
+        int[] dimensions = new int[count];
+        int[] docLengths = new int[count];
+        for (int slot = 0; slot < count; slot++) {
+            String chunkId = readString(meta);
+            String path = readString(meta);
+            String title = readString(meta);
+            int ordinal = meta.getInt();
+            String text = readString(meta);
+            dimensions[slot] = meta.getInt();
+            docLengths[slot] = meta.getInt();
+            chunks[slot] = new IndexedChunk(chunkId, path, title, ordinal, text, null);
+        }
+        long totalTokens = meta.getLong();
+        int termCount = meta.getInt();
+        Map<String, IndexSegment.Posting> postings = new HashMap<>(termCount * 2);
+        for (int t = 0; t < termCount; t++) {
+            String term = readString(meta);
+            int hits = meta.getInt();
+            int[] slots = new int[hits];
+            int[] tfs = new int[hits];
+            for (int i = 0; i < hits; i++) {
+                slots[i] = meta.getInt();
+                tfs[i] = meta.getInt();
+            }
+            postings.put(term, new IndexSegment.Posting(slots, tfs));
+        }
+
+        ByteBuffer vectors = mapped.slice(HEADER_BYTES + (int) metaLength, (int) vectorsLength);
+        return IndexSegment.restore(segmentId, chunks,
+                new MappedSegmentVectors(vectors, dimensions, vectorsChecksum, quantization),
+                docLengths, totalTokens, postings);
+    }
+
+    private static byte[] encodeMeta(IndexSegment segment) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        for (int slot = 0; slot < segment.size(); slot++) {
+            IndexedChunk chunk = segment.chunk(slot);
+            writeString(out, chunk.chunkId());
+            writeString(out, chunk.path());
+            writeString(out, chunk.title());
+            out.writeInt(chunk.ordinal());
+            writeString(out, chunk.text());
+            out.writeInt(segment.vectors().dimension(slot));
+            out.writeInt(segment.docLength(slot));
+        }
+        out.writeLong(segment.totalTokens());
+        out.writeInt(segment.postings().size());
+        for (Map.Entry<String, IndexSegment.Posting> entry : segment.postings().entrySet()) {
+            writeString(out, entry.getKey());
+            int[] slots = entry.getValue().slots();
+            int[] tfs = entry.getValue().tfs();
+            out.writeInt(slots.length);
+            for (int i = 0; i < slots.length; i++) {
+                out.writeInt(slots[i]);
+                out.writeInt(tfs[i]);
+            }
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * 字符串：int 字节数 (-1 表示 null) + UTF-8
+     */
+    static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(utf8.length);
+        out.write(utf8);
+    }
+
+    static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) return null;
+        byte[] utf8 = new byte[length];
+        in.get(utf8);
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+
+    private static void drain(FileChannel channel, ByteBuffer buffer, CRC32C crc) throws IOException {
+        buffer.flip();
+        crc.update(buffer.duplicate());
+        writeFully(channel, buffer);
+        buffer.clear();
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.agent.rag.ragbackend.service.index;
+
+/**
+ * 一个索引段的向量存储
+ *
+ * <p>全精度存储直接在堆内打分；量化存储在堆内只保留压缩编码用于粗排，
+ * 全精度向量落盘，只在精排 (重打分) 和合并时按需读取。</p>
+ */
+interface SegmentVectors {
+
+    /**
+     * 一次检索的问题向量，预先算好各种编码需要的形式
+     *
+     * @param bits 符号位编码 (二值量化使用)
+     */
+    record PreparedQuery(float[] vector, long[] bits) {
+
+        static PreparedQuery of(float[] vector) {
+            return new PreparedQuery(vector, BinarySegmentVectors.signBits(vector));
+        }
+    }
+
+    int dimension(int slot);
+
+    /**
+     * 打分 (量化存储为近似值)
+     */
+    float score(PreparedQuery query, int slot);
+
+    /**
+     * score 是否就是精确的点积 (无需重打分)
+     */
+    boolean isExact();
+
+    /**
+     * 读取全精度向量
+     */
+    float[] vector(int slot);
+
+    /**
+     * 堆内占用估算 (字节)
+     */
+    long memoryBytes();
+
+    /**
+     * 段被合并替换后释放磁盘文件
+     */
+    void release();
+}
@@ -0,0 +1,56 @@
+package com.agent.rag.ragbackend.service.index;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Function;
+
+/**
+ * 分片并行检索：把分片区间对半拆分 fork 出去，叶子查询单个分片，逐层归并 Top-K
+ */
+class ShardSearchTask extends RecursiveTask<List<ScoredChunk>> {
+
+    private final List<ChunkIndex> shards;
+    private final int from;
+    private final int to;
+    private final Function<ChunkIndex, List<ScoredChunk>> search;
+    private final int topK;
+
+    ShardSearchTask(List<ChunkIndex> shards, int from, int to,
+                    Function<ChunkIndex, List<ScoredChunk>> search, int topK) {
+        this.shards = shards;
+        this.from = from;
+        this.to = to;
+        this.search = search;
+        this.topK = topK;
+    }
+
+    @Override
+    protected List<ScoredChunk> compute() {
+        if (to - from == 1) {
+            return search.apply(shards.get(from));
+        }
+        int mid = (from + to) >>> 1;
+        ShardSearchTask left = new ShardSearchTask(shards, from, mid, search, topK);
+        left.fork();
+        List<ScoredChunk> right = new ShardSearchTask(shards, mid, to, search, topK).compute();
+        return merge(left.join(), right, topK);
+    }
+
+    /**
+     * 归并两个按得分降序排列的结果
+     */
+    static List<ScoredChunk> merge(List<ScoredChunk> a, List<ScoredChunk> b, int topK) {
+        List<ScoredChunk> merged = new ArrayList<>(Math.min(topK, a.size() + b.size()));
+        int i = 0;
+        int j = 0;
+        while (merged.size() < topK && (i < a.size() || j < b.size())) {
+            if (j >= b.size() || (i < a.size() && a.get(i).score() >= b.get(j).score())) {
+                merged.add(a.get(i++));
+            } else {
+                merged.add(b.get(j++));
+            }
+        }
+        return merged;
+    }
+}
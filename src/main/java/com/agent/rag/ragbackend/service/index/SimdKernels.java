@@ -0,0 +1,104 @@
+package com.agent.rag.ragbackend.service.index;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Vector API 实现 (只能由 {@link VectorKernels} 在确认模块已加载后访问，否则类加载失败)
+ *
+ * <p>主循环使用两个累加器交替 FMA，隐藏乘加指令的延迟；尾部不足一个向量宽度的部分走标量。</p>
+ */
+final class SimdKernels {
+
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+
+    /**
+     * 与 float 通道数相同的 byte 向量 (int8 编码按通道拓宽为 float)；
+     * 128 位平台上对应 32 位形状不存在，为 null 时 int8 点积走标量
+     */
+    private static final VectorSpecies<Byte> BYTE_SPECIES = byteSpeciesFor(SPECIES);
+
+    private SimdKernels() {
+    }
+
+    static int bitSize() {
+        return SPECIES.vectorBitSize();
+    }
+
+    static float dot(float[] a, float[] b) {
+        int step = SPECIES.length();
+        int bound = SPECIES.loopBound(a.length);
+        FloatVector acc0 = FloatVector.zero(SPECIES);
+        FloatVector acc1 = FloatVector.zero(SPECIES);
+        int i = 0;
+        for (; i + step < bound; i += 2 * step) {
+            acc0 = FloatVector.fromArray(SPECIES, a, i).fma(FloatVector.fromArray(SPECIES, b, i), acc0);
+            acc1 = FloatVector.fromArray(SPECIES, a, i + step).fma(FloatVector.fromArray(SPECIES, b, i + step), acc1);
+        }
+        for (; i < bound; i += step) {
+            acc0 = FloatVector.fromArray(SPECIES, a, i).fma(FloatVector.fromArray(SPECIES, b, i), acc0);
+        }
+        float sum = acc0.add(acc1).reduceLanes(VectorOperators.ADD);
+        for (; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    static boolean supportsByteCodes() {
+        return BYTE_SPECIES != null;
+    }
+
+    static float dot(float[] a, byte[] codes) {
+        int step = SPECIES.length();
+        int bound = SPECIES.loopBound(a.length);
+        FloatVector acc = FloatVector.zero(SPECIES);
+        int i = 0;
+        for (; i < bound; i += step) {
+            FloatVector widened = (FloatVector) ByteVector.fromArray(BYTE_SPECIES, codes, i)
+                    .convertShape(VectorOperators.B2F, SPECIES, 0);
+            acc = FloatVector.fromArray(SPECIES, a, i).fma(widened, acc);
+        }
+        float sum = acc.reduceLanes(VectorOperators.ADD);
+        for (; i < a.length; i++) {
+            sum += a[i] * codes[i];
+        }
+        return sum;
+    }
+
+    static float cosine(float[] a, float[] b) {
+        int step = SPECIES.length();
+        int bound = SPECIES.loopBound(a.length);
+        FloatVector dot = FloatVector.zero(SPECIES);
+        FloatVector normA = FloatVector.zero(SPECIES);
+        FloatVector normB = FloatVector.zero(SPECIES);
+        int i = 0;
+        for (; i < bound; i += step) {
+            FloatVector va = FloatVector.fromArray(SPECIES, a, i);
+            FloatVector vb = FloatVector.fromArray(SPECIES, b, i);
+            dot = va.fma(vb, dot);
+            normA = va.fma(va, normA);
+            normB = vb.fma(vb, normB);
+        }
+        float d = dot.reduceLanes(VectorOperators.ADD);
+        float na = normA.reduceLanes(VectorOperators.ADD);
+        float nb = normB.reduceLanes(VectorOperators.ADD);
+        for (; i < a.length; i++) {
+            d += a[i] * b[i];
+            na += a[i] * a[i];
+            nb += b[i] * b[i];
+        }
+        return VectorKernels.cosineOf(d, na, nb);
+    }
+
+    private static VectorSpecies<Byte> byteSpeciesFor(VectorSpecies<Float> floatSpecies) {
+        try {
+            return VectorSpecies.of(byte.class, VectorShape.forBitSize(floatSpecies.length() * Byte.SIZE));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package com.agent.rag.ragbackend.service.index;
+
+import com.agent.rag.ragbackend.service.embedding.EmbeddingSpace;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32C;
+
+/**
+ * 快照清单文件 (snapshot-&lt;序号&gt;.bin)：一次快照引用了哪些段文件、各段的墓碑、仓库分片目录和同步清单
+ *
+ * <pre>
+ * 头部 (32 字节, big-endian)
+ *   int MAGIC  int 格式版本  long 序号  long 创建时间  int 正文长度  int 正文 CRC32C
+ * 正文
+ *   同步清单: 仓库数, 每个仓库: vaultId, 笔记数, (path, 内容哈希) × 笔记数
+ *   索引: 仓库数, 每个仓库: vaultId, 向量空间 (空串表示未知), 全局深度, 目录项 → 分片下标, 分片数,
+ *         每个分片: 局部深度, rescore-factor, 段数, 每个段: 段 id, 墓碑位图
+ * </pre>
+ *
+ * <p>先写临时文件、刷盘后原子改名，文件名出现即代表快照完整。</p>
+ */
+final class SnapshotFile {
+
+    static final int MAGIC = 0x52534e50; // "RSNP"
+    static final int FORMAT_VERSION = 1;
+    private static final int HEADER_BYTES = 32;
+    private static final String PREFIX = "snapshot-";
+    private static final String SUFFIX = ".bin";
+
+    record ShardData(int depth, int rescoreFactor, List<String> segmentIds, List<long[]> tombstones) {
+    }
+
+    /**
+     * @param embeddingSpace 向量空间，未知时为 null
+     */
+    record VaultData(String vaultId, EmbeddingSpace embeddingSpace, int globalDepth, int[] slots,
+                     List<ShardData> shards) {
+    }
+
+    /**
+     * @param manifests vaultId → path → 内容哈希
+     */
+    record SnapshotData(long sequence, long createdAt, Map<String, Map<String, String>> manifests,
+                        List<VaultData> vaults) {
+
+        Set<String> segmentIds() {
+            Set<String> ids = new LinkedHashSet<>();
+            vaults.forEach(vault -> vault.shards().forEach(shard -> ids.addAll(shard.segmentIds())));
+            return ids;
+        }
+    }
+
+    private SnapshotFile() {
+    }
+
+    static Path pathOf(Path dir, long sequence) {
+        return dir.resolve(String.format("%s%012d%s", PREFIX, sequence, SUFFIX));
+    }
+
+    /**
+     * 从文件名解析序号，不是快照文件返回 -1
+     */
+    static long sequenceOf(Path file) {
+        String name = file.getFileName().toString();
+        if (!name.startsWith(PREFIX) || !name.endsWith(SUFFIX)) return -1;
+        try {
+            return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    static void write(Path dir, SnapshotData data) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(data.manifests().size());
+        for (Map.Entry<String, Map<String, String>> vault : data.manifests().entrySet()) {
+            SegmentFile.writeString(out, vault.getKey());
+            out.writeInt(vault.getValue().size());
+            for (Map.Entry<String, String> entry : vault.getValue().entrySet()) {
+                SegmentFile.writeString(out, entry.getKey());
+                SegmentFile.writeString(out, entry.getValue());
+            }
+        }
+        out.writeInt(data.vaults().size());
+        for (VaultData vault : data.vaults()) {
+            SegmentFile.writeString(out, vault.vaultId());
+            SegmentFile.writeString(out, vault.embeddingSpace() != null ? vault.embeddingSpace().key() : "");
+            out.writeInt(vault.globalDepth());
+            out.writeInt(vault.slots().length);
+            for (int slot : vault.slots()) {
+                out.writeInt(slot);
+            }
+            out.writeInt(vault.shards().size());
+            for (ShardData shard : vault.shards()) {
+                out.writeInt(shard.depth());
+                out.writeInt(shard.rescoreFactor());
+                out.writeInt(shard.segmentIds().size());
+                for (int i = 0; i < shard.segmentIds().size(); i++) {
+                    SegmentFile.writeString(out, shard.segmentIds().get(i));
+                    long[] words = shard.tombstones().get(i);
+                    out.writeInt(words.length);
+                    for (long word : words) {
+                        out.writeLong(word);
+                    }
+                }
+            }
+        }
+        out.flush();
+        byte[] body = bytes.toByteArray();
+
+        CRC32C crc = new CRC32C();
+        crc.update(body);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES)
+                .putInt(MAGIC).putInt(FORMAT_VERSION).putLong(data.sequence()).putLong(data.createdAt())
+                .putInt(body.length).putInt((int) crc.getValue())
+                .flip();
+
+        Path target = pathOf(dir, data.sequence());
+        Path tmp = dir.resolve(target.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (ByteBuffer buffer : new ByteBuffer[]{header, ByteBuffer.wrap(body)}) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+            channel.force(true);
+        }
+        Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        SegmentFile.syncDirectory(dir);
+    }
+
+    /**
+     * 读取并校验快照清单
+     *
+     * @throws IOException 格式版本不支持、长度不符或校验和不符
+     */
+    static SnapshotData read(Path file) throws IOException {
+        ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(file));
+        if (in.remaining() < HEADER_BYTES || in.getInt() != MAGIC) {
+            throw new IOException("不是快照文件: " + file);
+        }
+        int version = in.getInt();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("不支持的快照格式版本 " + version + ": " + file);
+        }
+        long sequence = in.getLong();
+        long createdAt = in.getLong();
+        int bodyLength = in.getInt();
+        int checksum = in.getInt();
+        if (bodyLength != in.remaining()) {
+            throw new IOException("快照文件长度不符 (可能被截断): " + file);
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(in.duplicate());
+        if ((int) crc.getValue() != checksum) {
+            throw new IOException("快照文件校验和不符: " + file);
+        }
+
+        Map<String, Map<String, String>> manifests = new LinkedHashMap<>();
+        int manifestVaults = in.getInt();
+        for (int v = 0; v < manifestVaults; v++) {
+            String vaultId = SegmentFile.readString(in);
+            int notes = in.getInt();
+            Map<String, String> entries = new LinkedHashMap<>(notes * 2);
+            for (int i = 0; i < notes; i++) {
+                entries.put(SegmentFile.readString(in), SegmentFile.readString(in));
+            }
+            manifests.put(vaultId, entries);
+        }
+
+        int vaultCount = in.getInt();
+        List<VaultData> vaults = new ArrayList<>(vaultCount);
+        for (int v = 0; v < vaultCount; v++) {
+            String vaultId = SegmentFile.readString(in);
+            String space = SegmentFile.readString(in);
+            int globalDepth = in.getInt();
+            int[] slots = new int[in.getInt()];
+            for (int i = 0; i < slots.length; i++) {
+                slots[i] = in.getInt();
+            }
+            int shardCount = in.getInt();
+            List<ShardData> shards = new ArrayList<>(shardCount);
+            for (int s = 0; s < shardCount; s++) {
+                int depth = in.getInt();
+                int rescoreFactor = in.getInt();
+                int segmentCount = in.getInt();
+                List<String> segmentIds = new ArrayList<>(segmentCount);
+                List<long[]> tombstones = new ArrayList<>(segmentCount);
+                for (int i = 0; i < segmentCount; i++) {
+                    segmentIds.add(SegmentFile.readString(in));
+                    long[] words = new long[in.getInt()];
+                    for (int w = 0; w < words.length; w++) {
+                        words[w] = in.getLong();
+                    }
+                    tombstones.add(words);
+                }
+                shards.add(new ShardData(depth, rescoreFactor, segmentIds, tombstones));
+            }
+            vaults.add(new VaultData(vaultId, space.isEmpty() ? null : EmbeddingSpace.parse(space),
+                    globalDepth, slots, shards));
+        }
+        return new SnapshotData(sequence, createdAt, manifests, vaults);
+    }
+}
@@ -0,0 +1,361 @@
+package com.agent.rag.ragbackend.service.index;
+
+import com.agent.rag.ragbackend.service.embedding.EmbeddingSpace;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * 一个仓库的索引，按笔记路径哈希分成若干 {@link ChunkIndex} 分片 (可扩展哈希)
+ *
+ * <ul>
+ *     <li>目录长度为 2^全局深度，笔记路径哈希的低位决定落在哪个目录项；多个目录项可以指向同一个分片；</li>
+ *     <li>分片切片数超过上限时一分为二 (只迁移这一个分片的数据)，必要时目录长度翻倍；</li>
+ *     <li>检索时只有一个分片就在调用线程直接查；多个分片在 fork-join 池上并行查询再归并 Top-K。</li>
+ * </ul>
+ *
+ * <p>目录通过 volatile 引用整体替换，检索不加锁；同一仓库的写操作和拆分由一把锁串行化，
+ * 不同仓库之间互不影响。</p>
+ *
+ * <p>仓库只保存同一个向量空间 ({@link EmbeddingSpace}) 的向量：入库换了厂商 / 模型时，
+ * 旧空间的笔记全部打墓碑，由客户端增量同步按新模型重新上传。</p>
+ */
+@Slf4j
+public class VaultIndex {
+
+    /**
+     * 分片及其局部深度 (路径哈希的低 depth 位相同的笔记落在同一分片)
+     */
+    private record Shard(ChunkIndex index, int depth) {
+    }
+
+    /**
+     * 目录：长度 2^globalDepth
+     */
+    private record Directory(Shard[] slots, int globalDepth) {
+
+        Shard route(String path) {
+            return slots[hash(path) & (slots.length - 1)];
+        }
+
+        List<Shard> shards() {
+            Set<Shard> distinct = new LinkedHashSet<>(Arrays.asList(slots));
+            return new ArrayList<>(distinct);
+        }
+    }
+
+    /**
+     * 快照时刻的仓库状态
+     *
+     * @param slots          目录项 → shards 下标
+     * @param depths         各分片的局部深度
+     * @param embeddingSpace 向量空间 (未知时为 null)
+     */
+    record Capture(int globalDepth, int[] slots, int[] depths, List<ChunkIndex.Capture> shards,
+                   EmbeddingSpace embeddingSpace) {
+
+        /**
+         * 放掉各分片 capture 时加的段引用
+         */
+        void release() {
+            shards.forEach(ChunkIndex.Capture::release);
+        }
+    }
+
+    private final String vaultId;
+    private final Supplier<ChunkIndex> shardFactory;
+    private final ForkJoinPool searchPool;
+
+    private volatile Directory directory;
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    /**
+     * 索引中向量所属的空间 (还没有按空间入库过时为 null)
+     */
+    private volatile EmbeddingSpace embeddingSpace;
+
+    VaultIndex(String vaultId, Supplier<ChunkIndex> shardFactory, ForkJoinPool searchPool) {
+        this(vaultId, shardFactory, searchPool, new Directory(new Shard[]{new Shard(shardFactory.get(), 0)}, 0));
+    }
+
+    private VaultIndex(String vaultId, Supplier<ChunkIndex> shardFactory, ForkJoinPool searchPool,
+                       Directory directory) {
+        this.vaultId = vaultId;
+        this.shardFactory = shardFactory;
+        this.searchPool = searchPool;
+        this.directory = directory;
+    }
+
+    /**
+     * 按快照中的目录结构恢复 (各分片已恢复好段)
+     */
+    static VaultIndex restore(String vaultId, Supplier<ChunkIndex> shardFactory, ForkJoinPool searchPool,
+                              int globalDepth, int[] slots, int[] depths, List<ChunkIndex> shards,
+                              EmbeddingSpace embeddingSpace) {
+        if (slots.length != 1 << globalDepth) {
+            throw new IllegalArgumentException("目录长度与全局深度不一致: " + slots.length + " / " + globalDepth);
+        }
+        Shard[] restoredShards = new Shard[shards.size()];
+        for (int i = 0; i < restoredShards.length; i++) {
+            restoredShards[i] = new Shard(shards.get(i), depths[i]);
+        }
+        Shard[] directorySlots = new Shard[slots.length];
+        for (int i = 0; i < slots.length; i++) {
+            directorySlots[i] = restoredShards[slots[i]];
+        }
+        VaultIndex vault = new VaultIndex(vaultId, shardFactory, searchPool, new Directory(directorySlots, globalDepth));
+        vault.embeddingSpace = embeddingSpace;
+        return vault;
+    }
+
+    public String getVaultId() {
+        return vaultId;
+    }
+
+    /**
+     * 索引中向量所属的空间，检索时问题向量必须用同一个空间生成 (未知时为 null)
+     */
+    public EmbeddingSpace getEmbeddingSpace() {
+        return embeddingSpace;
+    }
+
+    // ==========================================
+    // 写操作
+    // ==========================================
+
+    /**
+     * 按向量空间写入：空间与仓库现有的不同时，先给其余笔记全部打墓碑，避免不同模型的向量混在一起打分
+     *
+     * @return 因换空间被移除的笔记路径 (需从同步清单中移除，等待客户端重新上传)
+     */
+    public Set<String> upsertAll(EmbeddingSpace space, Map<String, List<IndexedChunk>> chunksByPath) {
+        writeLock.lock();
+        try {
+            Set<String> discarded = new HashSet<>();
+            EmbeddingSpace current = embeddingSpace;
+            if (current != null && !current.equals(space)) {
+                for (Shard shard : directory.shards()) {
+                    for (String path : shard.index().paths()) {
+                        if (!chunksByPath.containsKey(path)) {
+                            shard.index().delete(path);
+                            discarded.add(path);
+                        }
+                    }
+                }
+                log.warn("🔀 [Index] 仓库 {} 向量空间 {} -> {}，移除 {} 篇旧空间的笔记，等待重新同步",
+                        vaultId, current, space, discarded.size());
+            }
+            embeddingSpace = space;
+            upsertAll(chunksByPath);
+            return discarded;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public void upsertAll(Map<String, List<IndexedChunk>> chunksByPath) {
+        writeLock.lock();
+        try {
+            Directory current = directory;
+            Map<Shard, Map<String, List<IndexedChunk>>> byShard = new HashMap<>();
+            chunksByPath.forEach((path, chunks) ->
+                    byShard.computeIfAbsent(current.route(path), s -> new HashMap<>()).put(path, chunks));
+            byShard.forEach((shard, chunks) -> shard.index().upsertAll(chunks));
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public int delete(String path) {
+        writeLock.lock();
+        try {
+            return directory.route(path).index().delete(path);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * 重命名：同一分片内直接改键；跨分片时把原向量迁移到新分片
+     *
+     * @return 被迁移的切片数，0 表示原路径不存在
+     */
+    public int rename(String fromPath, String toPath, String toTitle) {
+        writeLock.lock();
+        try {
+            ChunkIndex from = directory.route(fromPath).index();
+            ChunkIndex to = directory.route(toPath).index();
+            if (from == to) {
+                return from.rename(fromPath, toPath, toTitle);
+            }
+            List<IndexedChunk> moved = from.chunksOf(fromPath).stream()
+                    .map(chunk -> chunk.movedTo(toPath, toTitle))
+                    .toList();
+            if (moved.isEmpty()) return 0;
+            to.upsertAll(Map.of(toPath, moved));
+            from.delete(fromPath);
+            return moved.size();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // ==========================================
+    // 分片拆分 (后台)
+    // ==========================================
+
+    /**
+     * 把超过上限的分片一分为二
+     *
+     * @return 拆分的分片数
+     */
+    public int splitIfNeeded(int maxShardChunks, int maxShards) {
+        int splits = 0;
+        writeLock.lock();
+        try {
+            boolean changed = true;
+            while (changed) {
+                changed = false;
+                for (Shard shard : directory.shards()) {
+                    if (directory.shards().size() >= maxShards) return splits;
+                    if (shard.index().size() > maxShardChunks) {
+                        split(shard);
+                        splits++;
+                        changed = true;
+                        break;
+                    }
+                }
+            }
+            return splits;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void split(Shard shard) {
+        Directory current = directory;
+        Shard[] slots = current.slots();
+        int globalDepth = current.globalDepth();
+        if (shard.depth() == globalDepth) {
+            // 目录翻倍：新目录项 i + n 与 i 指向同一分片
+            Shard[] doubled = Arrays.copyOf(slots, slots.length * 2);
+            System.arraycopy(slots, 0, doubled, slots.length, slots.length);
+            slots = doubled;
+            globalDepth++;
+        } else {
+            slots = slots.clone();
+        }
+
+        int bit = shard.depth();
+        Shard low = new Shard(shardFactory.get(), bit + 1);
+        Shard high = new Shard(shardFactory.get(), bit + 1);
+        for (int i = 0; i < slots.length; i++) {
+            if (slots[i] == shard) {
+                slots[i] = ((i >>> bit) & 1) == 0 ? low : high;
+            }
+        }
+
+        Map<String, List<IndexedChunk>> lowChunks = new HashMap<>();
+        Map<String, List<IndexedChunk>> highChunks = new HashMap<>();
+        shard.index().exportLive().forEach((path, chunks) ->
+                (((hash(path) >>> bit) & 1) == 0 ? lowChunks : highChunks).put(path, chunks));
+        low.index().upsertAll(lowChunks);
+        high.index().upsertAll(highChunks);
+        low.index().setRescoreFactor(shard.index().getRescoreFactor());
+        high.index().setRescoreFactor(shard.index().getRescoreFactor());
+
+        directory = new Directory(slots, globalDepth);
+        shard.index().release();
+        log.info("🪓 [Shard] 仓库 {} 分片拆分: {} + {} 个切片, 当前 {} 个分片",
+                vaultId, low.index().size(), high.index().size(), directory.shards().size());
+    }
+
+    /**
+     * 在仓库写锁内依次取各分片状态，快照中的目录与分片内容一致
+     */
+    Capture capture() {
+        writeLock.lock();
+        try {
+            Directory current = directory;
+            List<Shard> shards = current.shards();
+            int[] slots = new int[current.slots().length];
+            for (int i = 0; i < slots.length; i++) {
+                slots[i] = shards.indexOf(current.slots()[i]);
+            }
+            int[] depths = shards.stream().mapToInt(Shard::depth).toArray();
+            return new Capture(current.globalDepth(), slots, depths,
+                    shards.stream().map(shard -> shard.index().capture()).toList(), embeddingSpace);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // ==========================================
+    // 查询
+    // ==========================================
+
+    public List<ScoredChunk> searchVector(float[] query, int topK) {
+        return fanOut(shard -> shard.searchVector(query, topK), topK);
+    }
+
+    /**
+     * 关键词检索：BM25 的 IDF 按分片各自统计，分片间得分近似可比
+     */
+    public List<ScoredChunk> searchKeyword(String query, int topK) {
+        return fanOut(shard -> shard.searchKeyword(query, topK), topK);
+    }
+
+    private List<ScoredChunk> fanOut(Function<ChunkIndex, List<ScoredChunk>> search, int topK) {
+        List<ChunkIndex> shards = shards();
+        if (shards.size() == 1) {
+            return search.apply(shards.get(0));
+        }
+        return searchPool.invoke(new ShardSearchTask(shards, 0, shards.size(), search, topK));
+    }
+
+    // ==========================================
+    // 统计
+    // ==========================================
+
+    public List<ChunkIndex> shards() {
+        return directory.shards().stream().map(Shard::index).toList();
+    }
+
+    public int size() {
+        return shards().stream().mapToInt(ChunkIndex::size).sum();
+    }
+
+    public int noteCount() {
+        return shards().stream().mapToInt(ChunkIndex::noteCount).sum();
+    }
+
+    public boolean isEmpty() {
+        return shards().stream().allMatch(ChunkIndex::isEmpty);
+    }
+
+    public boolean contains(String path) {
+        return directory.route(path).index().contains(path);
+    }
+
+    /**
+     * 路径哈希 (再混合一次，避免相似路径的 hashCode 低位集中)
+     */
+    static int hash(String path) {
+        int h = path.hashCode();
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        return h;
+    }
+}
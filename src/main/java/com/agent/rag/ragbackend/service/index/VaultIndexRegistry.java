@@ -0,0 +1,125 @@
+package com.agent.rag.ragbackend.service.index;
+
+import com.agent.rag.ragbackend.config.IndexConfig;
+import com.agent.rag.ragbackend.service.embedding.EmbeddingSpace;
+import com.agent.rag.ragbackend.service.manifest.ManifestService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * 各仓库的索引 (按 vaultId 隔离)
+ *
+ * <p>仓库之间数据完全独立，检索只会落在请求所属的仓库；仓库索引在第一次同步时创建。</p>
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class VaultIndexRegistry {
+
+    private final IndexConfig indexConfig;
+
+    @Qualifier("searchPool")
+    private final ForkJoinPool searchPool;
+
+    private final Map<String, VaultIndex> vaults = new ConcurrentHashMap<>();
+
+    /**
+     * 获取仓库索引，不存在则创建 (写入时使用)
+     */
+    public VaultIndex forVault(String vaultId) {
+        return vaults.computeIfAbsent(ManifestService.normalizeVaultId(vaultId), id -> {
+            log.info("🗂️ [Index] 创建仓库索引 {}, 向量存储方式: {}", id, indexConfig.getQuantization());
+            return new VaultIndex(id, this::newShard, searchPool);
+        });
+    }
+
+    /**
+     * 新建一个空分片
+     */
+    ChunkIndex newShard() {
+        return new ChunkIndex(indexConfig);
+    }
+
+    /**
+     * 注册从快照恢复的仓库索引 (启动时、接收流量之前调用)
+     */
+    VaultIndex restore(String vaultId, int globalDepth, int[] slots, int[] depths, List<ChunkIndex> shards,
+                       EmbeddingSpace embeddingSpace) {
+        VaultIndex vault = VaultIndex.restore(vaultId, this::newShard, searchPool, globalDepth, slots, depths, shards,
+                embeddingSpace);
+        vaults.put(vaultId, vault);
+        return vault;
+    }
+
+    /**
+     * 查找仓库索引 (检索时使用，不存在不创建)
+     */
+    public Optional<VaultIndex> find(String vaultId) {
+        return Optional.ofNullable(vaults.get(ManifestService.normalizeVaultId(vaultId)));
+    }
+
+    public Collection<VaultIndex> all() {
+        return vaults.values();
+    }
+
+    /**
+     * 所有仓库的所有分片 (后台维护使用)
+     */
+    public List<ChunkIndex> allShards() {
+        return vaults.values().stream().flatMap(vault -> vault.shards().stream()).toList();
+    }
+
+    /**
+     * 索引统计
+     *
+     * @param vaultId 为空时统计所有仓库
+     */
+    public Map<String, Object> stats(String vaultId) {
+        List<ChunkIndex> shards = vaultId == null
+                ? allShards()
+                : find(vaultId).map(VaultIndex::shards).orElse(List.of());
+        int chunks = 0;
+        int dead = 0;
+        int notes = 0;
+        int segments = 0;
+        long vectorBytes = 0;
+        int maxRescoreFactor = 0;
+        double minRecall = Double.NaN;
+        for (ChunkIndex shard : shards) {
+            chunks += shard.size();
+            dead += shard.deadCount();
+            notes += shard.noteCount();
+            segments += shard.segmentCount();
+            vectorBytes += shard.vectorBytes();
+            maxRescoreFactor = Math.max(maxRescoreFactor, shard.getRescoreFactor());
+            if (!Double.isNaN(shard.getLastRecall()) && !(shard.getLastRecall() >= minRecall)) {
+                minRecall = shard.getLastRecall();
+            }
+        }
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("vaults", vaultId == null ? vaults.size() : (shards.isEmpty() ? 0 : 1));
+        stats.put("shards", shards.size());
+        stats.put("notes", notes);
+        stats.put("chunks", chunks);
+        stats.put("deadChunks", dead);
+        stats.put("deadRatio", chunks + dead == 0 ? 0.0 : Math.round(dead * 1000.0 / (chunks + dead)) / 1000.0);
+        stats.put("segments", segments);
+        stats.put("quantization", VectorQuantization.of(indexConfig.getQuantization()));
+        stats.put("vectorBytes", vectorBytes);
+        stats.put("vectorBytesPerChunk", chunks == 0 ? 0 : vectorBytes / chunks);
+        stats.put("rescoreFactor", maxRescoreFactor);
+        stats.put("recallAt10", Double.isNaN(minRecall) ? null : Math.round(minRecall * 1000) / 1000.0);
+        return stats;
+    }
+}
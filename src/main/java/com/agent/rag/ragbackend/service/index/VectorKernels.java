@@ -0,0 +1,104 @@
+package com.agent.rag.ragbackend.service.index;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 向量相似度计算内核
+ *
+ * <p>检索打分、MMR 去重都是对几百到几千个候选做点积的热循环。
+ * 运行时加载了 jdk.incubator.vector 模块时走 SIMD 实现 ({@link SimdKernels})，
+ * 否则退回标量循环，两者结果只有浮点累加顺序带来的误差。</p>
+ *
+ * <p>启动参数需带 {@code --add-modules=jdk.incubator.vector} (pom 中已为编译、测试、spring-boot:run、jib 镜像配置)。</p>
+ */
+@Slf4j
+public final class VectorKernels {
+
+    private static final boolean SIMD_ENABLED = detectSimd();
+
+    private VectorKernels() {
+    }
+
+    public static boolean isSimdEnabled() {
+        return SIMD_ENABLED;
+    }
+
+    /**
+     * 点积
+     */
+    public static float dot(float[] a, float[] b) {
+        checkLength(a, b);
+        return SIMD_ENABLED ? SimdKernels.dot(a, b) : dotScalar(a, b);
+    }
+
+    /**
+     * 余弦相似度 (任一向量为零向量时为 0)
+     */
+    public static float cosine(float[] a, float[] b) {
+        checkLength(a, b);
+        return SIMD_ENABLED ? SimdKernels.cosine(a, b) : cosineScalar(a, b);
+    }
+
+    /**
+     * float 与 int8 编码的点积 (量化向量粗排)
+     */
+    public static float dot(float[] a, byte[] codes) {
+        if (a.length != codes.length) {
+            throw new IllegalArgumentException("向量维度不一致: " + a.length + " vs " + codes.length);
+        }
+        return SIMD_ENABLED && SimdKernels.supportsByteCodes() ? SimdKernels.dot(a, codes) : dotScalar(a, codes);
+    }
+
+    static float dotScalar(float[] a, byte[] codes) {
+        float sum = 0f;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * codes[i];
+        }
+        return sum;
+    }
+
+    static float dotScalar(float[] a, float[] b) {
+        float sum = 0f;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    static float cosineScalar(float[] a, float[] b) {
+        float dot = 0f;
+        float normA = 0f;
+        float normB = 0f;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+            normA += a[i] * a[i];
+            normB += b[i] * b[i];
+        }
+        return cosineOf(dot, normA, normB);
+    }
+
+    static float cosineOf(float dot, float normA, float normB) {
+        if (normA == 0f || normB == 0f) return 0f;
+        return (float) (dot / Math.sqrt((double) normA * normB));
+    }
+
+    private static void checkLength(float[] a, float[] b) {
+        if (a.length != b.length) {
+            throw new IllegalArgumentException("向量维度不一致: " + a.length + " vs " + b.length);
+        }
+    }
+
+    private static boolean detectSimd() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            log.info("🧮 [VectorKernels] 未加载 jdk.incubator.vector，相似度计算使用标量实现");
+            return false;
+        }
+        try {
+            log.info("🧮 [VectorKernels] 启用 SIMD 相似度计算, 向量宽度 {} 位", SimdKernels.bitSize());
+            return true;
+        } catch (LinkageError e) {
+            log.warn("⚠️ [VectorKernels] Vector API 初始化失败，使用标量实现: {}", e.getMessage());
+            return false;
+        }
+    }
+}
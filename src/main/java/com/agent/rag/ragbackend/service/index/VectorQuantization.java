@@ -0,0 +1,48 @@
+package com.agent.rag.ragbackend.service.index;
+
+import java.nio.file.Path;
+
+/**
+ * 向量存储方式
+ */
+public enum VectorQuantization {
+
+    /**
+     * 全精度 float，全部在堆内
+     */
+    NONE,
+
+    /**
+     * int8 标量量化 (约 4 倍压缩)，全精度向量落盘用于重打分
+     */
+    INT8,
+
+    /**
+     * 1 位符号编码 (约 32 倍压缩)，全精度向量落盘用于重打分
+     */
+    BINARY;
+
+    public static VectorQuantization of(String name) {
+        if (name == null || name.isBlank()) return NONE;
+        try {
+            return valueOf(name.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("不支持的向量量化方式: " + name);
+        }
+    }
+
+    SegmentVectors encode(float[][] vectors, Path dataDir) {
+        return this == NONE ? new FloatSegmentVectors(vectors) : encode(vectors, FullPrecisionFile.write(dataDir, vectors));
+    }
+
+    /**
+     * 按已有的全精度来源编码 (全精度存储时忽略 fullPrecision)
+     */
+    SegmentVectors encode(float[][] vectors, FullPrecisionSource fullPrecision) {
+        return switch (this) {
+            case NONE -> new FloatSegmentVectors(vectors);
+            case INT8 -> Int8SegmentVectors.encode(vectors, fullPrecision);
+            case BINARY -> BinarySegmentVectors.encode(vectors, fullPrecision);
+        };
+    }
+}
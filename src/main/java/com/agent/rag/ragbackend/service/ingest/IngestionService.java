@@ -0,0 +1,197 @@
+package com.agent.rag.ragbackend.service.ingest;
+
+import com.agent.rag.ragbackend.config.RetrievalConfig;
+import com.agent.rag.ragbackend.dto.request.SyncRequest;
+import com.agent.rag.ragbackend.service.embedding.EmbeddingService;
+import com.agent.rag.ragbackend.service.embedding.EmbeddingSpace;
+import com.agent.rag.ragbackend.service.index.IndexedChunk;
+import com.agent.rag.ragbackend.service.index.VaultIndex;
+import com.agent.rag.ragbackend.service.index.VaultIndexRegistry;
+import com.agent.rag.ragbackend.service.manifest.ManifestService;
+import com.agent.rag.ragbackend.service.manifest.VaultManifest;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * 笔记入库服务：切片 → 批量向量化 → 写入索引
+ *
+ * <p>一次同步的多篇笔记按 (向量厂商, 模型) 分组，同组所有切片合并后再交给
+ * {@link EmbeddingService} 批量处理，避免每篇笔记各自发起一串小请求。</p>
+ *
+ * <p>删除和重命名不需要向量化：删除只给旧切片打墓碑，重命名复用原向量换个路径。</p>
+ *
+ * <p>切片按 vaultId 写入各自仓库的索引，仓库之间互不可见；索引记录向量空间 (厂商, 模型)，
+ * 检索时用同一空间向量化问题。</p>
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class IngestionService {
+
+    private final EmbeddingService embeddingService;
+    private final VaultIndexRegistry vaultIndexRegistry;
+    private final RetrievalConfig retrievalConfig;
+    private final ManifestService manifestService;
+
+    /**
+     * 入库报告
+     *
+     * @param skipped 内容与向量空间都未变化、跳过重新入库的笔记数
+     * @param removed 删除的笔记数
+     * @param renamed 重命名的笔记数 (复用原向量)
+     */
+    public record IngestionReport(int notes, int skipped, int removed, int renamed, int chunks, long elapsedMillis) {
+
+        /**
+         * 吞吐量 (切片/秒)
+         */
+        public double chunksPerSecond() {
+            return elapsedMillis == 0 ? chunks * 1000.0 : chunks * 1000.0 / elapsedMillis;
+        }
+    }
+
+    /**
+     * 同步一批笔记
+     *
+     * @param apiKey 向量化厂商的 API Key (可为空，使用服务端配置)
+     */
+    public IngestionReport ingest(List<SyncRequest> notes, String apiKey) {
+        long start = System.nanoTime();
+
+        // 1. 先处理删除 / 重命名；跳过内容和向量空间都没变的笔记，其余按向量空间 (厂商/模型) 分组
+        Map<EmbeddingSpace, List<SyncRequest>> groups = new LinkedHashMap<>();
+        int skipped = 0;
+        int removed = 0;
+        int renamed = 0;
+        for (SyncRequest note : notes) {
+            String operation = note.operationOrDefault();
+            if (SyncRequest.OP_DELETE.equals(operation)) {
+                delete(note);
+                removed++;
+                continue;
+            }
+            if (SyncRequest.OP_RENAME.equals(operation)) {
+                boolean moved = rename(note);
+                if (moved) renamed++;
+                if (note.getContent() == null) {
+                    if (moved) continue;
+                    throw new IllegalArgumentException("重命名的原笔记不存在且未提供内容: " + note.getOldPath());
+                }
+                // 带了内容：与清单比对，重命名的同时内容有改动 (或原路径未入库) 则按新增处理
+            } else if (!SyncRequest.OP_UPSERT.equals(operation)) {
+                throw new IllegalArgumentException("不支持的同步操作: " + note.getOperation());
+            }
+            EmbeddingSpace space = embeddingService.resolveSpace(note.getEmbeddingProvider(), note.getEmbeddingModel());
+            if (isUnchanged(note, space)) {
+                skipped++;
+                continue;
+            }
+            groups.computeIfAbsent(space, k -> new ArrayList<>()).add(note);
+        }
+
+        int totalChunks = 0;
+        for (Map.Entry<EmbeddingSpace, List<SyncRequest>> group : groups.entrySet()) {
+            totalChunks += ingestGroup(group.getKey(), group.getValue(), apiKey);
+        }
+
+        IngestionReport report = new IngestionReport(notes.size(), skipped, removed, renamed, totalChunks,
+                (System.nanoTime() - start) / 1_000_000);
+        log.info("📥 [Ingest] 入库 {} 篇笔记 (未变化跳过 {} 篇, 删除 {} 篇, 重命名 {} 篇), {} 个切片, 耗时 {}ms, 吞吐 {} 切片/秒",
+                report.notes(), report.skipped(), report.removed(), report.renamed(), report.chunks(), report.elapsedMillis(),
+                String.format("%.1f", report.chunksPerSecond()));
+        return report;
+    }
+
+    /**
+     * 内容哈希与清单一致、且仓库索引的向量空间与本次请求一致时才跳过；
+     * 换了厂商 / 模型后内容没变也要重新向量化，否则旧模型的向量会一直留在索引里
+     */
+    private boolean isUnchanged(SyncRequest note, EmbeddingSpace space) {
+        boolean sameSpace = vaultIndexRegistry.find(note.getVaultId())
+                .map(VaultIndex::getEmbeddingSpace)
+                .map(space::equals)
+                .orElse(false);
+        return sameSpace && manifestService.isUnchanged(note.getVaultId(), pathOf(note),
+                VaultManifest.contentHash(note.getContent()));
+    }
+
+    private int ingestGroup(EmbeddingSpace space, List<SyncRequest> notes, String apiKey) {
+        // 2. 切片，记录每篇笔记在整体列表中的区间
+        List<String> texts = new ArrayList<>();
+        int[] offsets = new int[notes.size() + 1];
+        for (int i = 0; i < notes.size(); i++) {
+            offsets[i] = texts.size();
+            texts.addAll(MarkdownChunker.split(notes.get(i).getContent(),
+                    retrievalConfig.getChunkSize(), retrievalConfig.getChunkOverlap()));
+        }
+        offsets[notes.size()] = texts.size();
+
+        // 3. 整组一起批量向量化
+        List<float[]> vectors = embeddingService.embedAll(texts, space.provider(), space.model(), apiKey).vectors();
+
+        // 4. 按仓库整批写入索引 (整体替换各笔记的旧切片)，成功后再更新清单
+        Map<String, Map<String, List<IndexedChunk>>> chunksByVault = new LinkedHashMap<>();
+        for (int i = 0; i < notes.size(); i++) {
+            SyncRequest note = notes.get(i);
+            String path = pathOf(note);
+            List<IndexedChunk> chunks = new ArrayList<>(offsets[i + 1] - offsets[i]);
+            for (int j = offsets[i]; j < offsets[i + 1]; j++) {
+                int ordinal = j - offsets[i];
+                chunks.add(new IndexedChunk(path + "#" + ordinal, path, note.getTitle(), ordinal,
+                        texts.get(j), vectors.get(j)));
+            }
+            chunksByVault.computeIfAbsent(ManifestService.normalizeVaultId(note.getVaultId()), v -> new LinkedHashMap<>())
+                    .put(path, chunks);
+        }
+        chunksByVault.forEach((vaultId, chunksByPath) -> {
+            // 换了向量空间：旧空间的笔记已从索引移除，清单同步移除，客户端增量同步时会重新上传
+            Set<String> discarded = vaultIndexRegistry.forVault(vaultId).upsertAll(space, chunksByPath);
+            discarded.forEach(path -> manifestService.remove(vaultId, path));
+        });
+        for (SyncRequest note : notes) {
+            manifestService.record(note.getVaultId(), pathOf(note), VaultManifest.contentHash(note.getContent()));
+        }
+        return texts.size();
+    }
+
+    private void delete(SyncRequest note) {
+        String path = pathOf(note);
+        int chunks = vaultIndexRegistry.find(note.getVaultId()).map(vault -> vault.delete(path)).orElse(0);
+        manifestService.remove(note.getVaultId(), path);
+        log.info("🗑️ [Ingest] 删除笔记 {}, 标记 {} 个切片", path, chunks);
+    }
+
+    /**
+     * 重命名：复用原向量
+     *
+     * @return false 表示原路径没有切片 (需按新增处理)
+     */
+    private boolean rename(SyncRequest note) {
+        if (note.getOldPath() == null || note.getOldPath().isBlank()) {
+            throw new IllegalArgumentException("重命名缺少 oldPath");
+        }
+        String path = pathOf(note);
+        int chunks = vaultIndexRegistry.find(note.getVaultId())
+                .map(vault -> vault.rename(note.getOldPath(), path, note.getTitle()))
+                .orElse(0);
+        if (chunks == 0) {
+            manifestService.remove(note.getVaultId(), note.getOldPath());
+            return false;
+        }
+        manifestService.move(note.getVaultId(), note.getOldPath(), path);
+        log.info("✏️ [Ingest] 重命名笔记 {} -> {}, 迁移 {} 个切片", note.getOldPath(), path, chunks);
+        return true;
+    }
+
+    private static String pathOf(SyncRequest note) {
+        return Objects.requireNonNullElse(note.getPath(), note.getTitle());
+    }
+}
@@ -0,0 +1,60 @@
+package com.agent.rag.ragbackend.service.ingest;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Markdown 切片工具
+ *
+ * <p>按空行分段，把相邻段落拼到目标长度附近；单个超长段落按固定长度硬切并保留重叠。
+ * 开头的 YAML front matter 不参与检索，直接跳过。</p>
+ */
+public final class MarkdownChunker {
+
+    private MarkdownChunker() {
+    }
+
+    public static List<String> split(String content, int chunkSize, int overlap) {
+        List<String> chunks = new ArrayList<>();
+        if (content == null || content.isBlank()) return chunks;
+
+        String body = stripFrontMatter(content);
+        StringBuilder current = new StringBuilder();
+        for (String paragraph : body.split("\\n\\s*\\n")) {
+            String p = paragraph.strip();
+            if (p.isEmpty()) continue;
+
+            if (p.length() > chunkSize) {
+                flush(current, chunks);
+                int step = Math.max(1, chunkSize - overlap);
+                for (int start = 0; start < p.length(); start += step) {
+                    chunks.add(p.substring(start, Math.min(p.length(), start + chunkSize)));
+                    if (start + chunkSize >= p.length()) break;
+                }
+                continue;
+            }
+            if (current.length() > 0 && current.length() + p.length() + 2 > chunkSize) {
+                flush(current, chunks);
+            }
+            if (current.length() > 0) current.append("\n\n");
+            current.append(p);
+        }
+        flush(current, chunks);
+        return chunks;
+    }
+
+    private static void flush(StringBuilder current, List<String> chunks) {
+        if (current.length() > 0) {
+            chunks.add(current.toString());
+            current.setLength(0);
+        }
+    }
+
+    private static String stripFrontMatter(String content) {
+        if (!content.startsWith("---")) return content;
+        int end = content.indexOf("\n---", 3);
+        if (end < 0) return content;
+        int lineEnd = content.indexOf('\n', end + 4);
+        return lineEnd < 0 ? "" : content.substring(lineEnd + 1);
+    }
+}
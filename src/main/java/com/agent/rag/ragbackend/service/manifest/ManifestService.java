@@ -0,0 +1,103 @@
+package com.agent.rag.ragbackend.service.manifest;
+
+import com.agent.rag.ragbackend.dto.response.ManifestNode;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 仓库清单服务 (增量同步)
+ *
+ * <p>插件重连后先取根节点，与本地计算的树逐层对比，只下钻哈希不同的子树，
+ * 最终在叶子上比对 (path, 内容哈希)，只上传有变化的笔记。
+ * 1 万篇笔记的仓库，少量改动时只需交换几 KB 数据。</p>
+ */
+@Service
+public class ManifestService {
+
+    public static final String DEFAULT_VAULT = "default";
+
+    private final Map<String, VaultManifest> manifests = new ConcurrentHashMap<>();
+
+    public static String normalizeVaultId(String vaultId) {
+        return vaultId == null || vaultId.isBlank() ? DEFAULT_VAULT : vaultId;
+    }
+
+    /**
+     * 某个笔记的内容是否与清单记录一致 (一致则无需重新入库)
+     */
+    public boolean isUnchanged(String vaultId, String path, String contentHash) {
+        VaultManifest manifest = manifests.get(normalizeVaultId(vaultId));
+        return manifest != null && contentHash.equals(manifest.contentHashOf(path));
+    }
+
+    public void record(String vaultId, String path, String contentHash) {
+        manifests.computeIfAbsent(normalizeVaultId(vaultId), k -> new VaultManifest()).put(path, contentHash);
+    }
+
+    public void remove(String vaultId, String path) {
+        VaultManifest manifest = manifests.get(normalizeVaultId(vaultId));
+        if (manifest != null) {
+            manifest.remove(path);
+        }
+    }
+
+    /**
+     * 重命名：把原路径的内容哈希迁移到新路径
+     */
+    public void move(String vaultId, String fromPath, String toPath) {
+        VaultManifest manifest = manifests.get(normalizeVaultId(vaultId));
+        if (manifest == null) return;
+        String hash = manifest.contentHashOf(fromPath);
+        manifest.remove(fromPath);
+        if (hash != null) {
+            manifest.put(toPath, hash);
+        }
+    }
+
+    /**
+     * 导出全部仓库的清单 (vaultId → path → 内容哈希)，用于索引快照
+     */
+    public Map<String, Map<String, String>> export() {
+        Map<String, Map<String, String>> all = new LinkedHashMap<>();
+        manifests.forEach((vault, manifest) -> all.put(vault, manifest.allEntries()));
+        return all;
+    }
+
+    /**
+     * 从索引快照恢复一个仓库的清单
+     */
+    public void restore(String vaultId, Map<String, String> entries) {
+        VaultManifest manifest = new VaultManifest();
+        entries.forEach(manifest::put);
+        manifests.put(normalizeVaultId(vaultId), manifest);
+    }
+
+    /**
+     * 查询清单树的一个节点
+     *
+     * @param prefix 节点前缀，空串为根节点，长度为 {@link VaultManifest#LEAF_DEPTH} 时为叶子
+     */
+    public ManifestNode node(String vaultId, String prefix) {
+        String vault = normalizeVaultId(vaultId);
+        String p = prefix == null ? "" : prefix.toLowerCase();
+        if (p.length() > VaultManifest.LEAF_DEPTH || !p.chars().allMatch(c -> Character.digit(c, 16) >= 0)) {
+            throw new IllegalArgumentException("非法的清单前缀: " + prefix);
+        }
+
+        VaultManifest manifest = manifests.getOrDefault(vault, new VaultManifest());
+        ManifestNode.ManifestNodeBuilder builder = ManifestNode.builder()
+                .vaultId(vault)
+                .prefix(p)
+                .hash(manifest.hash(p))
+                .noteCount(manifest.count(p));
+        if (p.length() == VaultManifest.LEAF_DEPTH) {
+            builder.entries(manifest.entries(p));
+        } else {
+            builder.children(manifest.children(p));
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,212 @@
+package com.agent.rag.ragbackend.service.manifest;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 单个仓库的内容清单 (两层 16 叉 Merkle 树)
+ *
+ * <p>哈希规则 (插件端需按相同规则计算)：</p>
+ * <ul>
+ *     <li>内容哈希 = hex(SHA-256(content 的 UTF-8 字节))；</li>
+ *     <li>笔记按 hex(SHA-256(path)) 的前 2 位分到 256 个叶子桶；</li>
+ *     <li>叶子哈希 = hex(SHA-256(按 path 排序拼接的 "path\n内容哈希\n"))；</li>
+ *     <li>非叶子哈希 = hex(SHA-256(按 0-f 顺序拼接非空子节点的 "字符:子哈希\n"))；</li>
+ *     <li>空子树的哈希为空串。</li>
+ * </ul>
+ *
+ * <p>写入时只把受影响的叶子和祖先标记为脏，读取时再惰性重算。</p>
+ */
+public class VaultManifest {
+
+    /**
+     * 叶子所在深度 (前缀长度)
+     */
+    public static final int LEAF_DEPTH = 2;
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    @SuppressWarnings("unchecked")
+    private final TreeMap<String, String>[] leaves = new TreeMap[256];
+    /**
+     * 叶子哈希缓存，null 表示需要重算
+     */
+    private final String[] leafHashes = new String[256];
+    private final String[] branchHashes = new String[16];
+    private String rootHash;
+
+    public VaultManifest() {
+        for (int i = 0; i < leaves.length; i++) {
+            leaves[i] = new TreeMap<>();
+        }
+    }
+
+    /**
+     * 查询某个笔记当前记录的内容哈希
+     */
+    public synchronized String contentHashOf(String path) {
+        return leaves[bucketOf(path)].get(path);
+    }
+
+    /**
+     * 记录 (或更新) 一个笔记的内容哈希
+     */
+    public synchronized void put(String path, String contentHash) {
+        int bucket = bucketOf(path);
+        if (contentHash.equals(leaves[bucket].put(path, contentHash))) return;
+        invalidate(bucket);
+    }
+
+    /**
+     * 移除一个笔记
+     */
+    public synchronized void remove(String path) {
+        int bucket = bucketOf(path);
+        if (leaves[bucket].remove(path) != null) {
+            invalidate(bucket);
+        }
+    }
+
+    public synchronized int size() {
+        int size = 0;
+        for (TreeMap<String, String> leaf : leaves) {
+            size += leaf.size();
+        }
+        return size;
+    }
+
+    public synchronized String rootHash() {
+        if (rootHash == null) {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < 16; i++) {
+                appendChild(sb, HEX[i], branchHash(i));
+            }
+            rootHash = sb.length() == 0 ? "" : digest(sb);
+        }
+        return rootHash;
+    }
+
+    /**
+     * 子节点哈希 (前缀长度 0 → 16 个分支，长度 1 → 16 个叶子)
+     */
+    public synchronized Map<String, String> children(String prefix) {
+        Map<String, String> children = new LinkedHashMap<>();
+        for (int i = 0; i < 16; i++) {
+            String hash = prefix.isEmpty() ? branchHash(i) : leafHash(Character.digit(prefix.charAt(0), 16) * 16 + i);
+            if (!hash.isEmpty()) {
+                children.put(String.valueOf(HEX[i]), hash);
+            }
+        }
+        return children;
+    }
+
+    /**
+     * 节点哈希
+     */
+    public synchronized String hash(String prefix) {
+        return switch (prefix.length()) {
+            case 0 -> rootHash();
+            case 1 -> branchHash(Character.digit(prefix.charAt(0), 16));
+            default -> leafHash(Integer.parseInt(prefix, 16));
+        };
+    }
+
+    /**
+     * 节点下的笔记数
+     */
+    public synchronized int count(String prefix) {
+        if (prefix.isEmpty()) return size();
+        int from = prefix.length() == 1 ? Character.digit(prefix.charAt(0), 16) * 16 : Integer.parseInt(prefix, 16);
+        int to = prefix.length() == 1 ? from + 16 : from + 1;
+        int count = 0;
+        for (int i = from; i < to; i++) {
+            count += leaves[i].size();
+        }
+        return count;
+    }
+
+    /**
+     * 叶子节点的笔记清单 (path → 内容哈希)
+     */
+    public synchronized Map<String, String> entries(String prefix) {
+        return Collections.unmodifiableMap(new TreeMap<>(leaves[Integer.parseInt(prefix, 16)]));
+    }
+
+    /**
+     * 全部笔记清单 (path → 内容哈希)
+     */
+    public synchronized Map<String, String> allEntries() {
+        Map<String, String> all = new TreeMap<>();
+        for (TreeMap<String, String> leaf : leaves) {
+            all.putAll(leaf);
+        }
+        return all;
+    }
+
+    private String branchHash(int branch) {
+        if (branchHashes[branch] == null) {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < 16; i++) {
+                appendChild(sb, HEX[i], leafHash(branch * 16 + i));
+            }
+            branchHashes[branch] = sb.length() == 0 ? "" : digest(sb);
+        }
+        return branchHashes[branch];
+    }
+
+    private String leafHash(int bucket) {
+        if (leafHashes[bucket] == null) {
+            TreeMap<String, String> leaf = leaves[bucket];
+            if (leaf.isEmpty()) {
+                leafHashes[bucket] = "";
+            } else {
+                StringBuilder sb = new StringBuilder();
+                leaf.forEach((path, hash) -> sb.append(path).append('\n').append(hash).append('\n'));
+                leafHashes[bucket] = digest(sb);
+            }
+        }
+        return leafHashes[bucket];
+    }
+
+    private void invalidate(int bucket) {
+        leafHashes[bucket] = null;
+        branchHashes[bucket / 16] = null;
+        rootHash = null;
+    }
+
+    private static void appendChild(StringBuilder sb, char c, String hash) {
+        if (!hash.isEmpty()) {
+            sb.append(c).append(':').append(hash).append('\n');
+        }
+    }
+
+    private static int bucketOf(String path) {
+        byte[] hash = sha256(path.getBytes(StandardCharsets.UTF_8));
+        return hash[0] & 0xff;
+    }
+
+    /**
+     * 内容哈希
+     */
+    public static String contentHash(String content) {
+        return HexFormat.of().formatHex(sha256((content != null ? content : "").getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static String digest(CharSequence text) {
+        return HexFormat.of().formatHex(sha256(text.toString().getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static byte[] sha256(byte[] bytes) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(bytes);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("JVM 不支持 SHA-256", e);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.agent.rag.ragbackend.service.overload;
+
+/**
+ * 负载等级，每一级包含前面各级的降级措施
+ */
+public enum LoadLevel {
+
+    NORMAL("normal"),
+    /**
+     * 跳过 MMR 重排，直接取向量检索 Top-K
+     */
+    SKIP_RERANK("skip-rerank"),
+    /**
+     * 缩减检索片段数与历史条数
+     */
+    SHRINK_CONTEXT("shrink-context"),
+    /**
+     * 关闭深度思考
+     */
+    NO_THINKING("no-thinking"),
+    /**
+     * 拒绝新请求
+     */
+    SHED("shed");
+
+    private final String label;
+
+    LoadLevel(String label) {
+        this.label = label;
+    }
+
+    public String label() {
+        return label;
+    }
+
+    public boolean skipRerank() {
+        return compareTo(SKIP_RERANK) >= 0;
+    }
+
+    public boolean shrinkContext() {
+        return compareTo(SHRINK_CONTEXT) >= 0;
+    }
+
+    public boolean disableThinking() {
+        return compareTo(NO_THINKING) >= 0;
+    }
+}
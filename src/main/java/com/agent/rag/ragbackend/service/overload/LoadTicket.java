@@ -0,0 +1,57 @@
+package com.agent.rag.ragbackend.service.overload;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 一次被受理的对话请求
+ *
+ * <p>受理时确定负载等级；收到首个数据块时记录首字延迟，结束时归还在途名额 (均幂等)。
+ * 没收到首个数据块就结束的流式请求 (上游超时 / 出错) 按结束时的耗时计入延迟，让慢失败也能推高 p99。
+ * 非流式请求的耗时是完整生成时间，与首字延迟不可比，不计入。</p>
+ */
+public class LoadTicket {
+
+    /**
+     * 关闭过载保护时使用的空实现
+     */
+    static final LoadTicket UNLIMITED = new LoadTicket(null, LoadLevel.NORMAL, 0, false);
+
+    private final OverloadGuard guard;
+    private final LoadLevel level;
+    private final long admittedMillis;
+    private final boolean streaming;
+    private final AtomicBoolean latencyRecorded = new AtomicBoolean();
+    private final AtomicBoolean released = new AtomicBoolean();
+
+    /**
+     * @param admittedMillis 受理时间，取自 {@link OverloadGuard} 的时钟
+     */
+    LoadTicket(OverloadGuard guard, LoadLevel level, long admittedMillis, boolean streaming) {
+        this.guard = guard;
+        this.level = level;
+        this.admittedMillis = admittedMillis;
+        this.streaming = streaming;
+    }
+
+    public LoadLevel level() {
+        return level;
+    }
+
+    /**
+     * 收到上游首个数据块 (非流式请求忽略)
+     */
+    public void firstToken() {
+        if (guard != null && streaming && latencyRecorded.compareAndSet(false, true)) {
+            guard.recordLatency(Math.max(0, guard.now() - admittedMillis));
+        }
+    }
+
+    /**
+     * 请求结束，归还在途名额
+     */
+    public void release() {
+        if (guard == null || !released.compareAndSet(false, true)) return;
+        firstToken();
+        guard.onRelease();
+    }
+}
@@ -0,0 +1,190 @@
+package com.agent.rag.ragbackend.service.overload;
+
+import com.agent.rag.ragbackend.config.OverloadConfig;
+import com.agent.rag.ragbackend.service.scheduling.LatencyWindow;
+import com.agent.rag.ragbackend.service.scheduling.WorkloadGovernor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * 对话接口的过载保护
+ *
+ * <p>受理新对话前计算负载压力 = max(在途对话数 / max-inflight, 对话线程池队列占比)，
+ * 按压力从轻到重依次：跳过 MMR 重排 → 缩减上下文 → 关闭深度思考 → 直接拒绝 (503 + Retry-After)。
+ * 宁可快速告诉用户繁忙，也不让所有人一起等到超时。</p>
+ *
+ * <p>流式对话的首字延迟 p99 / target-p99-ms 也按同样的阈值降级，但最多到关闭深度思考：
+ * 被拒绝的请求不产生延迟样本，若按 p99 拒绝，旧的慢样本会让保护一直停在拒绝状态，直到样本过期。</p>
+ *
+ * <p>在途数每次受理都实时判断；队列占比和 p99 的计算需要遍历样本，缓存 100ms。</p>
+ */
+@Slf4j
+@Component
+public class OverloadGuard {
+
+    private static final long SIGNAL_CACHE_MILLIS = 100;
+    private static final int LATENCY_SAMPLES = 512;
+
+    private final OverloadConfig overloadConfig;
+    private final WorkloadGovernor workloadGovernor;
+    private final LongSupplier clock;
+
+    private final AtomicInteger inflight = new AtomicInteger();
+    private final LatencyWindow firstTokenLatency;
+
+    private final LongAdder[] admittedByLevel = new LongAdder[LoadLevel.values().length];
+    private final AtomicReference<LoadLevel> lastLevel = new AtomicReference<>(LoadLevel.NORMAL);
+
+    private volatile long signalCheckedAt;
+    private volatile double cachedQueueFill;
+    private volatile long cachedP99;
+
+    @Autowired
+    public OverloadGuard(OverloadConfig overloadConfig, WorkloadGovernor workloadGovernor) {
+        this(overloadConfig, workloadGovernor, System::currentTimeMillis);
+    }
+
+    /**
+     * @param clock 当前时间（毫秒），用于首字延迟窗口和信号缓存，测试中可手动推进
+     */
+    OverloadGuard(OverloadConfig overloadConfig, WorkloadGovernor workloadGovernor, LongSupplier clock) {
+        this.overloadConfig = overloadConfig;
+        this.workloadGovernor = workloadGovernor;
+        this.clock = clock;
+        this.firstTokenLatency = new LatencyWindow(LATENCY_SAMPLES, clock);
+        for (int i = 0; i < admittedByLevel.length; i++) {
+            admittedByLevel[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * 尝试受理一次对话
+     *
+     * @return 为空表示拒绝，调用方应返回 503 + Retry-After
+     */
+    public Optional<LoadTicket> tryAdmit(String kind) {
+        return tryAdmit(kind, false);
+    }
+
+    /**
+     * 尝试受理一次对话
+     *
+     * @param streaming 是否为流式对话 (只有流式对话的首字延迟计入 p99)
+     * @return 为空表示拒绝，调用方应返回 503 + Retry-After
+     */
+    public Optional<LoadTicket> tryAdmit(String kind, boolean streaming) {
+        if (!overloadConfig.isEnabled()) return Optional.of(LoadTicket.UNLIMITED);
+        int current = inflight.incrementAndGet();
+        LoadLevel level = levelFor(current - 1);
+        transition(level);
+        admittedByLevel[level.ordinal()].increment();
+        if (level == LoadLevel.SHED) {
+            inflight.decrementAndGet();
+            log.debug("🚥 [Overload] 拒绝 {} 请求 (在途 {})", kind, current - 1);
+            return Optional.empty();
+        }
+        return Optional.of(new LoadTicket(this, level, now(), streaming));
+    }
+
+    public int retryAfterSeconds() {
+        return overloadConfig.getRetryAfterSeconds();
+    }
+
+    /**
+     * 受理前在途数为 inflightBefore 时的负载等级：p99 只参与降级，不触发拒绝
+     */
+    LoadLevel levelFor(int inflightBefore) {
+        LoadLevel byLoad = levelFor(pressure(inflightBefore));
+        LoadLevel byLatency = levelFor(latencyPressure());
+        if (byLatency.compareTo(LoadLevel.NO_THINKING) > 0) byLatency = LoadLevel.NO_THINKING;
+        return byLoad.compareTo(byLatency) >= 0 ? byLoad : byLatency;
+    }
+
+    /**
+     * 当前负载压力 (受理前的在途数)
+     */
+    double pressure(int inflightBefore) {
+        refreshSignals();
+        double pressure = (double) inflightBefore / Math.max(1, overloadConfig.getMaxInflight());
+        return Math.max(pressure, cachedQueueFill);
+    }
+
+    /**
+     * 首字延迟 p99 与目标之比，样本不足时为 0
+     */
+    double latencyPressure() {
+        refreshSignals();
+        return cachedP99 < 0 ? 0 : (double) cachedP99 / Math.max(1, overloadConfig.getTargetP99Ms());
+    }
+
+    LoadLevel levelFor(double pressure) {
+        if (pressure >= overloadConfig.getShedAt()) return LoadLevel.SHED;
+        if (pressure >= overloadConfig.getDisableThinkingAt()) return LoadLevel.NO_THINKING;
+        if (pressure >= overloadConfig.getShrinkContextAt()) return LoadLevel.SHRINK_CONTEXT;
+        if (pressure >= overloadConfig.getSkipRerankAt()) return LoadLevel.SKIP_RERANK;
+        return LoadLevel.NORMAL;
+    }
+
+    long now() {
+        return clock.getAsLong();
+    }
+
+    void recordLatency(long millis) {
+        firstTokenLatency.record(millis);
+    }
+
+    void onRelease() {
+        inflight.decrementAndGet();
+    }
+
+    /**
+     * 当前负载与各等级受理 / 拒绝次数
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        int current = inflight.get();
+        stats.put("enabled", overloadConfig.isEnabled());
+        stats.put("inflight", current);
+        stats.put("maxInflight", overloadConfig.getMaxInflight());
+        stats.put("pressure", Math.round(pressure(current) * 100) / 100.0);
+        stats.put("latencyPressure", Math.round(latencyPressure() * 100) / 100.0);
+        stats.put("level", lastLevel.get().label());
+        stats.put("interactiveQueueFill", Math.round(cachedQueueFill * 100) / 100.0);
+        stats.put("firstTokenP99Ms", cachedP99);
+        Map<String, Long> byLevel = new LinkedHashMap<>();
+        for (LoadLevel level : LoadLevel.values()) {
+            byLevel.put(level.label(), admittedByLevel[level.ordinal()].sum());
+        }
+        stats.put("requestsByLevel", byLevel);
+        return stats;
+    }
+
+    private void refreshSignals() {
+        long now = clock.getAsLong();
+        if (now - signalCheckedAt < SIGNAL_CACHE_MILLIS) return;
+        cachedQueueFill = workloadGovernor.interactiveQueueFill();
+        cachedP99 = firstTokenLatency.percentile(0.99, overloadConfig.getLatencyWindowMs(),
+                overloadConfig.getMinLatencySamples());
+        signalCheckedAt = now;
+    }
+
+    private void transition(LoadLevel level) {
+        LoadLevel previous = lastLevel.getAndSet(level);
+        if (previous == level) return;
+        if (level.compareTo(previous) > 0) {
+            log.warn("🚥 [Overload] 负载等级 {} -> {} (在途 {}, 队列占比 {}, 首字 p99 {}ms)", previous.label(), level.label(),
+                    inflight.get(), String.format("%.2f", cachedQueueFill), cachedP99);
+        } else {
+            log.info("🚥 [Overload] 负载等级 {} -> {}", previous.label(), level.label());
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.agent.rag.ragbackend.service.pipeline;
+
+import com.agent.rag.ragbackend.config.OverloadConfig;
+import com.agent.rag.ragbackend.config.RetrievalConfig;
+import com.agent.rag.ragbackend.dto.request.LlmCompletionRequest;
+import com.agent.rag.ragbackend.service.index.VaultIndexRegistry;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * 关键词检索步骤：BM25 Top-K
+ *
+ * <p>补充向量检索对专有名词、代码标识符等精确词的召回。
+ * BM25 得分与相似度不在同一量纲，不参与 min-score 过滤。</p>
+ */
+@Component
+@RequiredArgsConstructor
+public class KeywordSearchStep implements PreGenerationStep {
+
+    private final VaultIndexRegistry vaultIndexRegistry;
+    private final RetrievalConfig retrievalConfig;
+    private final OverloadConfig overloadConfig;
+
+    @Override
+    public String name() {
+        return "keyword-search";
+    }
+
+    @Override
+    public boolean isEnabled(LlmCompletionRequest request) {
+        return retrievalConfig.getKeywordTopK() > 0
+                && vaultIndexRegistry.find(request.getVaultId()).filter(vault -> !vault.isEmpty()).isPresent()
+                && request.getPrompt() != null && !request.getPrompt().isBlank();
+    }
+
+    @Override
+    public Consumer<PromptContext> execute(LlmCompletionRequest request) {
+        List<PromptContext.Snippet> snippets = vaultIndexRegistry.find(request.getVaultId()).orElseThrow()
+                .searchKeyword(request.getPrompt(), overloadConfig.shrink(request.getLoadLevel(), retrievalConfig.getKeywordTopK()))
+                .stream()
+                .map(hit -> new PromptContext.Snippet(hit.chunk().path(), hit.chunk().text(), hit.score()))
+                .toList();
+        return ctx -> ctx.addSnippets(snippets);
+    }
+}
@@ -0,0 +1,146 @@
+package com.agent.rag.ragbackend.service.pipeline;
+
+import com.agent.rag.ragbackend.config.OverloadConfig;
+import com.agent.rag.ragbackend.config.PipelineConfig;
+import com.agent.rag.ragbackend.dto.request.LlmCompletionRequest;
+import com.agent.rag.ragbackend.service.overload.LoadLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+
+/**
+ * 生成前置流水线
+ *
+ * <p>在向大模型发出第一个字节之前，把问题向量化、向量检索、关键词检索等步骤
+ * 并发执行，而不是一步接一步串行：</p>
+ * <ul>
+ *     <li>每个步骤都是独立的 FutureTask，单独计时、单独超时；超时即中断执行线程，不占着线程池；</li>
+ *     <li>整个阶段有统一截止时间，总耗时取决于最慢的步骤而不是所有步骤之和；</li>
+ *     <li>超时或失败的步骤直接降级跳过 (例如没有关键词命中也照常发请求)。</li>
+ * </ul>
+ * <p>对话历史不是可降级的步骤：它在提交检索步骤之前同步截取，线程池繁忙或超时都不会丢掉历史。</p>
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class PreGenerationPipeline {
+
+    private final List<PreGenerationStep> steps;
+    /**
+     * 最多保留的历史消息条数
+     */
+    private static final int MAX_HISTORY = 20;
+
+    private final PipelineConfig pipelineConfig;
+    private final OverloadConfig overloadConfig;
+
+    @Qualifier("pipelineExecutor")
+    private final Executor pipelineExecutor;
+
+    /**
+     * 单个步骤的执行结果
+     */
+    private record StepOutcome(Consumer<PromptContext> contribution, long elapsedMillis) {
+    }
+
+    /**
+     * 并发执行所有启用的步骤，在截止时间内汇总结果
+     */
+    public PromptContext prepare(LlmCompletionRequest request) {
+        long startNanos = System.nanoTime();
+        long deadlineNanos = startNanos + TimeUnit.MILLISECONDS.toNanos(pipelineConfig.getDeadlineMs());
+
+        // 1. 同时启动所有步骤
+        List<PreGenerationStep> active = new ArrayList<>();
+        // 用 FutureTask 而不是 CompletableFuture：只有前者的 cancel(true) 会中断正在执行的线程
+        List<FutureTask<StepOutcome>> futures = new ArrayList<>();
+        PromptContext context = new PromptContext();
+        if (request.getLoadLevel() != LoadLevel.NORMAL) {
+            // 过载降级：各步骤按负载等级缩减，这里只记录下来便于追踪
+            context.getDegradedSteps().put("overload", request.getLoadLevel().label());
+        }
+        context.addHistory(recentHistory(request));
+        for (PreGenerationStep step : steps) {
+            if (!step.isEnabled(request)) continue;
+            try {
+                FutureTask<StepOutcome> task = new FutureTask<>(() -> runStep(step, request));
+                pipelineExecutor.execute(task);
+                futures.add(task);
+                active.add(step);
+            } catch (Exception e) {
+                // 线程池拒绝：该步骤直接降级
+                context.getDegradedSteps().put(step.name(), "线程池繁忙");
+            }
+        }
+
+        // 2. 依次等待：所有步骤已在并发执行，这里的等待总时长 = 最慢步骤的耗时 (且不超过截止时间)
+        for (int i = 0; i < active.size(); i++) {
+            PreGenerationStep step = active.get(i);
+            FutureTask<StepOutcome> future = futures.get(i);
+            long stepDeadline = Math.min(deadlineNanos,
+                    startNanos + TimeUnit.MILLISECONDS.toNanos(pipelineConfig.timeoutFor(step.name())));
+            try {
+                StepOutcome outcome = future.get(Math.max(0, stepDeadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                context.getStepMillis().put(step.name(), outcome.elapsedMillis());
+                if (outcome.contribution() != null) {
+                    outcome.contribution().accept(context);
+                }
+            } catch (TimeoutException e) {
+                future.cancel(true);
+                context.getDegradedSteps().put(step.name(), "超时");
+            } catch (ExecutionException e) {
+                log.warn("⚠️ [PreGen] 步骤 {} 执行失败，降级跳过: {}", step.name(), e.getCause().getMessage());
+                context.getDegradedSteps().put(step.name(), "异常");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                context.getDegradedSteps().put(step.name(), "中断");
+            } catch (Exception e) {
+                log.warn("⚠️ [PreGen] 步骤 {} 结果应用失败，降级跳过: {}", step.name(), e.getMessage());
+                context.getDegradedSteps().put(step.name(), "异常");
+            }
+        }
+
+        context.rankSnippets();
+
+        long totalMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        if (context.getDegradedSteps().isEmpty()) {
+            log.info("🧩 [PreGen] 前置阶段耗时 {}ms, 步骤: {}", totalMillis, context.getStepMillis());
+        } else {
+            log.warn("🧩 [PreGen] 前置阶段耗时 {}ms, 步骤: {}, 降级: {}",
+                    totalMillis, context.getStepMillis(), context.getDegradedSteps());
+        }
+        return context;
+    }
+
+    /**
+     * 截取最近的若干条历史 (目前历史由前端随请求携带)，过载时按负载等级缩减保留条数
+     */
+    private List<LlmCompletionRequest.LlmMessage> recentHistory(LlmCompletionRequest request) {
+        List<LlmCompletionRequest.LlmMessage> history = request.getContext();
+        if (history == null || history.isEmpty()) return List.of();
+        int keep = overloadConfig.shrink(request.getLoadLevel(), MAX_HISTORY);
+        return List.copyOf(history.subList(Math.max(0, history.size() - keep), history.size()));
+    }
+
+    private StepOutcome runStep(PreGenerationStep step, LlmCompletionRequest request) {
+        long start = System.nanoTime();
+        try {
+            Consumer<PromptContext> contribution = step.execute(request);
+            return new StepOutcome(contribution, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException(e.getMessage(), e);
+        }
+    }
+}
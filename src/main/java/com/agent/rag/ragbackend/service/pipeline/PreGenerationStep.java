@@ -0,0 +1,36 @@
+package com.agent.rag.ragbackend.service.pipeline;
+
+import com.agent.rag.ragbackend.dto.request.LlmCompletionRequest;
+
+import java.util.function.Consumer;
+
+/**
+ * 生成前置步骤 (问题向量化、向量检索、关键词检索 ...)
+ *
+ * <p>所有步骤由 {@link PreGenerationPipeline} 并发执行，各自计时、各自超时。
+ * 超时或异常的步骤会被跳过 (降级)，不影响其他步骤和最终请求。</p>
+ *
+ * <p>实现类注册为 Spring Bean 即可自动加入流水线。</p>
+ */
+public interface PreGenerationStep {
+
+    /**
+     * 步骤名称 (用于日志和 rag.pipeline.step-timeouts 配置)
+     */
+    String name();
+
+    /**
+     * 当前请求是否需要执行该步骤
+     */
+    default boolean isEnabled(LlmCompletionRequest request) {
+        return true;
+    }
+
+    /**
+     * 在流水线线程池中执行耗时操作
+     *
+     * <p>返回值是对 {@link PromptContext} 的修改动作，会在调用方线程中统一应用，
+     * 因此步骤之间不需要考虑并发写。</p>
+     */
+    Consumer<PromptContext> execute(LlmCompletionRequest request) throws Exception;
+}
@@ -0,0 +1,92 @@
+package com.agent.rag.ragbackend.service.pipeline;
+
+import com.agent.rag.ragbackend.dto.request.LlmCompletionRequest;
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 生成前置阶段的产出：拼装 Prompt 所需的全部上下文
+ */
+@Getter
+public class PromptContext {
+
+    /**
+     * RRF 平滑常数：越大，名次靠后的结果与靠前的差距越小 (60 为常用取值)
+     */
+    private static final int RRF_K = 60;
+
+    /**
+     * 上下文历史消息
+     */
+    private final List<LlmCompletionRequest.LlmMessage> history = new ArrayList<>();
+
+    /**
+     * 检索到的知识片段 (按相关度从高到低)
+     */
+    private final List<Snippet> snippets = new ArrayList<>();
+
+    /**
+     * 各步骤耗时 (毫秒)
+     */
+    private final Map<String, Long> stepMillis = new LinkedHashMap<>();
+
+    /**
+     * 被降级跳过的步骤及原因
+     */
+    private final Map<String, String> degradedSteps = new LinkedHashMap<>();
+
+    public void addHistory(List<LlmCompletionRequest.LlmMessage> messages) {
+        history.addAll(messages);
+    }
+
+    /**
+     * 追加一路检索结果 (须已按该路的相关度从高到低排列)
+     *
+     * <p>向量检索给的是余弦相似度、关键词检索给的是 BM25 分，量纲不同不能直接比大小，
+     * 这里按名次做倒数排名融合 (RRF)：每一路贡献 1 / (k + 名次)，同一切片被多路命中时累加。
+     * 所有步骤应用完后调用 {@link #rankSnippets()} 统一排序。</p>
+     */
+    public void addSnippets(List<Snippet> ranked) {
+        for (int rank = 0; rank < ranked.size(); rank++) {
+            Snippet snippet = ranked.get(rank);
+            double fused = 1.0 / (RRF_K + rank + 1);
+            int existing = indexOf(snippet);
+            if (existing < 0) {
+                snippets.add(new Snippet(snippet.source(), snippet.text(), fused));
+            } else {
+                snippets.set(existing, new Snippet(snippet.source(), snippet.text(),
+                        snippets.get(existing).score() + fused));
+            }
+        }
+    }
+
+    /**
+     * 按融合得分从高到低排序 (得分相同的保持先到先得)
+     */
+    public void rankSnippets() {
+        snippets.sort(Comparator.comparingDouble(Snippet::score).reversed());
+    }
+
+    private int indexOf(Snippet snippet) {
+        for (int i = 0; i < snippets.size(); i++) {
+            Snippet s = snippets.get(i);
+            if (s.source().equals(snippet.source()) && s.text().equals(snippet.text())) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * 知识片段
+     *
+     * @param source 来源 (笔记路径)
+     * @param text   片段正文
+     * @param score  相关度得分 (加入上下文后为 RRF 融合得分)
+     */
+    public record Snippet(String source, String text, double score) {
+    }
+}
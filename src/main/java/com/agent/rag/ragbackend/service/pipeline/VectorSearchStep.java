@@ -0,0 +1,73 @@
+package com.agent.rag.ragbackend.service.pipeline;
+
+import com.agent.rag.ragbackend.config.OverloadConfig;
+import com.agent.rag.ragbackend.config.RetrievalConfig;
+import com.agent.rag.ragbackend.dto.request.LlmCompletionRequest;
+import com.agent.rag.ragbackend.service.embedding.EmbeddingService;
+import com.agent.rag.ragbackend.service.embedding.EmbeddingSpace;
+import com.agent.rag.ragbackend.service.index.MmrReranker;
+import com.agent.rag.ragbackend.service.index.ScoredChunk;
+import com.agent.rag.ragbackend.service.index.VaultIndex;
+import com.agent.rag.ragbackend.service.index.VaultIndexRegistry;
+import com.agent.rag.ragbackend.service.overload.LoadLevel;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * 向量检索步骤：问题向量化 + 向量索引候选 + MMR 重排
+ *
+ * <p>问题向量使用仓库索引记录的向量空间 (入库时的厂商/模型) 生成，未知时退回 rag.embedding 的默认值。
+ * 先多取若干倍候选，再用 {@link MmrReranker} 去掉近似重复的片段，选出 Top-K；
+ * 过载时跳过重排直接取 Top-K，并按负载等级缩减 K。</p>
+ */
+@Component
+@RequiredArgsConstructor
+public class VectorSearchStep implements PreGenerationStep {
+
+    private final EmbeddingService embeddingService;
+    private final VaultIndexRegistry vaultIndexRegistry;
+    private final RetrievalConfig retrievalConfig;
+    private final OverloadConfig overloadConfig;
+
+    @Override
+    public String name() {
+        return "vector-search";
+    }
+
+    @Override
+    public boolean isEnabled(LlmCompletionRequest request) {
+        return vaultIndexRegistry.find(request.getVaultId()).filter(vault -> !vault.isEmpty()).isPresent()
+                && request.getPrompt() != null && !request.getPrompt().isBlank();
+    }
+
+    @Override
+    public Consumer<PromptContext> execute(LlmCompletionRequest request) {
+        VaultIndex vault = vaultIndexRegistry.find(request.getVaultId()).orElseThrow();
+        EmbeddingSpace space = vault.getEmbeddingSpace() != null
+                ? vault.getEmbeddingSpace()
+                : embeddingService.resolveSpace(null, null);
+        float[] query = embeddingService.embedOne(request.getPrompt(), space.provider(), space.model(), null);
+        LoadLevel level = request.getLoadLevel();
+        int topK = overloadConfig.shrink(level, retrievalConfig.getTopK());
+        int candidateFactor = level.skipRerank() ? 1 : Math.max(1, retrievalConfig.getMmrCandidateFactor());
+        List<ScoredChunk> candidates = vault.searchVector(query, topK * candidateFactor)
+                .stream()
+                .filter(hit -> hit.score() >= retrievalConfig.getMinScore())
+                .toList();
+        List<ScoredChunk> selected = level.skipRerank()
+                ? candidates
+                : MmrReranker.rerank(candidates, topK, retrievalConfig.getMmrLambda(), retrievalConfig.getDuplicateThreshold());
+        List<PromptContext.Snippet> snippets = selected
+                .stream()
+                .map(VectorSearchStep::toSnippet)
+                .toList();
+        return ctx -> ctx.addSnippets(snippets);
+    }
+
+    private static PromptContext.Snippet toSnippet(ScoredChunk hit) {
+        return new PromptContext.Snippet(hit.chunk().path(), hit.chunk().text(), hit.score());
+    }
+}
@@ -0,0 +1,56 @@
+package com.agent.rag.ragbackend.service.scheduling;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
+
+/**
+ * 最近若干次耗时的滑动窗口
+ *
+ * <p>定长环形数组记录耗时和完成时间，写入无锁；计算分位数时才拷贝窗口内的样本排序。</p>
+ */
+public class LatencyWindow {
+
+    private final int capacity;
+    private final AtomicLongArray latencyMillis;
+    private final AtomicLongArray endMillis;
+    private final AtomicLong cursor = new AtomicLong();
+    private final LongSupplier clock;
+
+    public LatencyWindow(int capacity) {
+        this(capacity, System::currentTimeMillis);
+    }
+
+    /**
+     * @param clock 当前时间（毫秒），测试中可手动推进
+     */
+    public LatencyWindow(int capacity, LongSupplier clock) {
+        this.capacity = capacity;
+        this.clock = clock;
+        this.latencyMillis = new AtomicLongArray(capacity);
+        this.endMillis = new AtomicLongArray(capacity);
+    }
+
+    public void record(long millis) {
+        int index = (int) (cursor.getAndIncrement() % capacity);
+        latencyMillis.set(index, millis);
+        endMillis.set(index, clock.getAsLong());
+    }
+
+    /**
+     * 窗口内耗时的分位数（毫秒），样本数不足 minSamples 时返回 -1
+     */
+    public long percentile(double percentile, long windowMs, int minSamples) {
+        long since = clock.getAsLong() - windowMs;
+        long[] samples = new long[capacity];
+        int count = 0;
+        for (int i = 0; i < capacity; i++) {
+            long end = endMillis.get(i);
+            if (end != 0 && end >= since) samples[count++] = latencyMillis.get(i);
+        }
+        if (count == 0 || count < minSamples) return -1;
+        Arrays.sort(samples, 0, count);
+        return samples[Math.min(count - 1, (int) Math.ceil(percentile * count) - 1)];
+    }
+}
@@ -0,0 +1,140 @@
+package com.agent.rag.ragbackend.service.scheduling;
+
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 线程池的实时指标 (排队数、活跃线程数等)，屏蔽不同线程池实现的差异
+ */
+interface PoolGauges {
+
+    /**
+     * 排队等待执行的任务数
+     */
+    int queued();
+
+    /**
+     * 队列剩余容量，无界队列返回 -1
+     */
+    int remainingCapacity();
+
+    int active();
+
+    int poolSize();
+
+    int maxPoolSize();
+
+    /**
+     * 普通线程池 (尚未 initialize 时返回 null，各项指标为 0)
+     */
+    static PoolGauges of(Supplier<? extends ThreadPoolExecutor> executor) {
+        return new PoolGauges() {
+            @Override
+            public int queued() {
+                ThreadPoolExecutor pool = executor.get();
+                return pool == null ? 0 : pool.getQueue().size();
+            }
+
+            @Override
+            public int remainingCapacity() {
+                ThreadPoolExecutor pool = executor.get();
+                return pool == null ? 0 : pool.getQueue().remainingCapacity();
+            }
+
+            @Override
+            public int active() {
+                ThreadPoolExecutor pool = executor.get();
+                return pool == null ? 0 : pool.getActiveCount();
+            }
+
+            @Override
+            public int poolSize() {
+                ThreadPoolExecutor pool = executor.get();
+                return pool == null ? 0 : pool.getPoolSize();
+            }
+
+            @Override
+            public int maxPoolSize() {
+                ThreadPoolExecutor pool = executor.get();
+                return pool == null ? 0 : pool.getMaximumPoolSize();
+            }
+        };
+    }
+
+    /**
+     * 调度线程池：队列里大多是还没到时间的定时任务，只有已到期、还没开始执行的才算排队
+     */
+    static PoolGauges ofScheduler(Supplier<ScheduledThreadPoolExecutor> scheduler) {
+        PoolGauges base = of(scheduler);
+        return new PoolGauges() {
+            @Override
+            public int queued() {
+                ScheduledThreadPoolExecutor pool = scheduler.get();
+                if (pool == null) return 0;
+                int due = 0;
+                for (Runnable task : pool.getQueue()) {
+                    if (task instanceof Delayed delayed && delayed.getDelay(TimeUnit.NANOSECONDS) <= 0) {
+                        due++;
+                    }
+                }
+                return due;
+            }
+
+            @Override
+            public int remainingCapacity() {
+                return -1;
+            }
+
+            @Override
+            public int active() {
+                return base.active();
+            }
+
+            @Override
+            public int poolSize() {
+                return base.poolSize();
+            }
+
+            @Override
+            public int maxPoolSize() {
+                return base.maxPoolSize();
+            }
+        };
+    }
+
+    /**
+     * fork-join 线程池 (外部提交 + 工作队列中的子任务都算排队)
+     */
+    static PoolGauges of(ForkJoinPool pool) {
+        return new PoolGauges() {
+            @Override
+            public int queued() {
+                return (int) Math.min(Integer.MAX_VALUE, pool.getQueuedSubmissionCount() + pool.getQueuedTaskCount());
+            }
+
+            @Override
+            public int remainingCapacity() {
+                return -1;
+            }
+
+            @Override
+            public int active() {
+                return pool.getActiveThreadCount();
+            }
+
+            @Override
+            public int poolSize() {
+                return pool.getPoolSize();
+            }
+
+            @Override
+            public int maxPoolSize() {
+                return pool.getParallelism();
+            }
+        };
+    }
+}
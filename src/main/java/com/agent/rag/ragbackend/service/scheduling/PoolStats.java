@@ -0,0 +1,122 @@
+package com.agent.rag.ragbackend.service.scheduling;
+
+import org.springframework.core.task.TaskDecorator;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * 一个线程池的运行统计
+ *
+ * <p>作为 {@link TaskDecorator} 包装提交的任务，记录排队时间和执行时间；
+ * 最近若干个任务的总延迟 (排队 + 执行) 记录在 {@link LatencyWindow} 里，用于计算窗口内的 p95。</p>
+ */
+public class PoolStats implements TaskDecorator {
+
+    private static final int RECENT = 256;
+
+    private final String name;
+    private final WorkloadClass workloadClass;
+    private final PoolGauges gauges;
+
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final LongAdder runNanos = new LongAdder();
+
+    private final LatencyWindow recent;
+
+    /**
+     * @param clock 当前时间（毫秒），决定延迟样本的统计窗口
+     */
+    PoolStats(String name, WorkloadClass workloadClass, PoolGauges gauges, LongSupplier clock) {
+        this.name = name;
+        this.workloadClass = workloadClass;
+        this.gauges = gauges;
+        this.recent = new LatencyWindow(RECENT, clock);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public WorkloadClass getWorkloadClass() {
+        return workloadClass;
+    }
+
+    @Override
+    public Runnable decorate(Runnable task) {
+        long submittedAt = System.nanoTime();
+        submitted.increment();
+        return () -> {
+            long startedAt = System.nanoTime();
+            try {
+                task.run();
+            } finally {
+                long endedAt = System.nanoTime();
+                waitNanos.add(startedAt - submittedAt);
+                runNanos.add(endedAt - startedAt);
+                completed.increment();
+                recent.record(TimeUnit.NANOSECONDS.toMillis(endedAt - submittedAt));
+            }
+        };
+    }
+
+    /**
+     * 包装拒绝策略以统计拒绝次数
+     */
+    RejectedExecutionHandler countingRejections(RejectedExecutionHandler delegate) {
+        return (task, pool) -> {
+            rejected.increment();
+            delegate.rejectedExecution(task, pool);
+        };
+    }
+
+    public int queued() {
+        return gauges.queued();
+    }
+
+    /**
+     * 队列占用比例 [0, 1]，无界队列为 0
+     */
+    public double queueFill() {
+        int remaining = gauges.remainingCapacity();
+        if (remaining < 0) return 0;
+        int queued = gauges.queued();
+        int capacity = queued + remaining;
+        return capacity <= 0 ? 0 : (double) queued / capacity;
+    }
+
+    public int active() {
+        return gauges.active();
+    }
+
+    /**
+     * 窗口内任务总延迟的分位数（毫秒），没有样本返回 -1
+     */
+    public long latencyPercentile(double percentile, long windowMs) {
+        return recent.percentile(percentile, windowMs, 1);
+    }
+
+    Map<String, Object> view(long windowMs) {
+        long done = completed.sum();
+        Map<String, Object> view = new LinkedHashMap<>();
+        view.put("class", workloadClass);
+        view.put("active", active());
+        view.put("poolSize", gauges.poolSize());
+        view.put("maxPoolSize", gauges.maxPoolSize());
+        view.put("queued", queued());
+        view.put("submitted", submitted.sum());
+        view.put("completed", done);
+        view.put("rejected", rejected.sum());
+        view.put("avgWaitMs", done == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(waitNanos.sum() / done));
+        view.put("avgRunMs", done == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(runNanos.sum() / done));
+        view.put("p95LatencyMs", latencyPercentile(0.95, windowMs));
+        return view;
+    }
+}
@@ -0,0 +1,17 @@
+package com.agent.rag.ragbackend.service.scheduling;
+
+/**
+ * 线程池负载类别
+ */
+public enum WorkloadClass {
+
+    /**
+     * 交互任务：用户在等结果 (对话、检索)
+     */
+    INTERACTIVE,
+
+    /**
+     * 后台任务：入库向量化、合并、快照、召回校准、异步入库等，对话延迟有风险时让路
+     */
+    BACKGROUND
+}
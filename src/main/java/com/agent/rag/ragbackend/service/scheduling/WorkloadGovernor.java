@@ -0,0 +1,180 @@
+package com.agent.rag.ragbackend.service.scheduling;
+
+import com.agent.rag.ragbackend.config.SchedulingConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * 负载调度：对话优先，后台任务让路
+ *
+ * <ul>
+ *     <li>每类负载使用独立的有界线程池 (见 ThreadPoolConfig)，全部在这里登记并统计排队 / 执行耗时；</li>
+ *     <li>交互线程池有任务排队，或有任务在执行且窗口内 p95 超过 interactive-slo-ms 时，认为对话延迟有风险；</li>
+ *     <li>后台任务在每个工作单元 (一个向量化批次、一个分片的合并 / 校准、一次快照) 开始前调用
+ *     {@link #yieldToInteractive()}，有风险时等待，单次最多等 background-max-yield-ms，保证后台任务不会饿死。</li>
+ * </ul>
+ */
+@Slf4j
+@Component
+public class WorkloadGovernor {
+
+    /**
+     * 风险判定的缓存时间，避免后台任务频繁排序延迟样本
+     */
+    private static final long RISK_CACHE_MILLIS = 100;
+
+    private final SchedulingConfig schedulingConfig;
+    private final LongSupplier clock;
+    private final Sleeper sleeper;
+
+    private final List<PoolStats> pools = new CopyOnWriteArrayList<>();
+
+    private final LongAdder yields = new LongAdder();
+    private final LongAdder yieldedMillis = new LongAdder();
+
+    private volatile long riskCheckedAt;
+    private volatile boolean riskCached;
+
+    /**
+     * 让路时的等待方式 (测试中替换为推进时钟)
+     */
+    @FunctionalInterface
+    interface Sleeper {
+        void sleep(long millis) throws InterruptedException;
+    }
+
+    @Autowired
+    public WorkloadGovernor(SchedulingConfig schedulingConfig) {
+        this(schedulingConfig, System::currentTimeMillis, Thread::sleep);
+    }
+
+    /**
+     * @param clock   当前时间（毫秒），用于风险缓存、延迟窗口和让路计时
+     * @param sleeper 让路时每次轮询的等待
+     */
+    WorkloadGovernor(SchedulingConfig schedulingConfig, LongSupplier clock, Sleeper sleeper) {
+        this.schedulingConfig = schedulingConfig;
+        this.clock = clock;
+        this.sleeper = sleeper;
+    }
+
+    /**
+     * 登记线程池：设置统计用的任务装饰器和拒绝策略 (需在 initialize 之前调用)
+     */
+    public PoolStats register(String name, WorkloadClass workloadClass, ThreadPoolTaskExecutor executor,
+                              RejectedExecutionHandler rejection) {
+        PoolStats stats = new PoolStats(name, workloadClass,
+                PoolGauges.of(() -> initialized(executor::getThreadPoolExecutor)), clock);
+        executor.setTaskDecorator(stats);
+        executor.setRejectedExecutionHandler(stats.countingRejections(rejection));
+        pools.add(stats);
+        return stats;
+    }
+
+    /**
+     * 登记调度线程池 (只统计活跃线程数和已到期未执行的任务数)
+     */
+    public PoolStats register(String name, WorkloadClass workloadClass, ThreadPoolTaskScheduler scheduler) {
+        PoolStats stats = new PoolStats(name, workloadClass,
+                PoolGauges.ofScheduler(() -> initialized(scheduler::getScheduledThreadPoolExecutor)), clock);
+        pools.add(stats);
+        return stats;
+    }
+
+    /**
+     * 登记 fork-join 线程池 (只统计活跃线程数和排队任务数)
+     */
+    public PoolStats register(String name, WorkloadClass workloadClass, ForkJoinPool pool) {
+        PoolStats stats = new PoolStats(name, workloadClass, PoolGauges.of(pool), clock);
+        pools.add(stats);
+        return stats;
+    }
+
+    /**
+     * 对话延迟是否有风险
+     */
+    public boolean isInteractiveAtRisk() {
+        long now = clock.getAsLong();
+        if (now - riskCheckedAt < RISK_CACHE_MILLIS) return riskCached;
+        boolean risk = false;
+        for (PoolStats pool : pools) {
+            if (pool.getWorkloadClass() != WorkloadClass.INTERACTIVE) continue;
+            if (pool.queued() > 0
+                    || (pool.active() > 0 && pool.latencyPercentile(0.95, schedulingConfig.getSloWindowMs())
+                    > schedulingConfig.getInteractiveSloMs())) {
+                risk = true;
+                break;
+            }
+        }
+        riskCached = risk;
+        riskCheckedAt = now;
+        return risk;
+    }
+
+    /**
+     * 交互线程池中最满的队列占用比例 [0, 1]
+     */
+    public double interactiveQueueFill() {
+        double fill = 0;
+        for (PoolStats pool : pools) {
+            if (pool.getWorkloadClass() == WorkloadClass.INTERACTIVE) fill = Math.max(fill, pool.queueFill());
+        }
+        return fill;
+    }
+
+    /**
+     * 后台任务让路：对话延迟有风险时等待，最多等 background-max-yield-ms
+     */
+    public void yieldToInteractive() {
+        if (!isInteractiveAtRisk()) return;
+        long start = clock.getAsLong();
+        long deadline = start + schedulingConfig.getBackgroundMaxYieldMs();
+        try {
+            while (isInteractiveAtRisk() && clock.getAsLong() < deadline) {
+                sleeper.sleep(Math.max(1, schedulingConfig.getYieldPollMs()));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        long waited = Math.max(0, clock.getAsLong() - start);
+        yields.increment();
+        yieldedMillis.add(waited);
+        log.debug("🚦 [Scheduling] {} 为对话让路 {}ms", Thread.currentThread().getName(), waited);
+    }
+
+    /**
+     * 各线程池统计 + 让路情况
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("interactiveAtRisk", isInteractiveAtRisk());
+        stats.put("backgroundYields", yields.sum());
+        stats.put("backgroundYieldedMs", yieldedMillis.sum());
+        Map<String, Object> poolViews = new LinkedHashMap<>();
+        pools.forEach(pool -> poolViews.put(pool.getName(), pool.view(schedulingConfig.getSloWindowMs())));
+        stats.put("pools", poolViews);
+        return stats;
+    }
+
+    private static <T> T initialized(Supplier<T> pool) {
+        try {
+            return pool.get();
+        } catch (IllegalStateException e) {
+            // 尚未 initialize
+            return null;
+        }
+    }
+}
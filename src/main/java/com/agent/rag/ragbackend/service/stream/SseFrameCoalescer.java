@@ -0,0 +1,277 @@
+package com.agent.rag.ragbackend.service.stream;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SSE 帧合并器 (自适应)
+ *
+ * <p>上游每个 delta 往往只有一个 token，逐个 emitter.send 意味着每个 token 一次 flush + 系统调用。
+ * 这里把连续的增量合并成一个 SSE 事件再发送：</p>
+ * <ul>
+ *     <li>整条流的第一个 token 立即发送，保证首字延迟不变；</li>
+ *     <li>距离上次发送已超过时间窗口 (上游很慢) 时立即发送，不额外引入延迟；</li>
+ *     <li>上游很快时，缓冲到时间窗口结束或字节数达到阈值再发送；</li>
+ *     <li>thinking / answer 通道切换时先把另一通道的缓冲发出去，保证两条通道各自有序、互不混合。</li>
+ * </ul>
+ *
+ * <p>一个实例对应一条流；append 在 Reactor 线程调用，窗口到期在调度线程触发，所以状态变更都加锁。
+ * 发送可能因前端慢而阻塞，因此一律在锁外进行：到期的帧先进入待发队列，由同一时刻唯一的“发送者”按序发出。
+ * 调度线程是所有流共享的，窗口到期时只把帧放进队列并交给 sendExecutor 发送，自己从不调用 send。</p>
+ *
+ * <p>{@link #close(Runnable)} 同样不等待：剩余缓冲入队后交给 sendExecutor，
+ * 最后一帧发出后由发送线程执行结束回调 (发送 done / error 事件)，上游的事件循环线程不会被慢连接拖住。</p>
+ */
+public class SseFrameCoalescer {
+
+    /**
+     * 帧发送回调
+     */
+    public interface FrameSender {
+        /**
+         * @param eventName SSE 事件名 (thinking / answer)
+         * @param content   合并后的文本
+         */
+        void send(String eventName, String content);
+    }
+
+    /**
+     * 待发送的一帧
+     */
+    private record Frame(String eventName, String content) {
+    }
+
+    private final FrameSender sender;
+    private final ScheduledExecutorService scheduler;
+    private final Executor sendExecutor;
+    private final long windowNanos;
+    private final int maxBytes;
+
+    /**
+     * 当前缓冲所属的通道 (缓冲为空时为 null)
+     */
+    private String pendingEvent;
+    private final StringBuilder pending = new StringBuilder();
+    /**
+     * 缓冲内容的 UTF-8 字节数估算
+     */
+    private int pendingBytes = 0;
+
+    private boolean firstFrameSent = false;
+    private long lastFlushNanos = 0L;
+    private ScheduledFuture<?> scheduledFlush;
+    private boolean closed = false;
+    /**
+     * 所有帧发出后执行的结束回调 (close 时设置，执行一次后清空)
+     */
+    private Runnable onClosed;
+
+    /**
+     * 已到期、等待发送的帧 (按到期顺序)
+     */
+    private final ArrayDeque<Frame> outbound = new ArrayDeque<>();
+    /**
+     * 是否有线程正在发送 outbound 中的帧
+     */
+    private boolean draining = false;
+
+    private long deltaCount = 0;
+    private long frameCount = 0;
+
+    /**
+     * @param sender    实际发送帧的回调
+     * @param scheduler    用于窗口到期后补发的调度器 (只做入队，不发送)
+     * @param sendExecutor 窗口到期 / close 后执行发送的线程池；close 时被拒绝则在调用线程发送
+     * @param windowMs     合并时间窗口 (毫秒)，&lt;= 0 表示不合并
+     * @param maxBytes     缓冲字节阈值，达到即发送
+     */
+    public SseFrameCoalescer(FrameSender sender, ScheduledExecutorService scheduler, Executor sendExecutor,
+                             long windowMs, int maxBytes) {
+        this.sender = sender;
+        this.scheduler = scheduler;
+        this.sendExecutor = sendExecutor;
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, windowMs));
+        this.maxBytes = Math.max(1, maxBytes);
+    }
+
+    /**
+     * 追加一段增量
+     */
+    public void append(String eventName, String text) {
+        synchronized (this) {
+            if (closed || text == null || text.isEmpty()) return;
+            deltaCount++;
+
+            // 通道切换：先把另一通道的缓冲入队，保证顺序
+            if (pendingEvent != null && !pendingEvent.equals(eventName)) {
+                enqueuePending();
+            }
+            pendingEvent = eventName;
+            pending.append(text);
+            pendingBytes += utf8Length(text);
+
+            long now = System.nanoTime();
+            if (!firstFrameSent || windowNanos == 0
+                    || pendingBytes >= maxBytes
+                    || now - lastFlushNanos >= windowNanos) {
+                enqueuePending();
+            } else {
+                scheduleFlush(now);
+            }
+        }
+        drain();
+    }
+
+    /**
+     * 立即发送缓冲内容
+     */
+    public void flush() {
+        synchronized (this) {
+            enqueuePending();
+        }
+        drain();
+    }
+
+    /**
+     * 停止定时任务并把剩余缓冲入队，之后的 append 会被忽略 (不阻塞，重复调用无效)
+     *
+     * @param onClosed 所有帧 (包括其他线程正在发送的) 发出后，在发送线程上执行；发送出错时同样执行
+     */
+    public void close(Runnable onClosed) {
+        synchronized (this) {
+            if (closed) return;
+            enqueuePending();
+            closed = true;
+            this.onClosed = onClosed;
+            // 正在发送的线程发完队列后会执行回调
+            if (draining) return;
+        }
+        try {
+            sendExecutor.execute(this::drain);
+        } catch (RejectedExecutionException e) {
+            drain();
+        }
+    }
+
+    public synchronized long getDeltaCount() {
+        return deltaCount;
+    }
+
+    public synchronized long getFrameCount() {
+        return frameCount;
+    }
+
+    private void scheduleFlush(long now) {
+        if (scheduledFlush != null || scheduler == null) return;
+        long delay = Math.max(0, lastFlushNanos + windowNanos - now);
+        scheduledFlush = scheduler.schedule(this::onTimer, delay, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 窗口到期 (调度线程)：只把缓冲入队，发送交给 sendExecutor，避免慢连接拖住共享的调度线程
+     */
+    private void onTimer() {
+        synchronized (this) {
+            scheduledFlush = null;
+            if (closed || pending.length() == 0) return;
+            enqueuePending();
+            if (draining) return;
+        }
+        try {
+            sendExecutor.execute(this::drain);
+        } catch (RejectedExecutionException e) {
+            // 线程池已满：帧留在队列里，由下一次 append / close 发送
+        }
+    }
+
+    /**
+     * 把缓冲内容作为一帧放入待发队列 (调用方持有锁)
+     */
+    private void enqueuePending() {
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+        if (pending.length() == 0) return;
+
+        outbound.addLast(new Frame(pendingEvent, pending.toString()));
+        pending.setLength(0);
+        pendingBytes = 0;
+        pendingEvent = null;
+
+        firstFrameSent = true;
+        lastFlushNanos = System.nanoTime();
+        frameCount++;
+    }
+
+    /**
+     * 在锁外按序发送待发队列；同一时刻只有一个线程在发送，其余线程入队后直接返回
+     * 已 close 时，发完队列的线程负责执行结束回调
+     */
+    private void drain() {
+        synchronized (this) {
+            if (draining || (outbound.isEmpty() && onClosed == null)) return;
+            draining = true;
+        }
+        Runnable callback;
+        try {
+            while (true) {
+                Frame frame;
+                synchronized (this) {
+                    frame = outbound.pollFirst();
+                    if (frame == null) {
+                        draining = false;
+                        callback = takeOnClosed();
+                        break;
+                    }
+                }
+                sender.send(frame.eventName(), frame.content());
+            }
+        } catch (RuntimeException e) {
+            // 发送回调抛出异常：放弃剩余帧，结束回调照常执行
+            synchronized (this) {
+                outbound.clear();
+                draining = false;
+                callback = takeOnClosed();
+            }
+            if (callback == null) throw e;
+        }
+        if (callback != null) {
+            callback.run();
+        }
+    }
+
+    /**
+     * 取出结束回调 (调用方持有锁)
+     */
+    private Runnable takeOnClosed() {
+        Runnable callback = onClosed;
+        onClosed = null;
+        return callback;
+    }
+
+    /**
+     * 计算 UTF-8 字节数 (不分配数组)
+     */
+    private static int utf8Length(String s) {
+        int len = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                len += 1;
+            } else if (c < 0x800) {
+                len += 2;
+            } else if (Character.isHighSurrogate(c)) {
+                len += 4;
+                i++;
+            } else {
+                len += 3;
+            }
+        }
+        return len;
+    }
+}
@@ -0,0 +1,411 @@
+package com.agent.rag.ragbackend.service.stream;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 一次流式生成的会话 (可续传)
+ *
+ * <p>生成过程和前端连接解耦：上游产生的每个 SSE 事件都带上递增编号
+ * (事件 ID 格式为 {@code streamId:seq})，并写入有界环形缓冲。
+ * 前端断线后生成继续进行，客户端带 Last-Event-ID 重连即可从断点补发，再接着收实时事件。</p>
+ *
+ * <ul>
+ *     <li>断线超过宽限期仍未重连，才取消上游生成；</li>
+ *     <li>缓冲按事件数和字节数双重限制，超出时丢弃最旧的事件；</li>
+ *     <li>总时长从会话创建开始计算，重连不会重置，避免客户端反复重连无限延长生成；</li>
+ *     <li>会话整体的过期与全局内存上限由 {@link StreamSessionRegistry} 负责。</li>
+ * </ul>
+ *
+ * <p>publish 在 Reactor / 对话线程调用，attach 在请求线程调用，所以状态变更统一加锁。
+ * emitter.send 可能被慢连接阻塞，不在锁内执行：待推送的事件先进入 outbox，
+ * 由同一时刻唯一的“发送者”在锁外按编号顺序推送，宽限期计时、淘汰等不会被慢连接拖住。</p>
+ */
+@Slf4j
+public class StreamSession {
+
+    /**
+     * 缓冲中的一条事件
+     *
+     * @param bytes 内存占用估算
+     */
+    private record ReplayEvent(long seq, String name, Object data, int bytes) {
+    }
+
+    private final String streamId;
+    /**
+     * 续传凭证：只在首个 stream 事件里发给创建会话的客户端，知道 streamId 不足以续传
+     */
+    private final String resumeToken;
+    private final StreamSessionRegistry registry;
+
+    private final ArrayDeque<ReplayEvent> ring = new ArrayDeque<>();
+    private final int maxEvents;
+    private final long maxBytes;
+    private long bufferedBytes = 0;
+    private long nextSeq = 0;
+
+    /**
+     * 当前挂载的前端连接 (断线期间为 null)
+     */
+    private SseEmitter emitter;
+
+    /**
+     * 待推送给当前连接的事件 (按编号递增)，连接切换 / 断开时清空
+     */
+    private final ArrayDeque<ReplayEvent> outbox = new ArrayDeque<>();
+    /**
+     * 是否有线程正在锁外推送 outbox
+     */
+    private boolean draining = false;
+
+    /**
+     * 上游订阅句柄 (若会话先于订阅被取消，update 会立即释放新订阅)
+     */
+    private final Disposable.Swap upstream = Disposables.swap();
+
+    /**
+     * 上游是否已结束 (完成 / 出错 / 被取消)，结束后不再接收新事件
+     */
+    private boolean finished = false;
+    private boolean evicted = false;
+
+    private final long createdMillis = System.currentTimeMillis();
+    private long lastActiveMillis = createdMillis;
+    private ScheduledFuture<?> graceTimer;
+
+    StreamSession(String streamId, String resumeToken, StreamSessionRegistry registry, int maxEvents, long maxBytes) {
+        this.streamId = streamId;
+        this.resumeToken = resumeToken;
+        this.registry = registry;
+        this.maxEvents = Math.max(1, maxEvents);
+        this.maxBytes = Math.max(1, maxBytes);
+    }
+
+    public String getStreamId() {
+        return streamId;
+    }
+
+    String getResumeToken() {
+        return resumeToken;
+    }
+
+    /**
+     * 校验续传凭证 (定长比较，不因提前返回泄露前缀)
+     */
+    boolean acceptsResumeToken(String token) {
+        return token != null && MessageDigest.isEqual(
+                resumeToken.getBytes(StandardCharsets.UTF_8), token.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 距离总时长截止还剩多少毫秒，作为新连接 SseEmitter 的超时时间
+     *
+     * @param totalTimeoutMs 总时长上限，&lt;= 0 表示不限制
+     * @return 0 表示不限制；已过截止时间时返回 1，让新连接立即走超时流程
+     */
+    public long remainingMillis(long totalTimeoutMs) {
+        if (totalTimeoutMs <= 0) return 0;
+        return Math.max(1, createdMillis + totalTimeoutMs - System.currentTimeMillis());
+    }
+
+    /**
+     * 是否已超过总时长 (从会话创建起算)
+     */
+    boolean isPastDeadline(long totalTimeoutMs) {
+        return totalTimeoutMs > 0 && System.currentTimeMillis() - createdMillis >= totalTimeoutMs;
+    }
+
+    /**
+     * 绑定上游订阅
+     */
+    public void bindUpstream(Disposable subscription) {
+        upstream.update(subscription);
+    }
+
+    // ==========================================
+    // 生产端：由 LlmService 调用
+    // ==========================================
+
+    /**
+     * 发布一段增量内容 (thinking / answer)
+     */
+    public void publishDelta(String eventName, String content) {
+        publish(eventName, Collections.singletonMap("content", content), estimateBytes(content));
+    }
+
+    /**
+     * 上游正常结束：发布 done 事件并关闭前端连接
+     */
+    public void complete() {
+        synchronized (this) {
+            if (finished) return;
+            publishLocked("done", Collections.singletonMap("streamId", streamId), 64);
+            finishLocked();
+        }
+        drain();
+    }
+
+    /**
+     * 上游异常结束：发布 error 事件并关闭前端连接
+     */
+    public void fail(String errorMessage) {
+        synchronized (this) {
+            if (finished) return;
+            publishLocked("error", Collections.singletonMap("error", errorMessage), estimateBytes(errorMessage));
+            finishLocked();
+        }
+        drain();
+    }
+
+    /**
+     * 取消上游生成 (幂等)
+     */
+    public void cancelUpstream(String reason) {
+        synchronized (this) {
+            if (!finished) {
+                log.info("🛑 [StreamCancel] 取消上游生成 {}: {}", streamId, reason);
+                finished = true;
+                cancelGraceTimer();
+            }
+        }
+        // dispose 可能同步触发 Reactor 回调，放在锁外执行
+        upstream.dispose();
+    }
+
+    void publish(String eventName, Object data, int bytes) {
+        synchronized (this) {
+            publishLocked(eventName, data, bytes);
+        }
+        drain();
+    }
+
+    private void publishLocked(String eventName, Object data, int bytes) {
+        if (finished || evicted) return;
+
+        ReplayEvent event = new ReplayEvent(nextSeq++, eventName, data, bytes);
+        ring.addLast(event);
+        bufferedBytes += bytes;
+        long released = 0;
+        // 超出事件数或字节上限时丢弃最旧事件 (至少保留当前这条)
+        while (ring.size() > 1 && (ring.size() > maxEvents || bufferedBytes > maxBytes)) {
+            ReplayEvent dropped = ring.pollFirst();
+            bufferedBytes -= dropped.bytes();
+            released += dropped.bytes();
+        }
+        registry.adjustBytes(bytes - released);
+        lastActiveMillis = System.currentTimeMillis();
+
+        if (emitter != null) {
+            outbox.addLast(event);
+        }
+    }
+
+    /**
+     * 结束会话；前端连接在 outbox 推送完之后由 drain 关闭
+     */
+    private void finishLocked() {
+        finished = true;
+        cancelGraceTimer();
+        lastActiveMillis = System.currentTimeMillis();
+    }
+
+    /**
+     * 在锁外把 outbox 推送给当前连接；推送完且会话已结束时关闭连接
+     * 同一时刻只有一个线程在推送，其余线程入队后直接返回
+     */
+    private void drain() {
+        synchronized (this) {
+            if (draining) return;
+            draining = true;
+        }
+        while (true) {
+            SseEmitter target;
+            ReplayEvent event;
+            synchronized (this) {
+                target = emitter;
+                event = target != null ? outbox.pollFirst() : null;
+                if (event == null) {
+                    draining = false;
+                    if (target == null || !finished) return;
+                    emitter = null;
+                }
+            }
+            if (event == null) {
+                target.complete();
+                return;
+            }
+            if (!send(target, event)) {
+                detach(target, "推送失败，前端已断开");
+            }
+        }
+    }
+
+    // ==========================================
+    // 消费端：前端连接挂载 / 断开
+    // ==========================================
+
+    /**
+     * 挂载一个前端连接：先补发 lastSeq 之后的缓冲事件，再接收实时事件
+     *
+     * @param lastSeq 客户端已收到的最后一个事件编号，-1 表示从头开始
+     * @return false 表示无法续传 (会话已淘汰，或断点之后的事件已被挤出缓冲)
+     */
+    public boolean attach(SseEmitter newEmitter, long lastSeq, long timeoutMs) {
+        SseEmitter previous;
+        synchronized (this) {
+            if (evicted) return false;
+            ReplayEvent oldest = ring.peekFirst();
+            long firstAvailable = oldest != null ? oldest.seq() : nextSeq;
+            if (lastSeq + 1 < firstAvailable) {
+                log.warn("⚠️ [StreamResume] {} 续传位置 {} 已被挤出缓冲 (最早 {})", streamId, lastSeq, firstAvailable);
+                return false;
+            }
+
+            // 同一条流只保留一个前端连接，旧连接直接结束
+            previous = emitter;
+            cancelGraceTimer();
+            lastActiveMillis = System.currentTimeMillis();
+
+            emitter = newEmitter;
+            outbox.clear();
+            for (ReplayEvent event : ring) {
+                if (event.seq() > lastSeq) {
+                    outbox.addLast(event);
+                }
+            }
+            if (!finished) {
+                bindEmitterLifecycle(newEmitter, timeoutMs);
+            }
+        }
+        if (previous != null) {
+            previous.complete();
+        }
+        // 补发缓冲；补发途中又断了会重新进入宽限期
+        drain();
+        return true;
+    }
+
+    /**
+     * 把 SseEmitter 的生命周期绑定到会话上
+     * 前端关闭 / 异常只是断开挂载 (进入宽限期)；总时长超时则直接取消上游
+     * (emitter 的超时时间由调用方按 {@link #remainingMillis} 设置，重连不会重置截止时间)
+     */
+    private void bindEmitterLifecycle(SseEmitter target, long timeoutMs) {
+        target.onCompletion(() -> detach(target, "前端连接已关闭"));
+        target.onError(e -> detach(target, "前端连接异常: " + e.getMessage()));
+        target.onTimeout(() -> {
+            log.warn("⏱️ [StreamTimeout] {} 流式响应超过总时长 {}ms，主动结束", streamId, timeoutMs);
+            cancelUpstream("总时长超时");
+            try {
+                target.send(SseEmitter.event().name("error")
+                        .data(Collections.singletonMap("error", "回答时间过长，已自动结束")));
+            } catch (Exception e) {
+                log.debug("发送超时通知失败: {}", e.getMessage());
+            }
+            target.complete();
+        });
+    }
+
+    private synchronized void detach(SseEmitter target, String reason) {
+        detachLocked(target, reason);
+    }
+
+    private void detachLocked(SseEmitter target, String reason) {
+        if (emitter != target) return;
+        emitter = null;
+        outbox.clear();
+        lastActiveMillis = System.currentTimeMillis();
+        if (finished) return;
+
+        long graceMs = registry.getResumeGraceMs();
+        if (graceMs <= 0) {
+            registry.getScheduler().execute(() -> cancelUpstream(reason));
+            return;
+        }
+        log.info("🔌 [StreamDetach] {} {}，保留生成 {}ms 等待重连", streamId, reason, graceMs);
+        graceTimer = registry.getScheduler().schedule(() -> {
+            synchronized (this) {
+                graceTimer = null;
+                if (emitter != null) return;
+            }
+            cancelUpstream("断线后 " + graceMs + "ms 内未重连");
+        }, graceMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void cancelGraceTimer() {
+        if (graceTimer != null) {
+            graceTimer.cancel(false);
+            graceTimer = null;
+        }
+    }
+
+    // ==========================================
+    // 淘汰：由 StreamSessionRegistry 调用
+    // ==========================================
+
+    /**
+     * 是否可以被淘汰 (没有前端连接挂载)
+     */
+    synchronized boolean isDetached() {
+        return emitter == null;
+    }
+
+    synchronized long getLastActiveMillis() {
+        return lastActiveMillis;
+    }
+
+    synchronized long getBufferedBytes() {
+        return bufferedBytes;
+    }
+
+    /**
+     * 淘汰会话：取消上游、断开前端、释放缓冲
+     */
+    void evict(String reason) {
+        cancelUpstream("会话淘汰: " + reason);
+        synchronized (this) {
+            if (evicted) return;
+            evicted = true;
+            if (emitter != null) {
+                SseEmitter current = emitter;
+                emitter = null;
+                current.complete();
+            }
+            outbox.clear();
+            registry.adjustBytes(-bufferedBytes);
+            bufferedBytes = 0;
+            ring.clear();
+        }
+    }
+
+    private boolean send(SseEmitter target, ReplayEvent event) {
+        try {
+            target.send(SseEmitter.event()
+                    .id(streamId + ":" + event.seq())
+                    .name(event.name())
+                    .data(event.data()));
+            return true;
+        } catch (Exception e) {
+            // 连接断开 / emitter 已结束，日志记 warn 即可，由会话进入宽限期
+            log.warn("⚠️ [SSE] 推送前端失败 (可能是用户关闭了连接): {}", e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * 估算事件内存占用：字符按 2 字节计，外加对象头开销
+     */
+    private static int estimateBytes(String content) {
+        return (content != null ? content.length() * 2 : 0) + 64;
+    }
+}
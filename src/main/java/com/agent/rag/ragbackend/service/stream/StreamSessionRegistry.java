@@ -0,0 +1,183 @@
+package com.agent.rag.ragbackend.service.stream;
+
+import com.agent.rag.ragbackend.config.StreamConfig;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.time.Duration;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 可续传流式会话注册表
+ *
+ * <p>负责创建会话、按 Last-Event-ID 查找会话，以及定时清理：</p>
+ * <ul>
+ *     <li>总时长：从会话创建起超过 total-timeout-ms 仍未结束的生成直接取消 (断线期间没有 emitter 超时兜底)；</li>
+ *     <li>TTL：没有前端连接挂载、且超过 replay-ttl-ms 没有活动的会话；</li>
+ *     <li>全局内存上限：所有会话缓冲总字节超过 replay-total-max-bytes 时，按最久未活动优先淘汰断线会话。</li>
+ * </ul>
+ *
+ * <p>streamId 会出现在事件 ID、日志和代理访问记录里，续传还需要随首个 stream 事件下发的 resumeToken
+ * (请求头 X-Resume-Token)，否则任何拿到 streamId 的人都能重放别人的回答。</p>
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class StreamSessionRegistry {
+
+    private final StreamConfig streamConfig;
+
+    @Qualifier("streamScheduler")
+    private final ThreadPoolTaskScheduler streamScheduler;
+
+    private final Map<String, StreamSession> sessions = new ConcurrentHashMap<>();
+
+    private final SecureRandom random = new SecureRandom();
+
+    /**
+     * 所有会话缓冲的总字节数
+     */
+    private final AtomicLong totalBytes = new AtomicLong();
+
+    @PostConstruct
+    public void startEvictor() {
+        streamScheduler.scheduleWithFixedDelay(this::evict, Duration.ofSeconds(5));
+    }
+
+    /**
+     * 创建一个新会话，并发布编号为 0 的 stream 事件告知客户端 streamId 和续传凭证
+     */
+    public StreamSession create() {
+        String streamId = UUID.randomUUID().toString().replace("-", "");
+        byte[] token = new byte[16];
+        random.nextBytes(token);
+        String resumeToken = HexFormat.of().formatHex(token);
+        StreamSession session = new StreamSession(streamId, resumeToken, this,
+                streamConfig.getReplayBufferEvents(), streamConfig.getReplayBufferMaxBytes());
+        sessions.put(streamId, session);
+        session.publish("stream", Map.of("streamId", streamId, "resumeToken", resumeToken), 128);
+        return session;
+    }
+
+    public StreamSession find(String streamId) {
+        return streamId != null ? sessions.get(streamId) : null;
+    }
+
+    /**
+     * 用 Last-Event-ID 续传
+     * 新连接的超时时间取会话剩余的总时长，重连不会延长生成
+     *
+     * @param streamId    会话ID (为 null 时从 lastEventId 中解析)
+     * @param lastEventId 客户端收到的最后一个事件ID，格式 streamId:seq 或纯 seq；为空表示从头补发
+     * @param resumeToken 首个 stream 事件中下发的续传凭证
+     * @return 挂载好的 emitter；null 表示会话不存在、凭证不符或已无法续传
+     */
+    public SseEmitter resume(String streamId, String lastEventId, String resumeToken) {
+        long lastSeq = -1;
+        if (lastEventId != null && !lastEventId.isBlank()) {
+            String id = lastEventId.trim();
+            int sep = id.lastIndexOf(':');
+            if (sep >= 0) {
+                if (streamId == null) {
+                    streamId = id.substring(0, sep);
+                } else if (!streamId.equals(id.substring(0, sep))) {
+                    return null;
+                }
+                id = id.substring(sep + 1);
+            }
+            try {
+                lastSeq = Long.parseLong(id);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        StreamSession session = find(streamId);
+        if (session == null) {
+            return null;
+        }
+        if (!session.acceptsResumeToken(resumeToken)) {
+            log.warn("⚠️ [StreamResume] 拒绝续传 {}: 续传凭证不符", streamId);
+            return null;
+        }
+        log.info("🔁 [StreamResume] 续传 {} 从事件 {} 之后开始", streamId, lastSeq);
+        long totalTimeoutMs = streamConfig.getTotalTimeoutMs();
+        SseEmitter emitter = new SseEmitter(session.remainingMillis(totalTimeoutMs));
+        return session.attach(emitter, lastSeq, totalTimeoutMs) ? emitter : null;
+    }
+
+    void adjustBytes(long delta) {
+        totalBytes.addAndGet(delta);
+    }
+
+    long getResumeGraceMs() {
+        return streamConfig.getResumeGraceMs();
+    }
+
+    ScheduledExecutorService getScheduler() {
+        return streamScheduler.getScheduledExecutor();
+    }
+
+    public long getTotalBytes() {
+        return totalBytes.get();
+    }
+
+    public int getSessionCount() {
+        return sessions.size();
+    }
+
+    /**
+     * 定时清理：先取消超过总时长的生成，再按 TTL、全局内存上限淘汰
+     */
+    void evict() {
+        long now = System.currentTimeMillis();
+        long ttl = streamConfig.getReplayTtlMs();
+        long totalTimeoutMs = streamConfig.getTotalTimeoutMs();
+
+        List<StreamSession> detached = new ArrayList<>();
+        for (StreamSession session : sessions.values()) {
+            if (session.isPastDeadline(totalTimeoutMs)) {
+                session.cancelUpstream("总时长超时");
+            }
+            if (!session.isDetached()) continue;
+            if (now - session.getLastActiveMillis() > ttl) {
+                remove(session, "超过 TTL");
+            } else {
+                detached.add(session);
+            }
+        }
+
+        long cap = streamConfig.getReplayTotalMaxBytes();
+        if (totalBytes.get() <= cap) return;
+
+        detached.sort(Comparator.comparingLong(StreamSession::getLastActiveMillis));
+        for (StreamSession session : detached) {
+            if (totalBytes.get() <= cap) break;
+            remove(session, "超过全局缓冲上限");
+        }
+        if (totalBytes.get() > cap) {
+            log.warn("⚠️ [StreamBuffer] 续传缓冲 {} 字节仍超过上限 {} (均为在线连接)", totalBytes.get(), cap);
+        }
+    }
+
+    private void remove(StreamSession session, String reason) {
+        if (sessions.remove(session.getStreamId(), session)) {
+            session.evict(reason);
+            log.debug("🧹 [StreamBuffer] 淘汰会话 {}: {}", session.getStreamId(), reason);
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.agent.rag.ragbackend.service.stream;
+
+/**
+ * 内联思考标签拆分器 (增量状态机)
+ *
+ * <p>QwQ 等推理模型不走 reasoning_content 字段，而是直接在 content 里输出
+ * {@code <think>...</think>}。流式场景下标签可能被切在两个 chunk 中间
+ * (例如 "...&lt;thi" + "nk&gt;...")，所以这里逐字符推进状态机：</p>
+ * <ul>
+ *     <li>每个字符只扫描一次，不回扫已累积的全文，也不使用正则；</li>
+ *     <li>疑似标签前缀的字符会暂存，确认不是标签后再原样吐出；</li>
+ *     <li>一个实例对应一条流，非线程安全。</li>
+ * </ul>
+ *
+ * <p>同步接口通过 {@link #split(String)} 复用同一套逻辑。</p>
+ */
+public class ThinkTagSplitter {
+
+    private static final String OPEN_TAG = "<think>";
+    private static final String CLOSE_TAG = "</think>";
+
+    /**
+     * 拆分结果回调
+     */
+    public interface Sink {
+        /**
+         * 思考过程片段
+         */
+        void onThinking(String text);
+
+        /**
+         * 正文片段
+         */
+        void onAnswer(String text);
+    }
+
+    /**
+     * 当前是否处于 think 标签内部
+     */
+    private boolean inThink = false;
+
+    /**
+     * 当前目标标签已匹配的字符数 (跨 chunk 保留)
+     */
+    private int matched = 0;
+
+    /**
+     * 当前 chunk 中待输出的文本
+     */
+    private final StringBuilder segment = new StringBuilder();
+
+    /**
+     * 喂入一段增量文本，拆分出的片段通过 sink 回调输出
+     */
+    public void feed(CharSequence chunk, Sink sink) {
+        if (chunk == null || chunk.length() == 0) return;
+
+        for (int i = 0; i < chunk.length(); i++) {
+            char c = chunk.charAt(i);
+            String tag = inThink ? CLOSE_TAG : OPEN_TAG;
+
+            if (c == tag.charAt(matched)) {
+                matched++;
+                if (matched == tag.length()) {
+                    // 完整命中标签：先把标签之前的内容按旧状态输出，再切换状态
+                    emit(sink);
+                    inThink = !inThink;
+                    matched = 0;
+                }
+                continue;
+            }
+
+            // 失配：把已暂存的标签前缀当普通文本吐出
+            // 两个标签都只有首字符是 '<'，所以失配后只需检查当前字符能否重新开始匹配
+            if (matched > 0) {
+                segment.append(tag, 0, matched);
+                matched = 0;
+            }
+            if (c == tag.charAt(0)) {
+                matched = 1;
+            } else {
+                segment.append(c);
+            }
+        }
+        emit(sink);
+    }
+
+    /**
+     * 流结束时调用：把暂存的半截标签当普通文本吐出
+     */
+    public void flush(Sink sink) {
+        if (matched > 0) {
+            segment.append(inThink ? CLOSE_TAG : OPEN_TAG, 0, matched);
+            matched = 0;
+        }
+        emit(sink);
+    }
+
+    /**
+     * 当前是否处于 think 标签内部
+     */
+    public boolean isInThink() {
+        return inThink;
+    }
+
+    private void emit(Sink sink) {
+        if (segment.length() == 0) return;
+        String text = segment.toString();
+        segment.setLength(0);
+        if (inThink) {
+            sink.onThinking(text);
+        } else {
+            sink.onAnswer(text);
+        }
+    }
+
+    /**
+     * 一次性拆分完整文本 (同步接口使用)
+     *
+     * @param text 模型返回的完整 content
+     * @return 拆分结果，thinking/answer 均已 trim
+     */
+    public static Result split(String text) {
+        StringBuilder thinking = new StringBuilder();
+        StringBuilder answer = new StringBuilder();
+        if (text != null) {
+            Sink sink = new Sink() {
+                @Override
+                public void onThinking(String t) {
+                    thinking.append(t);
+                }
+
+                @Override
+                public void onAnswer(String t) {
+                    answer.append(t);
+                }
+            };
+            ThinkTagSplitter splitter = new ThinkTagSplitter();
+            splitter.feed(text, sink);
+            splitter.flush(sink);
+        }
+        return new Result(thinking.toString().trim(), answer.toString().trim());
+    }
+
+    /**
+     * 同步拆分结果
+     */
+    public record Result(String thinking, String answer) {
+    }
+}
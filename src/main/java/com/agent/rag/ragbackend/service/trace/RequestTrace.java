@@ -0,0 +1,133 @@
+package com.agent.rag.ragbackend.service.trace;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 一次对话请求的阶段耗时
+ *
+ * <p>各阶段的起止时间存放在一个定长数组里 (按 {@link TracePhase} 下标)，记录一个阶段只是一次数组写入，
+ * 不创建对象；各阶段可能在请求线程、Reactor 线程、入库线程上记录，所以用原子数组保证可见性。</p>
+ *
+ * <p>请求结束时 ({@link #finish}) 交给 {@link TraceRecorder} 决定是否进入环形缓冲；
+ * 入库在结束之后才异步完成，它的耗时会直接补写到已入缓冲的记录上。</p>
+ */
+public class RequestTrace {
+
+    /**
+     * 关闭追踪时使用的空实现
+     */
+    static final RequestTrace NOOP = new RequestTrace(null, "", "", null, 0);
+
+    private static final int PHASES = TracePhase.values().length;
+
+    private final TraceRecorder recorder;
+    private final String traceId;
+    private final String kind;
+    private final String model;
+    private final long startNanos;
+    private final long startEpochMillis;
+
+    /**
+     * [2i] 为阶段 i 的开始时间，[2i+1] 为结束时间 (nanoTime，0 表示未记录)
+     */
+    private final AtomicLongArray spans = new AtomicLongArray(PHASES * 2);
+    private final AtomicLong endNanos = new AtomicLong();
+
+    private volatile String outcome;
+    private volatile long deltas;
+    private volatile Map<String, Long> steps;
+    private volatile Map<String, String> degradedSteps;
+
+    RequestTrace(TraceRecorder recorder, String traceId, String kind, String model, long startNanos) {
+        this.recorder = recorder;
+        this.traceId = traceId;
+        this.kind = kind;
+        this.model = model;
+        this.startNanos = startNanos;
+        this.startEpochMillis = System.currentTimeMillis() - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+
+    public void begin(TracePhase phase) {
+        if (this != NOOP) spans.set(phase.ordinal() * 2, System.nanoTime());
+    }
+
+    public void end(TracePhase phase) {
+        if (this != NOOP) spans.set(phase.ordinal() * 2 + 1, System.nanoTime());
+    }
+
+    /**
+     * 记录前置流水线各步骤的耗时与降级情况 (直接引用 PromptContext 中已有的 Map)
+     */
+    public void steps(Map<String, Long> stepMillis, Map<String, String> degraded) {
+        this.steps = stepMillis;
+        this.degradedSteps = degraded;
+    }
+
+    /**
+     * 请求结束 (幂等，只有第一次生效)
+     *
+     * @param outcome ok / error / cancelled
+     * @param deltas  收到的增量数 (非流式为 0)
+     */
+    public void finish(String outcome, long deltas) {
+        if (this == NOOP || !endNanos.compareAndSet(0, System.nanoTime())) return;
+        this.outcome = outcome;
+        this.deltas = deltas;
+        recorder.onFinish(this);
+    }
+
+    public String getTraceId() {
+        return traceId;
+    }
+
+    public boolean isFinished() {
+        return endNanos.get() != 0;
+    }
+
+    /**
+     * 总耗时 (毫秒)，未结束时为当前已耗时
+     */
+    public long totalMillis() {
+        long end = endNanos.get();
+        return TimeUnit.NANOSECONDS.toMillis((end != 0 ? end : System.nanoTime()) - startNanos);
+    }
+
+    /**
+     * 阶段耗时 (毫秒)，未记录或仍在进行返回 -1；已开始未结束的阶段按请求结束时间计算
+     */
+    public long phaseMillis(TracePhase phase) {
+        long begin = spans.get(phase.ordinal() * 2);
+        if (begin == 0) return -1;
+        long end = spans.get(phase.ordinal() * 2 + 1);
+        if (end == 0) end = endNanos.get();
+        // 请求结束后才开始的阶段 (入库) 还在进行中
+        return end < begin ? -1 : TimeUnit.NANOSECONDS.toMillis(end - begin);
+    }
+
+    /**
+     * 查看时再组装成 Map，记录阶段不产生额外对象
+     */
+    public Map<String, Object> toView() {
+        Map<String, Object> view = new LinkedHashMap<>();
+        view.put("traceId", traceId);
+        view.put("kind", kind);
+        view.put("model", model);
+        view.put("startedAt", startEpochMillis);
+        view.put("totalMs", totalMillis());
+        view.put("outcome", outcome);
+        view.put("deltas", deltas);
+        Map<String, Long> phases = new LinkedHashMap<>();
+        for (TracePhase phase : TracePhase.values()) {
+            long millis = phaseMillis(phase);
+            if (millis >= 0) phases.put(phase.label(), millis);
+        }
+        view.put("phases", phases);
+        if (steps != null) view.put("steps", steps);
+        if (degradedSteps != null && !degradedSteps.isEmpty()) view.put("degraded", degradedSteps);
+        return view;
+    }
+}
@@ -0,0 +1,47 @@
+package com.agent.rag.ragbackend.service.trace;
+
+/**
+ * 一次对话请求的阶段
+ */
+public enum TracePhase {
+
+    /**
+     * 请求到达后等待工作线程
+     */
+    QUEUE("queue"),
+
+    /**
+     * 生成前置流水线 (历史加载、问题向量化、检索)
+     */
+    RETRIEVAL("retrieval"),
+
+    /**
+     * 拼装 Prompt
+     */
+    PROMPT_BUILD("prompt-build"),
+
+    /**
+     * 发出请求到收到上游第一个数据块 (非流式请求为整个调用)
+     */
+    UPSTREAM_TTFT("upstream-ttft"),
+
+    /**
+     * 第一个数据块到流结束
+     */
+    STREAMING("streaming"),
+
+    /**
+     * 提交到 dbExecutor 到入库完成 (含排队)
+     */
+    DB_SAVE("db-save");
+
+    private final String label;
+
+    TracePhase(String label) {
+        this.label = label;
+    }
+
+    public String label() {
+        return label;
+    }
+}
@@ -0,0 +1,103 @@
+package com.agent.rag.ragbackend.service.trace;
+
+import com.agent.rag.ragbackend.config.TraceConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 请求追踪记录器
+ *
+ * <p>已结束的请求写入定长环形缓冲：写入只是一次 getAndIncrement + 一次数组写，无锁、不扩容，
+ * 写满后覆盖最旧的记录。慢请求 (超过 slow-threshold-ms) 一律记录，其余按 sample-rate 采样，
+ * 所以缓冲里总能找到用户反馈的那次慢请求。</p>
+ *
+ * <p>查看时 (/api/debug/traces) 才拷贝缓冲并排序，开销全部落在调试接口上。</p>
+ */
+@Slf4j
+@Component
+public class TraceRecorder {
+
+    private final TraceConfig traceConfig;
+    private final AtomicReferenceArray<RequestTrace> ring;
+    private final int mask;
+    private final AtomicLong cursor = new AtomicLong();
+
+    public TraceRecorder(TraceConfig traceConfig) {
+        this.traceConfig = traceConfig;
+        int size = Integer.highestOneBit(Math.max(1, traceConfig.getBufferSize() - 1)) << 1;
+        this.ring = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+    }
+
+    /**
+     * 开始追踪一次请求
+     *
+     * @param traceId 为空时生成随机 ID (流式请求使用 streamId，便于和日志对应)
+     */
+    public RequestTrace start(String kind, String traceId, String model) {
+        return start(kind, traceId, model, System.nanoTime());
+    }
+
+    RequestTrace start(String kind, String traceId, String model, long startNanos) {
+        if (!traceConfig.isEnabled()) return RequestTrace.NOOP;
+        String id = traceId != null ? traceId : UUID.randomUUID().toString().substring(0, 8);
+        return new RequestTrace(this, id, kind, model, startNanos);
+    }
+
+    void onFinish(RequestTrace trace) {
+        long total = trace.totalMillis();
+        boolean slow = total >= traceConfig.getSlowThresholdMs();
+        if (slow) {
+            log.warn("🐢 [Trace] 慢请求 {} 耗时 {}ms: {}", trace.getTraceId(), total, trace.toView().get("phases"));
+        }
+        if (slow || ThreadLocalRandom.current().nextDouble() < traceConfig.getSampleRate()) {
+            ring.set((int) (cursor.getAndIncrement() & mask), trace);
+        }
+    }
+
+    /**
+     * 最近记录的请求中耗时最长的若干个
+     */
+    public List<Map<String, Object>> slowest(int limit) {
+        return snapshot().stream()
+                .sorted(Comparator.comparingLong(RequestTrace::totalMillis).reversed())
+                .limit(Math.max(0, limit))
+                .map(RequestTrace::toView)
+                .toList();
+    }
+
+    /**
+     * 最近记录的若干个请求 (新的在前)
+     */
+    public List<Map<String, Object>> recent(int limit) {
+        List<RequestTrace> traces = snapshot();
+        List<Map<String, Object>> views = new ArrayList<>();
+        for (int i = traces.size() - 1; i >= 0 && views.size() < limit; i--) {
+            views.add(traces.get(i).toView());
+        }
+        return views;
+    }
+
+    /**
+     * 缓冲中的记录，按写入顺序 (旧的在前)
+     */
+    private List<RequestTrace> snapshot() {
+        long end = cursor.get();
+        long begin = Math.max(0, end - ring.length());
+        List<RequestTrace> traces = new ArrayList<>((int) (end - begin));
+        for (long i = begin; i < end; i++) {
+            RequestTrace trace = ring.get((int) (i & mask));
+            if (trace != null) traces.add(trace);
+        }
+        return traces;
+    }
+}
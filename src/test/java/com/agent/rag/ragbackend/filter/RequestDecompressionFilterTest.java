@@ -0,0 +1,94 @@
+package com.agent.rag.ragbackend.filter;
+
+import com.agent.rag.ragbackend.config.CompressionConfig;
+import com.github.luben.zstd.Zstd;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RequestDecompressionFilterTest {
+
+    private static final String BODY = "{\"path\":\"a.md\",\"content\":\"# 标题\\n正文\"}";
+
+    private final RequestDecompressionFilter filter = new RequestDecompressionFilter(new CompressionConfig());
+
+    @Test
+    void decompressesGzipAndZstdBodies() throws Exception {
+        ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(gzipped)) {
+            out.write(BODY.getBytes(StandardCharsets.UTF_8));
+        }
+        assertEquals(BODY, readThroughFilter("gzip", gzipped.toByteArray()));
+        assertEquals(BODY, readThroughFilter("zstd", Zstd.compress(BODY.getBytes(StandardCharsets.UTF_8))));
+    }
+
+    @Test
+    void rejectsUnknownEncoding() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/rag/sync");
+        request.addHeader("Content-Encoding", "br");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, new MockFilterChain());
+        assertEquals(415, response.getStatus());
+    }
+
+    @Test
+    void readListenerReceivesWholeBodyThenAllDataRead() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/rag/sync");
+        request.addHeader("Content-Encoding", "zstd");
+        request.setContent(Zstd.compress(BODY.getBytes(StandardCharsets.UTF_8)));
+        MockFilterChain chain = new MockFilterChain();
+        filter.doFilter(request, new MockHttpServletResponse(), chain);
+
+        ServletInputStream in = chain.getRequest().getInputStream();
+        ByteArrayOutputStream received = new ByteArrayOutputStream();
+        boolean[] allRead = {false};
+        in.setReadListener(new ReadListener() {
+            @Override
+            public void onDataAvailable() throws IOException {
+                byte[] buf = new byte[8];
+                int n;
+                while (in.isReady() && (n = in.read(buf)) >= 0) {
+                    received.write(buf, 0, n);
+                }
+            }
+
+            @Override
+            public void onAllDataRead() {
+                allRead[0] = true;
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                throw new AssertionError(t);
+            }
+        });
+
+        assertTrue(allRead[0]);
+        assertTrue(in.isFinished());
+        assertEquals(BODY, received.toString(StandardCharsets.UTF_8));
+    }
+
+    private String readThroughFilter(String encoding, byte[] body) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/rag/sync");
+        request.addHeader("Content-Encoding", encoding);
+        request.setContent(body);
+        MockFilterChain chain = new MockFilterChain();
+        filter.doFilter(request, new MockHttpServletResponse(), chain);
+
+        assertNull(((HttpServletRequest) chain.getRequest()).getHeader("Content-Encoding"));
+        return new String(chain.getRequest().getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+    }
+}
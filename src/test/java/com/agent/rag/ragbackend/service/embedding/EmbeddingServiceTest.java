@@ -0,0 +1,141 @@
+package com.agent.rag.ragbackend.service.embedding;
+
+import com.agent.rag.ragbackend.config.EmbeddingConfig;
+import com.agent.rag.ragbackend.config.SchedulingConfig;
+import com.agent.rag.ragbackend.service.scheduling.WorkloadGovernor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EmbeddingServiceTest {
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(8);
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void splitsIntoBatchesKeepsOrderAndRespectsGlobalPermits() {
+        EmbeddingConfig config = new EmbeddingConfig();
+        config.setMaxConcurrentBatches(2);
+        RecordingProvider provider = new RecordingProvider(3, 30);
+        EmbeddingService service = service(config, provider);
+
+        List<String> texts = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            texts.add(String.valueOf(i));
+        }
+        EmbeddingService.EmbeddingResult result = service.embedAll(texts, "fake", "m1", null);
+
+        assertEquals(7, result.batches());
+        assertEquals(List.of(3, 3, 3, 3, 3, 3, 2), provider.batchSizes.stream().sorted((a, b) -> b - a).toList());
+        for (int i = 0; i < texts.size(); i++) {
+            assertEquals(i, (int) result.vectors().get(i)[0]);
+        }
+        // 8 个线程同时可用，但在途批次不超过 max-concurrent-batches
+        assertTrue(provider.maxInFlight.get() <= 2, "in flight " + provider.maxInFlight.get());
+        assertEquals(20, service.getTotalTexts());
+    }
+
+    @Test
+    void failedBatchFailsWholeCall() {
+        RecordingProvider provider = new RecordingProvider(4, 0);
+        provider.failOn = "5";
+        EmbeddingService service = service(new EmbeddingConfig(), provider);
+
+        assertThrows(IllegalStateException.class,
+                () -> service.embedAll(List.of("1", "2", "3", "4", "5", "6"), "fake", "m1", null));
+    }
+
+    @Test
+    void resolvesDefaultSpace() {
+        EmbeddingService service = service(new EmbeddingConfig(), new RecordingProvider(4, 0));
+
+        assertEquals(new EmbeddingSpace("local", "hash-ngram"), service.resolveSpace(null, null));
+        assertEquals(new EmbeddingSpace("local", "hash-ngram"), service.resolveSpace("local", " "));
+        assertEquals(new EmbeddingSpace("fake", "m2"), service.resolveSpace("fake", "m2"));
+        assertEquals(new EmbeddingSpace("fake", "org/m2"), EmbeddingSpace.parse("fake/org/m2"));
+    }
+
+    @Test
+    void nonDefaultProviderWithoutModelUsesItsOwnDefaultModel() {
+        EmbeddingConfig config = new EmbeddingConfig();
+        config.getDefaultModels().put("openai", "text-embedding-3-small");
+        RecordingProvider provider = new RecordingProvider(4, 0);
+        EmbeddingService service = service(config, provider);
+
+        assertEquals(new EmbeddingSpace("openai", "text-embedding-3-small"), service.resolveSpace("openai", null));
+        service.embedAll(List.of("1", "2"), "openai", "", null);
+        service.embedOne("3", "openai", null, null);
+        assertEquals(List.of("text-embedding-3-small", "text-embedding-3-small"), provider.models);
+
+        // 没有配置默认模型的厂商：直接报错，不能把 null 当模型名发给上游
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> service.resolveSpace("aliyun", null));
+        assertEquals("未配置向量化模型: aliyun", e.getMessage());
+        assertThrows(IllegalArgumentException.class, () -> service.embedAll(List.of("1"), "aliyun", null, null));
+    }
+
+    private EmbeddingService service(EmbeddingConfig config, EmbeddingProvider provider) {
+        return new EmbeddingService(List.of(provider), config, executor, new WorkloadGovernor(new SchedulingConfig()));
+    }
+
+    /**
+     * 把文本本身 (数字) 作为向量第一维，记录批量大小与并发数
+     */
+    private static class RecordingProvider implements EmbeddingProvider {
+        final int batchSize;
+        final long sleepMs;
+        final List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+        final List<String> models = new CopyOnWriteArrayList<>();
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger maxInFlight = new AtomicInteger();
+        volatile String failOn;
+
+        RecordingProvider(int batchSize, long sleepMs) {
+            this.batchSize = batchSize;
+            this.sleepMs = sleepMs;
+        }
+
+        @Override
+        public boolean supports(String provider) {
+            return true;
+        }
+
+        @Override
+        public int maxBatchSize(String provider) {
+            return batchSize;
+        }
+
+        @Override
+        public List<float[]> embedBatch(String provider, String model, List<String> texts, String apiKey) {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(sleepMs);
+                if (failOn != null && texts.contains(failOn)) {
+                    throw new IllegalStateException("upstream error");
+                }
+                batchSizes.add(texts.size());
+                models.add(model);
+                return texts.stream().map(text -> new float[]{Float.parseFloat(text)}).toList();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            } finally {
+                inFlight.decrementAndGet();
+            }
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.agent.rag.ragbackend.service.embedding;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LocalHashEmbeddingProviderTest {
+
+    @Test
+    void vectorsAreDeterministicNormalizedAndCaseInsensitive() {
+        float[] first = LocalHashEmbeddingProvider.embed("Vector Search 向量检索", 128);
+        float[] second = LocalHashEmbeddingProvider.embed("vector search 向量检索", 128);
+
+        assertEquals(128, first.length);
+        assertArrayEquals(first, second);
+        assertEquals(1.0, dot(first, first), 1e-5);
+    }
+
+    @Test
+    void similarTextsScoreHigherThanUnrelatedOnes() {
+        float[] query = LocalHashEmbeddingProvider.embed("obsidian 笔记同步", 512);
+        float[] related = LocalHashEmbeddingProvider.embed("obsidian 笔记同步与检索", 512);
+        float[] unrelated = LocalHashEmbeddingProvider.embed("quarterly revenue forecast", 512);
+
+        assertTrue(dot(query, related) > dot(query, unrelated) + 0.3);
+    }
+
+    @Test
+    void emptyTextIsZeroVector() {
+        float[] vector = LocalHashEmbeddingProvider.embed("", 16);
+        assertEquals(0.0, dot(vector, vector));
+    }
+
+    private static double dot(float[] a, float[] b) {
+        double sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+}
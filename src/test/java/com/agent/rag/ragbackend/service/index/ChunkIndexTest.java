@@ -0,0 +1,140 @@
+package com.agent.rag.ragbackend.service.index;
+
+import com.agent.rag.ragbackend.config.IndexConfig;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChunkIndexTest {
+
+    static IndexedChunk chunk(String path, int ordinal, String text, float... vector) {
+        return new IndexedChunk(path + "#" + ordinal, path, path, ordinal, text, vector);
+    }
+
+    @Test
+    void deletedAndRenamedChunksAreFilteredBeforeAndAfterCompaction() {
+        ChunkIndex index = new ChunkIndex(new IndexConfig());
+        index.upsertAll(Map.of(
+                "a.md", List.of(chunk("a.md", 0, "kubernetes scheduling", 1, 0)),
+                "b.md", List.of(chunk("b.md", 0, "redis eviction", 0, 1))));
+
+        assertEquals(1, index.delete("b.md"));
+        assertEquals(1, index.rename("a.md", "k8s.md", "k8s"));
+        assertEquals(1, index.size());
+        assertEquals(2, index.deadCount());
+        assertTrue(index.searchKeyword("redis", 5).isEmpty());
+        assertEquals("k8s.md", index.searchVector(new float[]{1, 0}, 5).get(0).chunk().path());
+
+        index.compact();
+
+        assertEquals(1, index.segmentCount());
+        assertEquals(0, index.deadCount());
+        assertEquals("k8s.md", index.searchKeyword("kubernetes", 5).get(0).chunk().path());
+        // 合并后的位置映射仍然正确：再次删除能命中新段
+        assertEquals(1, index.delete("k8s.md"));
+        assertTrue(index.isEmpty());
+    }
+
+    @Test
+    void keywordScoresIgnoreTombstonedChunks() {
+        ChunkIndex withTombstones = new ChunkIndex(new IndexConfig());
+        withTombstones.upsertAll(Map.of(
+                "a.md", List.of(chunk("a.md", 0, "redis cache", 1, 0)),
+                "b.md", List.of(chunk("b.md", 0, "redis queue redis stream", 0, 1)),
+                "c.md", List.of(chunk("c.md", 0, "kafka", 1, 1))));
+        withTombstones.delete("b.md");
+
+        ChunkIndex fresh = new ChunkIndex(new IndexConfig());
+        fresh.upsertAll(Map.of(
+                "a.md", List.of(chunk("a.md", 0, "redis cache", 1, 0)),
+                "c.md", List.of(chunk("c.md", 0, "kafka", 1, 1))));
+
+        // df、文档数、平均长度都不计墓碑：与只含存活切片的索引打分一致
+        assertEquals(fresh.searchKeyword("redis", 5).get(0).score(),
+                withTombstones.searchKeyword("redis", 5).get(0).score(), 1e-9);
+    }
+
+    @Test
+    void quantizedStorageKeepsRecallAndReleasesFilesOnCompaction(@TempDir Path dir) throws IOException {
+        for (String mode : new String[]{"int8", "binary"}) {
+            IndexConfig config = new IndexConfig();
+            config.setQuantization(mode);
+            config.setDataDir(dir.resolve(mode).toString());
+            config.setRescoreFactor(1);
+            ChunkIndex index = new ChunkIndex(config);
+
+            Random random = new Random(3);
+            Map<String, List<IndexedChunk>> notes = new HashMap<>();
+            for (int i = 0; i < 2000; i++) {
+                notes.put("n" + i, List.of(chunk("n" + i, 0, "note " + i, unitVector(random, 128))));
+            }
+            index.upsertAll(notes);
+
+            // 结果得分是全精度点积，向量从磁盘读回
+            float[] query = unitVector(random, 128);
+            ScoredChunk top = index.searchVector(query, 1).get(0);
+            assertEquals(VectorKernels.dot(query, top.chunk().vector()), top.score(), 1e-5);
+            assertTrue(index.vectorBytes() * 3 < 2000L * 128 * 4, mode + " 堆内占用应远小于 float");
+
+            RecallCalibrator calibrator = new RecallCalibrator(null, config, null, null);
+            assertTrue(calibrator.calibrate(index) >= config.getMinRecall(), mode + " 召回率应达标");
+
+            for (int i = 0; i < 1000; i++) {
+                index.delete("n" + i);
+            }
+            index.compact();
+            try (Stream<Path> files = Files.list(dir.resolve(mode))) {
+                assertEquals(1, files.count());
+            }
+            assertEquals(1000, index.size());
+        }
+    }
+
+    @Test
+    void replacedSegmentKeepsFileUntilLastReaderReleases(@TempDir Path dir) throws IOException {
+        Random random = new Random(7);
+        IndexSegment segment = IndexSegment.build(
+                List.of(chunk("a.md", 0, "a", unitVector(random, 16)), chunk("b.md", 0, "b", unitVector(random, 16))),
+                VectorQuantization.INT8, dir);
+        assertTrue(segment.tryRetain());
+
+        // 合并替换后仍有检索在读：文件保留且可读
+        segment.release();
+        segment.release();
+        assertEquals(16, segment.fullChunk(1).vector().length);
+        try (Stream<Path> files = Files.list(dir)) {
+            assertEquals(1, files.count());
+        }
+
+        segment.unretain();
+        try (Stream<Path> files = Files.list(dir)) {
+            assertEquals(0, files.count());
+        }
+        assertFalse(segment.tryRetain());
+    }
+
+    static float[] unitVector(Random random, int dim) {
+        float[] v = new float[dim];
+        double norm = 0;
+        for (int i = 0; i < dim; i++) {
+            v[i] = (float) random.nextGaussian();
+            norm += v[i] * v[i];
+        }
+        for (int i = 0; i < dim; i++) {
+            v[i] /= (float) Math.sqrt(norm);
+        }
+        return v;
+    }
+}
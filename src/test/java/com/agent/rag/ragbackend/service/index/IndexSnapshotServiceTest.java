@@ -0,0 +1,114 @@
+package com.agent.rag.ragbackend.service.index;
+
+import com.agent.rag.ragbackend.config.IndexConfig;
+import com.agent.rag.ragbackend.service.embedding.EmbeddingSpace;
+import com.agent.rag.ragbackend.service.manifest.ManifestService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+
+import static com.agent.rag.ragbackend.service.index.ChunkIndexTest.chunk;
+import static com.agent.rag.ragbackend.service.index.ChunkIndexTest.unitVector;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IndexSnapshotServiceTest {
+
+    private final ForkJoinPool pool = new ForkJoinPool(2);
+
+    @AfterEach
+    void tearDown() {
+        pool.shutdownNow();
+    }
+
+    @Test
+    void restoredIndexMatchesOriginalAndCorruptSegmentsAreResynced(@TempDir Path dir) throws IOException {
+        IndexConfig config = new IndexConfig();
+        config.setQuantization("int8");
+        config.setDataDir(dir.resolve("index").toString());
+        config.setSnapshotDir(dir.resolve("snapshots").toString());
+
+        VaultIndexRegistry registry = new VaultIndexRegistry(config, pool);
+        ManifestService manifests = new ManifestService();
+        Random random = new Random(5);
+        Map<String, List<IndexedChunk>> notes = new HashMap<>();
+        for (int i = 0; i < 400; i++) {
+            notes.put("n" + i, List.of(chunk("n" + i, 0, "note " + i, unitVector(random, 64))));
+            manifests.record("alice", "n" + i, "h" + i);
+        }
+        VaultIndex vault = registry.forVault("alice");
+        vault.upsertAll(new EmbeddingSpace("local", "hash-ngram"), notes);
+        vault.splitIfNeeded(150, 8);
+        vault.delete("n7");
+        manifests.remove("alice", "n7");
+
+        IndexSnapshotService original = new IndexSnapshotService(registry, manifests, config, null, null);
+        assertTrue(original.snapshot());
+        assertFalse(original.snapshot(), "索引没有变化时跳过");
+
+        // 重启：分片结构、墓碑、检索结果和同步清单都与快照前一致
+        VaultIndexRegistry restoredRegistry = new VaultIndexRegistry(config, pool);
+        ManifestService restoredManifests = new ManifestService();
+        IndexSnapshotService restoring = new IndexSnapshotService(restoredRegistry, restoredManifests, config, null, null);
+        restoring.restore();
+        VaultIndex restored = restoredRegistry.find("alice").orElseThrow();
+        assertEquals(vault.shards().size(), restored.shards().size());
+        assertEquals(399, restored.size());
+        assertEquals(new EmbeddingSpace("local", "hash-ngram"), restored.getEmbeddingSpace());
+        assertFalse(restored.contains("n7"));
+        float[] query = unitVector(random, 64);
+        assertEquals(vault.searchVector(query, 10).stream().map(hit -> hit.chunk().path()).toList(),
+                restored.searchVector(query, 10).stream().map(hit -> hit.chunk().path()).toList());
+        assertEquals("n42", restored.searchKeyword("note 42", 1).get(0).chunk().path());
+        assertTrue(restoredManifests.isUnchanged("alice", "n42", "h42"));
+        // 检索直接读映射，不在请求线程里物化段；后台校验时才预热
+        assertFalse(mappedSegments(restored).stream().anyMatch(MappedSegmentVectors::isLoaded));
+        restoring.verifyRestored();
+        assertTrue(mappedSegments(restored).stream().allMatch(MappedSegmentVectors::isLoaded));
+        assertEquals(vault.searchVector(query, 10).stream().map(hit -> hit.chunk().path()).toList(),
+                restored.searchVector(query, 10).stream().map(hit -> hit.chunk().path()).toList());
+
+        // 损坏一个段文件的向量区：后台校验丢弃该段，相关笔记从清单移除以便重新同步
+        Path segmentFile;
+        try (Stream<Path> files = Files.list(dir.resolve("snapshots"))) {
+            segmentFile = files.filter(f -> f.getFileName().toString().startsWith("seg-")).findFirst().orElseThrow();
+        }
+        try (RandomAccessFile file = new RandomAccessFile(segmentFile.toFile(), "rw")) {
+            file.seek(file.length() - 1);
+            int last = file.read();
+            file.seek(file.length() - 1);
+            file.write(last ^ 0xFF);
+        }
+        VaultIndexRegistry corruptRegistry = new VaultIndexRegistry(config, pool);
+        ManifestService corruptManifests = new ManifestService();
+        IndexSnapshotService corrupt = new IndexSnapshotService(corruptRegistry, corruptManifests, config, null, null);
+        corrupt.restore();
+        corrupt.verifyRestored();
+        VaultIndex damaged = corruptRegistry.find("alice").orElseThrow();
+        assertTrue(damaged.size() < 399);
+        Map<String, String> remaining = corruptManifests.export().get("alice");
+        assertEquals(damaged.noteCount(), remaining.size());
+        remaining.keySet().forEach(path -> assertTrue(damaged.contains(path)));
+        assertNull(remaining.get("n7"));
+    }
+
+    private static List<MappedSegmentVectors> mappedSegments(VaultIndex vault) {
+        return vault.shards().stream()
+                .flatMap(shard -> shard.segments().stream())
+                .map(segment -> (MappedSegmentVectors) segment.vectors())
+                .toList();
+    }
+}
@@ -0,0 +1,83 @@
+package com.agent.rag.ragbackend.service.index;
+
+import com.agent.rag.ragbackend.config.IndexConfig;
+import com.agent.rag.ragbackend.service.embedding.EmbeddingSpace;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import static com.agent.rag.ragbackend.service.index.ChunkIndexTest.chunk;
+import static com.agent.rag.ragbackend.service.index.ChunkIndexTest.unitVector;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class VaultIndexTest {
+
+    private final ForkJoinPool pool = new ForkJoinPool(4);
+
+    @AfterEach
+    void tearDown() {
+        pool.shutdownNow();
+    }
+
+    @Test
+    void splitShardsReturnSameTopKAsSingleShardAndKeepVaultsIsolated() {
+        VaultIndexRegistry registry = new VaultIndexRegistry(new IndexConfig(), pool);
+        Random random = new Random(11);
+        Map<String, List<IndexedChunk>> notes = new HashMap<>();
+        for (int i = 0; i < 1000; i++) {
+            notes.put("n" + i, List.of(chunk("n" + i, 0, "note " + i, unitVector(random, 32))));
+        }
+        VaultIndex vault = registry.forVault("alice");
+        vault.upsertAll(notes);
+        ChunkIndex reference = new ChunkIndex(new IndexConfig());
+        reference.upsertAll(notes);
+
+        assertEquals(3, vault.splitIfNeeded(300, 8));
+        assertEquals(4, vault.shards().size());
+        assertEquals(1000, vault.size());
+
+        float[] query = unitVector(random, 32);
+        List<String> expected = reference.searchVector(query, 10).stream().map(hit -> hit.chunk().path()).toList();
+        assertEquals(expected, vault.searchVector(query, 10).stream().map(hit -> hit.chunk().path()).toList());
+
+        // 跨分片重命名后仍然只有一份
+        int before = vault.size();
+        assertEquals(1, vault.rename("n1", "renamed/n1", null));
+        assertEquals(before, vault.size());
+        assertEquals("renamed/n1", vault.searchKeyword("note 1", 1000).stream()
+                .map(hit -> hit.chunk().path()).filter(path -> path.endsWith("n1")).findFirst().orElseThrow());
+
+        assertTrue(registry.find("bob").isEmpty());
+        registry.forVault("bob").upsertAll(Map.of("b", List.of(chunk("b", 0, "bob only", unitVector(random, 32)))));
+        assertTrue(vault.searchKeyword("bob", 10).isEmpty());
+    }
+
+    @Test
+    void switchingEmbeddingSpaceDropsNotesFromTheOldSpace() {
+        VaultIndexRegistry registry = new VaultIndexRegistry(new IndexConfig(), pool);
+        Random random = new Random(3);
+        VaultIndex vault = registry.forVault("alice");
+        EmbeddingSpace small = new EmbeddingSpace("aliyun", "text-embedding-v1");
+        EmbeddingSpace large = new EmbeddingSpace("aliyun", "text-embedding-v3");
+        vault.upsertAll(small, Map.of(
+                "a", List.of(chunk("a", 0, "a", unitVector(random, 16))),
+                "b", List.of(chunk("b", 0, "b", unitVector(random, 16)))));
+        assertTrue(vault.upsertAll(small, Map.of("c", List.of(chunk("c", 0, "c", unitVector(random, 16))))).isEmpty());
+
+        Set<String> discarded = vault.upsertAll(large, Map.of("a", List.of(chunk("a", 0, "a", unitVector(random, 16)))));
+
+        assertEquals(Set.of("b", "c"), discarded);
+        assertEquals(large, vault.getEmbeddingSpace());
+        assertTrue(vault.contains("a"));
+        assertFalse(vault.contains("b"));
+        assertEquals(1, vault.size());
+    }
+}
@@ -0,0 +1,134 @@
+package com.agent.rag.ragbackend.service.index;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 相似度内核与 MMR 重排基准
+ *
+ * <p>运行：{@code mvn -Pjmh test-compile exec:exec -Djmh.args="VectorKernelsBenchmark"}</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class VectorKernelsBenchmark {
+
+    @Param({"512", "1536"})
+    private int dimension;
+
+    @Param({"4000"})
+    private int candidates;
+
+    private float[] query;
+    private float[][] vectors;
+    private List<ScoredChunk> ranked;
+    private SegmentVectors.PreparedQuery prepared;
+    private SegmentVectors int8;
+    private SegmentVectors binary;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(7);
+        query = randomUnitVector(random, dimension);
+        vectors = new float[candidates][];
+        for (int i = 0; i < candidates; i++) {
+            vectors[i] = randomUnitVector(random, dimension);
+        }
+        ranked = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            IndexedChunk chunk = new IndexedChunk("n" + i + "#0", "n" + i, "n" + i, 0, "", vectors[i]);
+            ranked.add(new ScoredChunk(chunk, VectorKernels.dot(query, vectors[i])));
+        }
+        ranked.sort(Comparator.comparingDouble(ScoredChunk::score).reversed());
+
+        // 只测堆内粗排，不需要全精度文件
+        prepared = SegmentVectors.PreparedQuery.of(query);
+        int8 = Int8SegmentVectors.encode(vectors, null);
+        binary = BinarySegmentVectors.encode(vectors, null);
+    }
+
+    /**
+     * 精确重打分全部候选 (SIMD，未加载模块时为标量)
+     */
+    @Benchmark
+    public float rescoreAll() {
+        float best = Float.NEGATIVE_INFINITY;
+        for (float[] vector : vectors) {
+            best = Math.max(best, VectorKernels.dot(query, vector));
+        }
+        return best;
+    }
+
+    @Benchmark
+    public float rescoreAllScalar() {
+        float best = Float.NEGATIVE_INFINITY;
+        for (float[] vector : vectors) {
+            best = Math.max(best, VectorKernels.dotScalar(query, vector));
+        }
+        return best;
+    }
+
+    /**
+     * int8 量化粗排全部候选
+     */
+    @Benchmark
+    public float coarseInt8() {
+        float best = Float.NEGATIVE_INFINITY;
+        for (int slot = 0; slot < candidates; slot++) {
+            best = Math.max(best, int8.score(prepared, slot));
+        }
+        return best;
+    }
+
+    /**
+     * 二值量化粗排全部候选 (汉明距离)
+     */
+    @Benchmark
+    public float coarseBinary() {
+        float best = Float.NEGATIVE_INFINITY;
+        for (int slot = 0; slot < candidates; slot++) {
+            best = Math.max(best, binary.score(prepared, slot));
+        }
+        return best;
+    }
+
+    /**
+     * 从 200 个候选中选出 8 个
+     */
+    @Benchmark
+    public List<ScoredChunk> mmrRerank() {
+        return MmrReranker.rerank(ranked, 8, 0.7, 0.95);
+    }
+
+    private static float[] randomUnitVector(Random random, int dim) {
+        float[] v = new float[dim];
+        double norm = 0;
+        for (int i = 0; i < dim; i++) {
+            v[i] = (float) random.nextGaussian();
+            norm += v[i] * v[i];
+        }
+        float inv = (float) (1 / Math.sqrt(norm));
+        for (int i = 0; i < dim; i++) {
+            v[i] *= inv;
+        }
+        return v;
+    }
+}
@@ -0,0 +1,50 @@
+package com.agent.rag.ragbackend.service.index;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class VectorKernelsTest {
+
+    @Test
+    void simdMatchesScalarForOddDimensions() {
+        assertTrue(VectorKernels.isSimdEnabled(), "测试运行时应加载 jdk.incubator.vector");
+        Random random = new Random(42);
+        for (int dim : new int[]{1, 7, 31, 512, 1537}) {
+            float[] a = randomVector(random, dim);
+            float[] b = randomVector(random, dim);
+            assertEquals(VectorKernels.dotScalar(a, b), VectorKernels.dot(a, b), 1e-3f * dim);
+            assertEquals(VectorKernels.cosineScalar(a, b), VectorKernels.cosine(a, b), 1e-4f);
+        }
+    }
+
+    @Test
+    void mmrDropsNearDuplicatesAndKeepsDiverseChunks() {
+        List<ScoredChunk> candidates = List.of(
+                scored("a", 0.95, 1, 0.1f, 0),
+                scored("a-copy", 0.94, 1, 0.1f, 0.001f),
+                scored("b", 0.80, 0.8f, 0, 0.6f),
+                scored("c", 0.30, 0.3f, 0.95f, 0));
+
+        List<ScoredChunk> picked = MmrReranker.rerank(candidates, 2, 0.7, 0.95);
+
+        assertEquals(List.of("a", "b"), picked.stream().map(hit -> hit.chunk().path()).toList());
+        assertEquals(0.95, picked.get(0).score());
+    }
+
+    private static ScoredChunk scored(String path, double score, float... vector) {
+        return new ScoredChunk(new IndexedChunk(path + "#0", path, path, 0, path, vector), score);
+    }
+
+    private static float[] randomVector(Random random, int dim) {
+        float[] v = new float[dim];
+        for (int i = 0; i < dim; i++) {
+            v[i] = random.nextFloat() * 2 - 1;
+        }
+        return v;
+    }
+}
@@ -0,0 +1,64 @@
+package com.agent.rag.ragbackend.service.ingest;
+
+import com.agent.rag.ragbackend.config.EmbeddingConfig;
+import com.agent.rag.ragbackend.config.IndexConfig;
+import com.agent.rag.ragbackend.config.RetrievalConfig;
+import com.agent.rag.ragbackend.config.SchedulingConfig;
+import com.agent.rag.ragbackend.dto.request.SyncRequest;
+import com.agent.rag.ragbackend.service.embedding.EmbeddingService;
+import com.agent.rag.ragbackend.service.embedding.EmbeddingSpace;
+import com.agent.rag.ragbackend.service.embedding.LocalHashEmbeddingProvider;
+import com.agent.rag.ragbackend.service.index.VaultIndexRegistry;
+import com.agent.rag.ragbackend.service.manifest.ManifestService;
+import com.agent.rag.ragbackend.service.scheduling.WorkloadGovernor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class IngestionServiceTest {
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(2);
+    private final ForkJoinPool pool = new ForkJoinPool(2);
+    private final EmbeddingConfig embeddingConfig = new EmbeddingConfig();
+    private final VaultIndexRegistry registry = new VaultIndexRegistry(new IndexConfig(), pool);
+    private final IngestionService service = new IngestionService(
+            new EmbeddingService(List.of(new LocalHashEmbeddingProvider(embeddingConfig)), embeddingConfig, executor,
+                    new WorkloadGovernor(new SchedulingConfig())),
+            registry, new RetrievalConfig(), new ManifestService());
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+        pool.shutdownNow();
+    }
+
+    @Test
+    void skipsUnchangedNoteOnlyWithinSameEmbeddingSpace() {
+        assertEquals(0, service.ingest(List.of(note("m1")), null).skipped());
+        assertEquals(1, service.ingest(List.of(note("m1")), null).skipped());
+
+        // 内容没变但换了模型：必须重新向量化
+        IngestionService.IngestionReport switched = service.ingest(List.of(note("m2")), null);
+        assertEquals(0, switched.skipped());
+        assertEquals(new EmbeddingSpace("local", "m2"), registry.find("alice").orElseThrow().getEmbeddingSpace());
+
+        assertEquals(1, service.ingest(List.of(note("m2")), null).skipped());
+    }
+
+    private static SyncRequest note(String model) {
+        SyncRequest note = new SyncRequest();
+        note.setVaultId("alice");
+        note.setPath("notes/a.md");
+        note.setTitle("a");
+        note.setContent("# 标题\n\n内容没有变化，只是换了向量模型。");
+        note.setEmbeddingProvider("local");
+        note.setEmbeddingModel(model);
+        return note;
+    }
+}
@@ -0,0 +1,40 @@
+package com.agent.rag.ragbackend.service.ingest;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MarkdownChunkerTest {
+
+    @Test
+    void skipsFrontMatterAndPacksParagraphsUpToChunkSize() {
+        String content = "---\ntags: [a]\n---\n第一段\n\n第二段\n\n\n" + "x".repeat(20);
+
+        List<String> chunks = MarkdownChunker.split(content, 12, 2);
+
+        assertEquals(List.of("第一段\n\n第二段", "x".repeat(12), "x".repeat(10)), chunks);
+    }
+
+    @Test
+    void longParagraphIsCutWithOverlap() {
+        String paragraph = "abcdefghijklmnopqrst";
+
+        List<String> chunks = MarkdownChunker.split(paragraph, 8, 3);
+
+        assertEquals(List.of("abcdefgh", "fghijklm", "klmnopqr", "pqrst"), chunks);
+        for (int i = 1; i < chunks.size(); i++) {
+            String previous = chunks.get(i - 1);
+            assertTrue(chunks.get(i).startsWith(previous.substring(previous.length() - 3)));
+        }
+    }
+
+    @Test
+    void blankContentHasNoChunks() {
+        assertTrue(MarkdownChunker.split(null, 100, 10).isEmpty());
+        assertTrue(MarkdownChunker.split(" \n\n ", 100, 10).isEmpty());
+        assertTrue(MarkdownChunker.split("---\ntitle: x\n---", 100, 10).isEmpty());
+    }
+}
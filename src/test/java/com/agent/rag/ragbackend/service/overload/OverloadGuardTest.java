@@ -0,0 +1,91 @@
+package com.agent.rag.ragbackend.service.overload;
+
+import com.agent.rag.ragbackend.config.OverloadConfig;
+import com.agent.rag.ragbackend.config.SchedulingConfig;
+import com.agent.rag.ragbackend.service.scheduling.WorkloadGovernor;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OverloadGuardTest {
+
+    @Test
+    void degradesStepByStepThenShedsAndRecoversOnRelease() {
+        OverloadConfig config = new OverloadConfig();
+        config.setMaxInflight(10);
+        config.setMinLatencySamples(5);
+        config.setTargetP99Ms(1_000);
+        config.setLatencyWindowMs(500);
+        // 手动推进的时钟：信号缓存 (100ms) 与延迟窗口都按它计时，不依赖真实耗时
+        AtomicLong now = new AtomicLong(1_000_000);
+        OverloadGuard guard = new OverloadGuard(config, new WorkloadGovernor(new SchedulingConfig()), now::get);
+
+        // 在途数逐渐增加：0.6 起跳过重排，0.75 起缩减上下文，0.9 起关闭深度思考，满了拒绝
+        List<LoadTicket> tickets = new ArrayList<>();
+        List<LoadLevel> levels = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            LoadTicket ticket = guard.tryAdmit("stream", true).orElseThrow();
+            tickets.add(ticket);
+            levels.add(ticket.level());
+        }
+        assertEquals(LoadLevel.NORMAL, levels.get(5));
+        assertEquals(LoadLevel.SKIP_RERANK, levels.get(6));
+        assertEquals(LoadLevel.SHRINK_CONTEXT, levels.get(8));
+        assertEquals(LoadLevel.NO_THINKING, levels.get(9));
+        assertTrue(guard.tryAdmit("stream", true).isEmpty());
+        assertEquals(3, config.shrink(LoadLevel.SHRINK_CONTEXT, 5));
+        assertEquals(5, config.shrink(LoadLevel.SKIP_RERANK, 5));
+
+        // 归还名额 (重复归还无影响) 后恢复正常受理
+        tickets.forEach(LoadTicket::release);
+        tickets.forEach(LoadTicket::release);
+        LoadTicket idle = guard.tryAdmit("stream", true).orElseThrow();
+        assertEquals(LoadLevel.NORMAL, idle.level());
+        idle.release();
+
+        // 首字延迟 p99 超过目标：在途很少时只降级到关闭深度思考，不拒绝
+        for (int i = 0; i < 5; i++) {
+            guard.recordLatency(1_500);
+        }
+        now.addAndGet(150);
+        LoadTicket slow = guard.tryAdmit("stream", true).orElseThrow();
+        assertEquals(LoadLevel.NO_THINKING, slow.level());
+        Map<String, Object> stats = guard.stats();
+        assertEquals(1500L, stats.get("firstTokenP99Ms"));
+        now.addAndGet(20);
+        slow.firstToken();
+        slow.release();
+
+        // 降级期间仍在受理、产生新样本；慢样本过期后恢复正常
+        now.addAndGet(500);
+        for (int i = 0; i < 5; i++) {
+            LoadTicket ticket = guard.tryAdmit("stream", true).orElseThrow();
+            now.addAndGet(10);
+            ticket.firstToken();
+            ticket.release();
+        }
+        // 非流式请求的完整耗时不计入首字延迟
+        LoadTicket chat = guard.tryAdmit("chat").orElseThrow();
+        now.addAndGet(300);
+        chat.release();
+        assertEquals(LoadLevel.NORMAL, guard.tryAdmit("stream", true).orElseThrow().level());
+        assertEquals(10L, guard.stats().get("firstTokenP99Ms"));
+
+        // 信号缓存 100ms 内不重新计算
+        for (int i = 0; i < 5; i++) {
+            guard.recordLatency(5_000);
+        }
+        assertEquals(LoadLevel.NORMAL, guard.tryAdmit("stream", true).orElseThrow().level());
+        now.addAndGet(100);
+        assertEquals(LoadLevel.NO_THINKING, guard.tryAdmit("stream", true).orElseThrow().level());
+        @SuppressWarnings("unchecked")
+        Map<String, Long> byLevel = (Map<String, Long>) guard.stats().get("requestsByLevel");
+        assertEquals(1L, byLevel.get("shed"));
+    }
+}
@@ -0,0 +1,148 @@
+package com.agent.rag.ragbackend.service.pipeline;
+
+import com.agent.rag.ragbackend.config.OverloadConfig;
+import com.agent.rag.ragbackend.config.PipelineConfig;
+import com.agent.rag.ragbackend.dto.request.LlmCompletionRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PreGenerationPipelineTest {
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void slowStepIsDegradedAndTotalTimeIsBoundedBySlowestStep() {
+        PipelineConfig config = new PipelineConfig();
+        config.setDeadlineMs(1000);
+        config.setStepTimeoutMs(300);
+
+        PreGenerationPipeline pipeline = new PreGenerationPipeline(List.of(
+                sleepingStep("vector", 150),
+                sleepingStep("keyword", 150),
+                sleepingStep("slow", 5000)
+        ), config, new OverloadConfig(), executor);
+
+        long start = System.currentTimeMillis();
+        PromptContext context = pipeline.prepare(LlmCompletionRequest.builder().prompt("q").build());
+        long elapsed = System.currentTimeMillis() - start;
+
+        assertEquals(2, context.getSnippets().size());
+        assertEquals("超时", context.getDegradedSteps().get("slow"));
+        // 两个 150ms 步骤并发执行 + 慢步骤在 300ms 被截断，远小于串行的总和
+        assertTrue(elapsed < 600, "elapsed " + elapsed + "ms");
+    }
+
+    @Test
+    void timedOutStepIsInterruptedSoItReleasesItsThread() throws InterruptedException {
+        PipelineConfig config = new PipelineConfig();
+        config.setDeadlineMs(1000);
+        config.setStepTimeoutMs(100);
+        CountDownLatch interrupted = new CountDownLatch(1);
+
+        PreGenerationPipeline pipeline = new PreGenerationPipeline(List.of(new PreGenerationStep() {
+            @Override
+            public String name() {
+                return "hung";
+            }
+
+            @Override
+            public Consumer<PromptContext> execute(LlmCompletionRequest request) throws Exception {
+                try {
+                    Thread.sleep(10_000);
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                    throw e;
+                }
+                return null;
+            }
+        }), config, new OverloadConfig(), executor);
+
+        PromptContext context = pipeline.prepare(LlmCompletionRequest.builder().prompt("q").build());
+
+        assertEquals("超时", context.getDegradedSteps().get("hung"));
+        assertTrue(interrupted.await(2, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void historyIsKeptEvenWhenRetrievalStepsAreRejected() {
+        PreGenerationPipeline pipeline = new PreGenerationPipeline(List.of(sleepingStep("vector", 0)),
+                new PipelineConfig(), new OverloadConfig(), task -> {
+            throw new RejectedExecutionException("busy");
+        });
+        List<LlmCompletionRequest.LlmMessage> history = IntStream.range(0, 25)
+                .mapToObj(i -> LlmCompletionRequest.LlmMessage.builder().role("user").content("m" + i).build())
+                .toList();
+
+        PromptContext context = pipeline.prepare(LlmCompletionRequest.builder().prompt("q").context(history).build());
+
+        assertEquals("线程池繁忙", context.getDegradedSteps().get("vector"));
+        assertEquals(history.subList(5, 25), context.getHistory());
+    }
+
+    @Test
+    void snippetsAreFusedByRankAcrossSources() {
+        // 关键词检索的 BM25 分远大于余弦相似度，按原始分数比较会让关键词结果全部排在前面
+        PreGenerationPipeline pipeline = new PreGenerationPipeline(List.of(
+                rankedStep("vector", snippet("a", 0.9), snippet("b", 0.8), snippet("c", 0.7)),
+                rankedStep("keyword", snippet("d", 12.0), snippet("c", 9.0))
+        ), new PipelineConfig(), new OverloadConfig(), executor);
+
+        List<String> order = pipeline.prepare(LlmCompletionRequest.builder().prompt("q").build())
+                .getSnippets().stream().map(PromptContext.Snippet::text).toList();
+
+        // c 被两路同时命中排第一；a 与 d 各是一路的第一名
+        assertEquals("c", order.get(0));
+        assertEquals(List.of("a", "d"), order.subList(1, 3).stream().sorted().toList());
+        assertEquals("b", order.get(3));
+    }
+
+    private static PromptContext.Snippet snippet(String text, double score) {
+        return new PromptContext.Snippet("note.md", text, score);
+    }
+
+    private static PreGenerationStep rankedStep(String name, PromptContext.Snippet... ranked) {
+        return new PreGenerationStep() {
+            @Override
+            public String name() {
+                return name;
+            }
+
+            @Override
+            public Consumer<PromptContext> execute(LlmCompletionRequest request) {
+                return ctx -> ctx.addSnippets(List.of(ranked));
+            }
+        };
+    }
+
+    private static PreGenerationStep sleepingStep(String name, long sleepMs) {
+        return new PreGenerationStep() {
+            @Override
+            public String name() {
+                return name;
+            }
+
+            @Override
+            public Consumer<PromptContext> execute(LlmCompletionRequest request) throws Exception {
+                Thread.sleep(sleepMs);
+                return ctx -> ctx.addSnippets(List.of(new PromptContext.Snippet(name, name, 1.0)));
+            }
+        };
+    }
+}
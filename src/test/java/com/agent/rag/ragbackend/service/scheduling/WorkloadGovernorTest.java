@@ -0,0 +1,123 @@
+package com.agent.rag.ragbackend.service.scheduling;
+
+import com.agent.rag.ragbackend.config.SchedulingConfig;
+import org.junit.jupiter.api.Test;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WorkloadGovernorTest {
+
+    /**
+     * 手动推进的时钟：让路时的等待直接推进时钟，风险缓存 (100ms) 也按它计时
+     */
+    private final AtomicLong now = new AtomicLong(1_000_000);
+
+    @Test
+    void backgroundYieldsWhileInteractiveWorkIsQueuedButNotForever() throws Exception {
+        SchedulingConfig config = new SchedulingConfig();
+        config.setBackgroundMaxYieldMs(300);
+        config.setYieldPollMs(10);
+        WorkloadGovernor governor = new WorkloadGovernor(config, now::get, now::addAndGet);
+
+        ThreadPoolTaskExecutor chat = new ThreadPoolTaskExecutor();
+        chat.setCorePoolSize(1);
+        chat.setMaxPoolSize(1);
+        chat.setQueueCapacity(10);
+        governor.register("chat", WorkloadClass.INTERACTIVE, chat, new ThreadPoolExecutor.AbortPolicy());
+        chat.initialize();
+        try {
+            assertFalse(governor.isInteractiveAtRisk());
+
+            // 唯一的线程被占住，第二个对话任务排队
+            CountDownLatch release = new CountDownLatch(1);
+            for (int i = 0; i < 2; i++) {
+                chat.execute(() -> {
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+            }
+            assertFalse(governor.isInteractiveAtRisk(), "风险判定缓存期内沿用旧结果");
+            now.addAndGet(100);
+            assertTrue(governor.isInteractiveAtRisk());
+
+            // 有风险时后台任务让路，但最多等 background-max-yield-ms
+            long start = now.get();
+            governor.yieldToInteractive();
+            assertEquals(300, now.get() - start);
+
+            release.countDown();
+            chat.getThreadPoolExecutor().shutdown();
+            assertTrue(chat.getThreadPoolExecutor().awaitTermination(5, TimeUnit.SECONDS));
+            now.addAndGet(100);
+            assertFalse(governor.isInteractiveAtRisk());
+
+            Map<String, Object> stats = governor.stats();
+            assertEquals(1L, stats.get("backgroundYields"));
+            assertEquals(300L, stats.get("backgroundYieldedMs"));
+            @SuppressWarnings("unchecked")
+            Map<String, Object> pool = (Map<String, Object>) ((Map<String, Object>) stats.get("pools")).get("chat");
+            assertEquals(2L, pool.get("completed"));
+        } finally {
+            chat.shutdown();
+        }
+    }
+
+    @Test
+    void forkJoinAndSchedulerPoolsAreVisible() throws Exception {
+        WorkloadGovernor governor = new WorkloadGovernor(new SchedulingConfig(), now::get, now::addAndGet);
+        ForkJoinPool search = new ForkJoinPool(1);
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setPoolSize(1);
+        scheduler.initialize();
+        governor.register("search", WorkloadClass.INTERACTIVE, search);
+        governor.register("stream", WorkloadClass.INTERACTIVE, scheduler);
+        try {
+            // 还没到期的定时任务不算排队
+            scheduler.schedule(() -> { }, Instant.now().plusSeconds(60));
+            assertFalse(governor.isInteractiveAtRisk());
+
+            CountDownLatch started = new CountDownLatch(1);
+            CountDownLatch release = new CountDownLatch(1);
+            for (int i = 0; i < 2; i++) {
+                search.execute(() -> {
+                    started.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+            }
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            now.addAndGet(100);
+            assertTrue(governor.isInteractiveAtRisk());
+
+            @SuppressWarnings("unchecked")
+            Map<String, Object> pools = (Map<String, Object>) governor.stats().get("pools");
+            @SuppressWarnings("unchecked")
+            Map<String, Object> view = (Map<String, Object>) pools.get("search");
+            assertEquals(1, view.get("active"));
+            assertEquals(1, view.get("queued"));
+            assertTrue(pools.containsKey("stream"));
+            release.countDown();
+        } finally {
+            search.shutdownNow();
+            scheduler.shutdown();
+        }
+    }
+}
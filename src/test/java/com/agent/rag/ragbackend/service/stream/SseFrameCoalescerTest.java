@@ -0,0 +1,156 @@
+package com.agent.rag.ragbackend.service.stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SseFrameCoalescerTest {
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "test-scheduler");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final ExecutorService sendExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "test-sender");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final List<String> frames = new CopyOnWriteArrayList<>();
+
+    @AfterEach
+    void shutdown() {
+        scheduler.shutdownNow();
+        sendExecutor.shutdownNow();
+    }
+
+    @Test
+    void firstTokenIsSentImmediately() {
+        SseFrameCoalescer coalescer = coalescer(10_000, 1024);
+        coalescer.append("answer", "你");
+
+        assertEquals(List.of("answer:你"), frames);
+    }
+
+    @Test
+    void mergesDeltasWithinWindowAndKeepsChannelsApart() throws InterruptedException {
+        SseFrameCoalescer coalescer = coalescer(10_000, 1024);
+        coalescer.append("thinking", "a");
+        coalescer.append("thinking", "b");
+        coalescer.append("thinking", "c");
+        coalescer.append("answer", "d");
+        coalescer.append("answer", "e");
+        // 切换到 answer 时先发出 thinking 的缓冲
+        assertEquals(List.of("thinking:a", "thinking:bc"), frames);
+
+        closeAndWait(coalescer);
+        assertEquals(List.of("thinking:a", "thinking:bc", "answer:de"), frames);
+        assertEquals(5, coalescer.getDeltaCount());
+        assertEquals(3, coalescer.getFrameCount());
+    }
+
+    @Test
+    void flushesWhenMaxBytesReached() {
+        SseFrameCoalescer coalescer = coalescer(10_000, 4);
+        coalescer.append("answer", "x");
+        coalescer.append("answer", "ab");
+        coalescer.append("answer", "cd");
+        coalescer.append("answer", "e");
+
+        assertEquals(List.of("answer:x", "answer:abcd"), frames);
+    }
+
+    @Test
+    void windowExpirySendsOnExecutorNotScheduler() throws InterruptedException {
+        CountDownLatch sent = new CountDownLatch(2);
+        List<String> threads = new CopyOnWriteArrayList<>();
+        SseFrameCoalescer coalescer = new SseFrameCoalescer((event, content) -> {
+            frames.add(event + ":" + content);
+            threads.add(Thread.currentThread().getName());
+            sent.countDown();
+        }, scheduler, sendExecutor, 30, 1024);
+
+        coalescer.append("answer", "a");
+        coalescer.append("answer", "b");
+        assertTrue(sent.await(5, TimeUnit.SECONDS));
+
+        assertEquals(List.of("answer:a", "answer:b"), frames);
+        assertEquals("test-sender", threads.get(1));
+        assertNotEquals("test-scheduler", threads.get(0));
+    }
+
+    @Test
+    void closeFlushesRemainderBeforeCallbackAndIgnoresLaterAppends() throws InterruptedException {
+        SseFrameCoalescer coalescer = coalescer(10_000, 1024);
+        coalescer.append("answer", "a");
+        coalescer.append("answer", "b");
+        CountDownLatch closed = new CountDownLatch(1);
+        List<String> callbackThreads = new CopyOnWriteArrayList<>();
+        coalescer.close(() -> {
+            frames.add("done");
+            callbackThreads.add(Thread.currentThread().getName());
+            closed.countDown();
+        });
+        assertTrue(closed.await(5, TimeUnit.SECONDS));
+        coalescer.append("answer", "c");
+
+        assertEquals(List.of("answer:a", "answer:b", "done"), frames);
+        assertEquals(List.of("test-sender"), callbackThreads);
+    }
+
+    @Test
+    void closeDoesNotBlockWhileAnotherThreadIsSending() throws InterruptedException {
+        CountDownLatch sending = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        SseFrameCoalescer coalescer = new SseFrameCoalescer((event, content) -> {
+            if (content.equals("b")) {
+                sending.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            frames.add(event + ":" + content);
+        }, scheduler, sendExecutor, 30, 1024);
+
+        coalescer.append("answer", "a");
+        coalescer.append("answer", "b");
+        // 窗口到期后 sendExecutor 卡在慢连接上
+        assertTrue(sending.await(5, TimeUnit.SECONDS));
+
+        // close 立即返回，结束回调等慢连接上的帧发完后才执行
+        CountDownLatch closed = new CountDownLatch(1);
+        coalescer.close(() -> {
+            frames.add("done");
+            closed.countDown();
+        });
+        assertEquals(List.of("answer:a"), frames);
+
+        release.countDown();
+        assertTrue(closed.await(5, TimeUnit.SECONDS));
+        assertEquals(List.of("answer:a", "answer:b", "done"), frames);
+    }
+
+    private static void closeAndWait(SseFrameCoalescer coalescer) throws InterruptedException {
+        CountDownLatch closed = new CountDownLatch(1);
+        coalescer.close(closed::countDown);
+        assertTrue(closed.await(5, TimeUnit.SECONDS));
+    }
+
+    private SseFrameCoalescer coalescer(long windowMs, int maxBytes) {
+        return new SseFrameCoalescer((event, content) -> frames.add(event + ":" + content),
+                scheduler, sendExecutor, windowMs, maxBytes);
+    }
+}
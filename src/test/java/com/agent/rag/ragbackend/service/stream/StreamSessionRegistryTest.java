@@ -0,0 +1,201 @@
+package com.agent.rag.ragbackend.service.stream;
+
+import com.agent.rag.ragbackend.config.StreamConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StreamSessionRegistryTest {
+
+    private final StreamConfig config = new StreamConfig();
+    private final ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+    private StreamSessionRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        scheduler.setPoolSize(1);
+        scheduler.initialize();
+        registry = new StreamSessionRegistry(config, scheduler);
+    }
+
+    @AfterEach
+    void tearDown() {
+        scheduler.shutdown();
+    }
+
+    @Test
+    void resumesAfterGivenSeqThenReceivesLiveEvents() {
+        StreamSession session = registry.create();
+        session.publishDelta("answer", "a");
+        session.publishDelta("answer", "b");
+        session.publishDelta("answer", "c");
+
+        RecordingEmitter emitter = new RecordingEmitter();
+        assertTrue(session.attach(emitter, 1, 0));
+        session.publishDelta("answer", "d");
+        session.complete();
+
+        String id = session.getStreamId();
+        assertEquals(List.of(id + ":2", id + ":3", id + ":4", id + ":5"), emitter.ids);
+        assertEquals(List.of("answer", "answer", "answer", "done"), emitter.events);
+        assertTrue(emitter.completed);
+    }
+
+    @Test
+    void resumeFailsOnceBreakpointIsOverrun() {
+        config.setReplayBufferEvents(3);
+        StreamSession session = registry.create();
+        for (int i = 0; i < 10; i++) {
+            session.publishDelta("answer", "t" + i);
+        }
+
+        String token = session.getResumeToken();
+        assertNull(registry.resume(session.getStreamId(), session.getStreamId() + ":2", token));
+        assertNotNull(registry.resume(session.getStreamId(), session.getStreamId() + ":7", token));
+    }
+
+    @Test
+    void resumeRequiresTokenFromFirstEvent() {
+        StreamSession session = registry.create();
+        session.publishDelta("answer", "secret");
+
+        // 只知道 streamId (例如来自代理日志) 不能续传
+        assertNull(registry.resume(session.getStreamId(), null, null));
+        assertNull(registry.resume(session.getStreamId(), null, "0".repeat(32)));
+
+        RecordingEmitter first = new RecordingEmitter();
+        session.attach(first, -1, 0);
+        assertEquals("stream", first.events.get(0));
+        assertTrue(first.data.get(0).contains(session.getResumeToken()));
+        assertNotNull(registry.resume(session.getStreamId(), null, session.getResumeToken()));
+    }
+
+    @Test
+    void graceExpiryCancelsUpstream() throws InterruptedException {
+        config.setResumeGraceMs(50);
+        StreamSession session = registry.create();
+        CountDownLatch cancelled = new CountDownLatch(1);
+        session.bindUpstream(cancelled::countDown);
+
+        RecordingEmitter emitter = new RecordingEmitter();
+        emitter.failing = true;
+        session.attach(emitter, -1, 0);
+
+        assertTrue(cancelled.await(5, TimeUnit.SECONDS));
+        // 上游已取消，之后的增量不再进入缓冲
+        session.publishDelta("answer", "late");
+        RecordingEmitter late = new RecordingEmitter();
+        session.attach(late, 0, 0);
+        assertTrue(late.ids.isEmpty());
+    }
+
+    @Test
+    void reattachWithinGraceKeepsUpstream() throws InterruptedException {
+        config.setResumeGraceMs(100);
+        StreamSession session = registry.create();
+        CountDownLatch cancelled = new CountDownLatch(1);
+        session.bindUpstream(cancelled::countDown);
+
+        RecordingEmitter first = new RecordingEmitter();
+        first.failing = true;
+        session.attach(first, -1, 0);
+        session.attach(new RecordingEmitter(), 0, 0);
+
+        assertFalse(cancelled.await(300, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void globalByteCapEvictsLeastRecentlyActiveDetachedSession() throws InterruptedException {
+        config.setReplayTotalMaxBytes(2_000);
+        String text = "x".repeat(50);
+        StreamSession older = registry.create();
+        for (int i = 0; i < 10; i++) {
+            older.publishDelta("answer", text);
+        }
+        Thread.sleep(10);
+        StreamSession newer = registry.create();
+        for (int i = 0; i < 10; i++) {
+            newer.publishDelta("answer", text);
+        }
+        assertTrue(registry.getTotalBytes() > 2_000);
+
+        registry.evict();
+
+        assertNull(registry.find(older.getStreamId()));
+        assertNotNull(registry.find(newer.getStreamId()));
+        assertEquals(newer.getBufferedBytes(), registry.getTotalBytes());
+        assertFalse(older.attach(new RecordingEmitter(), -1, 0));
+    }
+
+    @Test
+    void totalTimeoutCountsFromSessionCreationAcrossReconnects() throws InterruptedException {
+        config.setTotalTimeoutMs(300);
+        StreamSession session = registry.create();
+        CountDownLatch cancelled = new CountDownLatch(1);
+        session.bindUpstream(cancelled::countDown);
+        Thread.sleep(100);
+
+        SseEmitter resumed = registry.resume(session.getStreamId(), null, session.getResumeToken());
+        assertNotNull(resumed);
+        assertTrue(resumed.getTimeout() <= 200);
+
+        // 断线期间超过总时长：由定时清理取消上游
+        resumed.complete();
+        Thread.sleep(250);
+        registry.evict();
+        assertTrue(cancelled.await(1, TimeUnit.SECONDS));
+    }
+
+    /**
+     * 记录推送事件的 emitter (不依赖 Servlet 容器)
+     */
+    private static class RecordingEmitter extends SseEmitter {
+        final List<String> ids = new CopyOnWriteArrayList<>();
+        final List<String> events = new CopyOnWriteArrayList<>();
+        final List<String> data = new CopyOnWriteArrayList<>();
+        volatile boolean failing = false;
+        volatile boolean completed = false;
+
+        @Override
+        public void send(SseEventBuilder builder) throws IOException {
+            if (failing) {
+                throw new IOException("connection reset");
+            }
+            Set<DataWithMediaType> parts = builder.build();
+            for (DataWithMediaType part : parts) {
+                if (!(part.getData() instanceof String text)) {
+                    data.add(String.valueOf(part.getData()));
+                    continue;
+                }
+                for (String line : text.split("\n")) {
+                    if (line.startsWith("id:")) {
+                        ids.add(line.substring(3));
+                    } else if (line.startsWith("event:")) {
+                        events.add(line.substring(6));
+                    }
+                }
+            }
+        }
+
+        @Override
+        public synchronized void complete() {
+            completed = true;
+            super.complete();
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.agent.rag.ragbackend.service.stream;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ThinkTagSplitterTest {
+
+    @Test
+    void splitsTagsAcrossChunkBoundaries() {
+        StringBuilder thinking = new StringBuilder();
+        StringBuilder answer = new StringBuilder();
+        ThinkTagSplitter.Sink sink = new ThinkTagSplitter.Sink() {
+            @Override
+            public void onThinking(String text) {
+                thinking.append(text);
+            }
+
+            @Override
+            public void onAnswer(String text) {
+                answer.append(text);
+            }
+        };
+
+        ThinkTagSplitter splitter = new ThinkTagSplitter();
+        for (String chunk : new String[]{"<th", "ink>先想", "想 a<b</", "thi", "nk>答案 <t", "hin"}) {
+            splitter.feed(chunk, sink);
+        }
+        splitter.flush(sink);
+
+        assertEquals("先想想 a<b", thinking.toString());
+        assertEquals("答案 <thin", answer.toString());
+    }
+
+    @Test
+    void syncSplitMatchesStreaming() {
+        ThinkTagSplitter.Result result = ThinkTagSplitter.split("<think>\n推理过程\n</think>\n最终回答");
+        assertEquals("推理过程", result.thinking());
+        assertEquals("最终回答", result.answer());
+    }
+}
@@ -0,0 +1,47 @@
+package com.agent.rag.ragbackend.service.trace;
+
+import com.agent.rag.ragbackend.config.TraceConfig;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TraceRecorderTest {
+
+    @Test
+    void slowRequestsAreAlwaysKeptAndRingOverwritesOldest() {
+        TraceConfig config = new TraceConfig();
+        config.setBufferSize(4);
+        config.setSampleRate(0);
+        config.setSlowThresholdMs(1_000);
+        TraceRecorder recorder = new TraceRecorder(config);
+
+        // 采样率为 0：快请求不记录
+        recorder.start("stream", "fast", "m").finish("ok", 3);
+        assertTrue(recorder.recent(10).isEmpty());
+
+        long now = System.nanoTime();
+        for (int i = 1; i <= 6; i++) {
+            RequestTrace trace = recorder.start("stream", "slow" + i, "m", now - TimeUnit.SECONDS.toNanos(i));
+            trace.begin(TracePhase.RETRIEVAL);
+            trace.end(TracePhase.RETRIEVAL);
+            trace.finish("ok", i);
+            trace.finish("error", 0);
+        }
+
+        // 缓冲只保留最近 4 条，slow1 / slow2 被覆盖
+        List<Map<String, Object>> slowest = recorder.slowest(10);
+        assertEquals(List.of("slow6", "slow5", "slow4", "slow3"), slowest.stream().map(t -> t.get("traceId")).toList());
+        assertEquals("ok", slowest.get(0).get("outcome"));
+        assertTrue(((Map<?, ?>) slowest.get(0).get("phases")).containsKey("retrieval"));
+        assertEquals("slow6", recorder.recent(1).get(0).get("traceId"));
+
+        config.setEnabled(false);
+        assertSame(RequestTrace.NOOP, recorder.start("chat", null, "m"));
+    }
+}